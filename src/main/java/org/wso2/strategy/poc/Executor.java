@@ -18,6 +18,9 @@ package org.wso2.strategy.poc;
 import org.wso2.strategy.poc.miscellaneous.exceptions.WebArtifactHandlerException;
 import org.wso2.strategy.poc.miscellaneous.io.FileInputKeyValueDataThread;
 import org.wso2.strategy.poc.miscellaneous.io.FileOutputThread;
+import org.wso2.strategy.poc.webartifact.BulkOperationResult;
+import org.wso2.strategy.poc.webartifact.ManifestEntry;
+import org.wso2.strategy.poc.webartifact.ManifestEntryResult;
 import org.wso2.strategy.poc.webartifact.interfaces.IWebArtifactHandler;
 import org.wso2.strategy.poc.webartifact.WebArtifactHandler;
 
@@ -37,7 +40,7 @@ public class Executor {
                     configurationData.get("kubernetes-url"));
             final String welcomeMessage = "***WELCOME TO JAVA WEB ARTIFACT HANDLER APP***\n\n";
             final String mainMenuContent = "1 - Deploy\n2 - Rolling update\n3 - Rollback\n"
-                    + "4 - Un-deploy\n5 - Scaling\n6 - Exit\nEnter your choice: ";
+                    + "4 - Un-deploy\n5 - Scaling\n6 - Bulk operation from manifest\n7 - Exit\nEnter your choice: ";
             showMenu(welcomeMessage);
             while (true) {
                 int userChoice;
@@ -47,7 +50,7 @@ public class Executor {
                     tempUserChoice = SCANNER.next();
                     SCANNER.nextLine();
                     userChoice = getUserChoice(tempUserChoice);
-                } while ((userChoice < 1) || (userChoice > 6));
+                } while ((userChoice < 1) || (userChoice > 7));
                 process(userChoice, webArtifactHandler);
             }
         } catch (Exception exception) {
@@ -166,6 +169,33 @@ public class Executor {
         return inputs;
     }
 
+    private static Map<String, Object> gatherBulkOperationData() {
+        Map<String, Object> inputs = new HashMap<>();
+        Path manifestPath;
+        boolean exists;
+        do {
+            showMenu("Manifest path: ");
+            String path = SCANNER.nextLine();
+            manifestPath = Paths.get(path);
+            exists = Files.isRegularFile(manifestPath);
+            if (!exists) {
+                showMenu("This file path does not exist.\n");
+            }
+        } while (!exists);
+        int maxConcurrentOperations;
+        String tempUserChoice;
+        do {
+            showMenu("Maximum number of concurrent operations: ");
+            tempUserChoice = SCANNER.next();
+            SCANNER.nextLine();
+            maxConcurrentOperations = getUserChoice(tempUserChoice);
+        } while ((maxConcurrentOperations < 1));
+        // Add to list of inputs
+        inputs.put("manifest", manifestPath);
+        inputs.put("concurrency", maxConcurrentOperations);
+        return inputs;
+    }
+
     private static void process(int choice, IWebArtifactHandler webArtifactHandler) throws WebArtifactHandlerException {
         Map<String, Object> inputs;
         String tenant;
@@ -244,6 +274,16 @@ public class Executor {
             }
             break;
         case 6:
+            inputs = gatherBulkOperationData();
+            List<ManifestEntry> manifest = ManifestEntry.readManifest((Path) inputs.get("manifest"));
+            BulkOperationResult bulkResult = webArtifactHandler
+                    .execute(manifest, (Integer) inputs.get("concurrency"));
+            for (ManifestEntryResult entryResult : bulkResult.getEntryResults()) {
+                showMenu(entryResult + "\n");
+            }
+            showMenu(bulkResult + "\n");
+            break;
+        case 7:
             System.exit(0);
             break;
         }
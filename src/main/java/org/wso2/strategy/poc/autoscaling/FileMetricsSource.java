@@ -0,0 +1,69 @@
+/*
+* Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.wso2.strategy.poc.autoscaling;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.wso2.strategy.poc.autoscaling.interfaces.IMetricsSource;
+import org.wso2.strategy.poc.miscellaneous.exceptions.WebArtifactHandlerException;
+import org.wso2.strategy.poc.miscellaneous.helper.WebArtifactHandlerHelper;
+import org.wso2.strategy.poc.miscellaneous.io.FileInputKeyValueDataThread;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * a local stand-in metrics source which reads the utilization of each web artifact from an external
+ * key-value file, holding one Kubernetes component identifier=utilization percentage entry per line
+ * <p>
+ * The file is re-read only once it has been modified, so that it can be edited while the autoscaler runs.
+ */
+public class FileMetricsSource implements IMetricsSource {
+    private final String metricsFileName;
+    // Kubernetes component identifier -> utilization percentage
+    private Map<String, String> utilizations = new HashMap<>();
+    private long lastModified = -1;
+
+    private static final Logger LOG = LogManager.getLogger(FileMetricsSource.class);
+
+    public FileMetricsSource(String metricsFileName) {
+        this.metricsFileName = metricsFileName;
+    }
+
+    public synchronized Double getUtilization(String tenant, String appName) throws WebArtifactHandlerException {
+        long modified = new File(metricsFileName).lastModified();
+        if (modified != lastModified) {
+            FileInputKeyValueDataThread fileInput = new FileInputKeyValueDataThread(metricsFileName);
+            fileInput.run();
+            utilizations = fileInput.getFileContent();
+            lastModified = modified;
+        }
+        String utilization = utilizations
+                .get(WebArtifactHandlerHelper.generateKubernetesComponentIdentifier(tenant, appName));
+        if (utilization == null) {
+            return null;
+        }
+        try {
+            return Double.parseDouble(utilization.trim());
+        } catch (NumberFormatException exception) {
+            String message = String.format("Invalid utilization value [metrics-file] %s [tenant] %s [app] %s: %s",
+                    metricsFileName, tenant, appName, utilization);
+            LOG.error(message, exception);
+            throw new WebArtifactHandlerException(message, exception);
+        }
+    }
+}
@@ -0,0 +1,313 @@
+/*
+* Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.wso2.strategy.poc.autoscaling;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.wso2.strategy.poc.autoscaling.interfaces.IMetricsSource;
+import org.wso2.strategy.poc.kubernetes.components.replication_controller.ScaleRequestCoalescer;
+import org.wso2.strategy.poc.kubernetes.components.replication_controller.interfaces.ITomcatReplicationControllerHandler;
+import org.wso2.strategy.poc.miscellaneous.concurrency.ComponentLocks;
+import org.wso2.strategy.poc.miscellaneous.exceptions.WebArtifactHandlerException;
+import org.wso2.strategy.poc.miscellaneous.helper.WebArtifactHandlerHelper;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * a background controller which periodically scales the replication controllers of the web artifacts
+ * under autoscaling, so that the utilization per replica reported by a metrics source stays near the
+ * target utilization of each web artifact's scaling policy
+ * <p>
+ * The desired number of replicas is the current number scaled by the ratio of the utilization to the
+ * target, bounded by the minimum and maximum replicas. No scaling takes place while the ratio stays
+ * within the policy's tolerance, nor while the cooldown after the previous scaling event, manual or
+ * automatic, has not elapsed. Scale downs have a longer cooldown by default, so that a short dip in
+ * load does not cause the replicas to flap.
+ * <p>
+ * Given a scale request coalescer, the autoscaler scales through it, so that its updates and the manual
+ * scale requests of a component are applied by a single writer and the latest target is the one applied.
+ */
+public class HorizontalAutoscaler {
+    private final IMetricsSource metricsSource;
+    private final ITomcatReplicationControllerHandler replicationControllerHandler;
+    private final ComponentLocks componentLocks;
+    private final ScaleRequestCoalescer scaleRequestCoalescer;
+    // Kubernetes component identifier -> autoscaled web artifact
+    private final ConcurrentMap<String, AutoscaledArtifact> artifacts = new ConcurrentHashMap<>();
+    private ScheduledExecutorService autoscalerExecutor;
+
+    private static final Logger LOG = LogManager.getLogger(HorizontalAutoscaler.class);
+
+    public HorizontalAutoscaler(IMetricsSource metricsSource,
+            ITomcatReplicationControllerHandler replicationControllerHandler) {
+        this(metricsSource, replicationControllerHandler, new ComponentLocks());
+    }
+
+    /**
+     * @param metricsSource                source of the replica utilization of the web artifacts
+     * @param replicationControllerHandler replication controller handler
+     * @param componentLocks               locks of the components, a component locked exclusively by another
+     *                                     operation is not autoscaled until the operation completes
+     */
+    public HorizontalAutoscaler(IMetricsSource metricsSource,
+            ITomcatReplicationControllerHandler replicationControllerHandler, ComponentLocks componentLocks) {
+        this(metricsSource, replicationControllerHandler, componentLocks, null);
+    }
+
+    /**
+     * @param metricsSource                source of the replica utilization of the web artifacts
+     * @param replicationControllerHandler replication controller handler
+     * @param componentLocks               locks of the components, a component locked exclusively by another
+     *                                     operation is not autoscaled until the operation completes
+     * @param scaleRequestCoalescer        coalescer through which the manual scale requests are applied, or
+     *                                     null to update the replication controllers directly
+     */
+    public HorizontalAutoscaler(IMetricsSource metricsSource,
+            ITomcatReplicationControllerHandler replicationControllerHandler, ComponentLocks componentLocks,
+            ScaleRequestCoalescer scaleRequestCoalescer) {
+        this.metricsSource = metricsSource;
+        this.replicationControllerHandler = replicationControllerHandler;
+        this.componentLocks = componentLocks;
+        this.scaleRequestCoalescer = scaleRequestCoalescer;
+    }
+
+    /**
+     * places the specified web artifact under autoscaling with the specified policy, replacing any
+     * previous policy of the web artifact
+     *
+     * @param tenant  tenant which deployed the web artifact
+     * @param appName name of the web artifact
+     * @param policy  scaling policy of the web artifact
+     */
+    public void setPolicy(String tenant, String appName, ScalingPolicy policy) {
+        String componentName = WebArtifactHandlerHelper.generateKubernetesComponentIdentifier(tenant, appName);
+        AutoscaledArtifact previous = artifacts
+                .put(componentName, new AutoscaledArtifact(tenant, appName, policy, getLastScalingTime(componentName)));
+        if (LOG.isDebugEnabled()) {
+            LOG.debug(String.format("%s autoscaling policy [component] %s %s", (previous == null) ? "Set" : "Replaced",
+                    componentName, policy));
+        }
+    }
+
+    /**
+     * returns the scaling policy of the specified web artifact
+     *
+     * @param tenant  tenant which deployed the web artifact
+     * @param appName name of the web artifact
+     * @return the scaling policy, or null if the web artifact is not under autoscaling
+     */
+    public ScalingPolicy getPolicy(String tenant, String appName) {
+        AutoscaledArtifact artifact = artifacts
+                .get(WebArtifactHandlerHelper.generateKubernetesComponentIdentifier(tenant, appName));
+        return (artifact != null) ? artifact.policy : null;
+    }
+
+    /**
+     * removes the specified web artifact from autoscaling
+     *
+     * @param tenant  tenant which deployed the web artifact
+     * @param appName name of the web artifact
+     */
+    public void removePolicy(String tenant, String appName) {
+        artifacts.remove(WebArtifactHandlerHelper.generateKubernetesComponentIdentifier(tenant, appName));
+    }
+
+    /**
+     * records a scaling event of the specified web artifact made outside the autoscaler, which starts
+     * the cooldown of the web artifact
+     *
+     * @param tenant  tenant which deployed the web artifact
+     * @param appName name of the web artifact
+     */
+    public void recordScaling(String tenant, String appName) {
+        AutoscaledArtifact artifact = artifacts
+                .get(WebArtifactHandlerHelper.generateKubernetesComponentIdentifier(tenant, appName));
+        if (artifact != null) {
+            artifact.lastScalingTime = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * schedules the evaluation of all autoscaled web artifacts at a fixed delay
+     *
+     * @param intervalInSeconds delay between two evaluations
+     */
+    public synchronized void start(long intervalInSeconds) {
+        if (autoscalerExecutor != null) {
+            return;
+        }
+        autoscalerExecutor = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("horizontal-autoscaler-%d").setDaemon(true).build());
+        autoscalerExecutor.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                try {
+                    evaluate();
+                } catch (Exception exception) {
+                    LOG.error("Could not evaluate the autoscaled web artifacts.", exception);
+                }
+            }
+        }, intervalInSeconds, intervalInSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * stops the scheduled evaluation
+     */
+    public synchronized void shutdown() {
+        if (autoscalerExecutor != null) {
+            autoscalerExecutor.shutdownNow();
+            autoscalerExecutor = null;
+        }
+    }
+
+    /**
+     * evaluates all autoscaled web artifacts, scaling those which are off their target utilization
+     */
+    public void evaluate() {
+        for (AutoscaledArtifact artifact : artifacts.values()) {
+            try {
+                evaluate(artifact);
+            } catch (WebArtifactHandlerException exception) {
+                LOG.error(String.format("Could not autoscale [tenant] %s [app] %s.", artifact.tenant,
+                        artifact.appName), exception);
+            }
+        }
+    }
+
+    /**
+     * evaluates the specified web artifact, scaling it if it is off its target utilization
+     *
+     * @param tenant  tenant which deployed the web artifact
+     * @param appName name of the web artifact
+     * @return the number of replicas after the evaluation, or -1 if the web artifact is not under autoscaling
+     * @throws WebArtifactHandlerException
+     */
+    public int evaluate(String tenant, String appName) throws WebArtifactHandlerException {
+        AutoscaledArtifact artifact = artifacts
+                .get(WebArtifactHandlerHelper.generateKubernetesComponentIdentifier(tenant, appName));
+        return (artifact != null) ? evaluate(artifact) : -1;
+    }
+
+    private int evaluate(AutoscaledArtifact artifact) throws WebArtifactHandlerException {
+        String componentName = WebArtifactHandlerHelper
+                .generateKubernetesComponentIdentifier(artifact.tenant, artifact.appName);
+        // a component being deployed, rolled over or removed is evaluated again in a following round
+        if (!componentLocks.tryLockShared(componentName)) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug(String.format("Deferred autoscaling of the locked [component] %s.", componentName));
+            }
+            return replicationControllerHandler.getNoOfReplicas(componentName);
+        }
+        try {
+            return evaluate(artifact, componentName);
+        } finally {
+            componentLocks.unlockShared(componentName);
+        }
+    }
+
+    private int evaluate(AutoscaledArtifact artifact, String componentName) throws WebArtifactHandlerException {
+        int currentReplicas = replicationControllerHandler.getNoOfReplicas(componentName);
+        if (currentReplicas < 1) {
+            // the web artifact is not deployed, or has been deliberately scaled to zero
+            return currentReplicas;
+        }
+        ScalingPolicy policy = artifact.policy;
+        Double utilization = metricsSource.getUtilization(artifact.tenant, artifact.appName);
+        int desiredReplicas = currentReplicas;
+        if (utilization != null) {
+            double ratio = utilization / policy.getTargetUtilization();
+            // hysteresis: a deviation within the tolerance is not acted upon
+            if (Math.abs(ratio - 1) > policy.getTolerance()) {
+                desiredReplicas = (int) Math.ceil(currentReplicas * ratio);
+            }
+        }
+        desiredReplicas = Math.max(policy.getMinReplicas(), Math.min(policy.getMaxReplicas(), desiredReplicas));
+        if (desiredReplicas == currentReplicas) {
+            return currentReplicas;
+        }
+        long sinceLastScaling = System.currentTimeMillis() - artifact.lastScalingTime;
+        long cooldown = (desiredReplicas > currentReplicas) ? policy.getScaleUpCooldownInMilliseconds()
+                : policy.getScaleDownCooldownInMilliseconds();
+        if (sinceLastScaling < cooldown) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug(String.format("Deferred autoscaling in cooldown [component] %s [replicas] %d -> %d "
+                                + "[cooldown-remaining] %d ms", componentName, currentReplicas, desiredReplicas,
+                        cooldown - sinceLastScaling));
+            }
+            return currentReplicas;
+        }
+        desiredReplicas = scale(componentName, desiredReplicas);
+        artifact.lastScalingTime = System.currentTimeMillis();
+        LOG.info(String.format("Autoscaled [component] %s [utilization] %s [target-utilization] %.1f%% [replicas] "
+                + "%d -> %d", componentName, (utilization != null) ? String.format("%.1f%%", utilization) : "n/a",
+                policy.getTargetUtilization(), currentReplicas, desiredReplicas));
+        return desiredReplicas;
+    }
+
+    /**
+     * scales the specified replication controller, through the scale request coalescer if there is one
+     *
+     * @param componentName   name of the replication controller
+     * @param desiredReplicas new number of replicas
+     * @return the number of replicas applied, which may be the target of a manual request coalesced with this one
+     * @throws WebArtifactHandlerException
+     */
+    private int scale(String componentName, int desiredReplicas) throws WebArtifactHandlerException {
+        if (scaleRequestCoalescer == null) {
+            replicationControllerHandler.updateNoOfReplicas(componentName, desiredReplicas);
+            return desiredReplicas;
+        }
+        try {
+            return scaleRequestCoalescer.requestScale(componentName, desiredReplicas).get();
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            String message = String.format("Interrupted while autoscaling [component] %s.", componentName);
+            LOG.error(message, exception);
+            throw new WebArtifactHandlerException(message, exception);
+        } catch (ExecutionException exception) {
+            String message = String.format("Could not autoscale [component] %s.", componentName);
+            LOG.error(message, exception.getCause());
+            throw new WebArtifactHandlerException(message, exception);
+        }
+    }
+
+    private long getLastScalingTime(String componentName) {
+        AutoscaledArtifact artifact = artifacts.get(componentName);
+        return (artifact != null) ? artifact.lastScalingTime : 0;
+    }
+
+    /**
+     * a web artifact under autoscaling, together with the time of its last scaling event
+     */
+    private static class AutoscaledArtifact {
+        private final String tenant;
+        private final String appName;
+        private final ScalingPolicy policy;
+        private volatile long lastScalingTime;
+
+        AutoscaledArtifact(String tenant, String appName, ScalingPolicy policy, long lastScalingTime) {
+            this.tenant = tenant;
+            this.appName = appName;
+            this.policy = policy;
+            this.lastScalingTime = lastScalingTime;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+/*
+* Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.wso2.strategy.poc.autoscaling;
+
+/**
+ * the autoscaling bounds of a web artifact: the replica range, the target utilization, the tolerance
+ * around the target within which no scaling takes place and the cooldowns after a scaling event
+ */
+public class ScalingPolicy {
+    private final int minReplicas;
+    private final int maxReplicas;
+    private final double targetUtilization;
+    private final double tolerance;
+    private final long scaleUpCooldownInMilliseconds;
+    private final long scaleDownCooldownInMilliseconds;
+
+    public static final double DEFAULT_TOLERANCE = 0.1;
+    public static final long DEFAULT_SCALE_UP_COOLDOWN_IN_MILLISECONDS = 60 * 1000;
+    public static final long DEFAULT_SCALE_DOWN_COOLDOWN_IN_MILLISECONDS = 5 * 60 * 1000;
+
+    /**
+     * @param minReplicas       minimum number of replicas
+     * @param maxReplicas       maximum number of replicas
+     * @param targetUtilization utilization percentage per replica to be maintained
+     */
+    public ScalingPolicy(int minReplicas, int maxReplicas, double targetUtilization) {
+        this(minReplicas, maxReplicas, targetUtilization, DEFAULT_TOLERANCE, DEFAULT_SCALE_UP_COOLDOWN_IN_MILLISECONDS,
+                DEFAULT_SCALE_DOWN_COOLDOWN_IN_MILLISECONDS);
+    }
+
+    /**
+     * @param minReplicas                     minimum number of replicas
+     * @param maxReplicas                     maximum number of replicas
+     * @param targetUtilization               utilization percentage per replica to be maintained
+     * @param tolerance                       relative deviation from the target utilization which is tolerated
+     *                                        without scaling (e.g. 0.1 for 10%)
+     * @param scaleUpCooldownInMilliseconds   minimum time between a scaling event and the next scale up
+     * @param scaleDownCooldownInMilliseconds minimum time between a scaling event and the next scale down
+     */
+    public ScalingPolicy(int minReplicas, int maxReplicas, double targetUtilization, double tolerance,
+            long scaleUpCooldownInMilliseconds, long scaleDownCooldownInMilliseconds) {
+        if ((minReplicas < 1) || (maxReplicas < minReplicas)) {
+            throw new IllegalArgumentException("Minimum replicas should be at least one and should not exceed the "
+                    + "maximum replicas.");
+        }
+        if ((targetUtilization <= 0) || (tolerance < 0) || (tolerance >= 1)) {
+            throw new IllegalArgumentException("Target utilization should be positive and tolerance should be "
+                    + "between zero and one.");
+        }
+        if ((scaleUpCooldownInMilliseconds < 0) || (scaleDownCooldownInMilliseconds < 0)) {
+            throw new IllegalArgumentException("Cooldowns should not be negative.");
+        }
+        this.minReplicas = minReplicas;
+        this.maxReplicas = maxReplicas;
+        this.targetUtilization = targetUtilization;
+        this.tolerance = tolerance;
+        this.scaleUpCooldownInMilliseconds = scaleUpCooldownInMilliseconds;
+        this.scaleDownCooldownInMilliseconds = scaleDownCooldownInMilliseconds;
+    }
+
+    public int getMinReplicas() {
+        return minReplicas;
+    }
+
+    public int getMaxReplicas() {
+        return maxReplicas;
+    }
+
+    public double getTargetUtilization() {
+        return targetUtilization;
+    }
+
+    public double getTolerance() {
+        return tolerance;
+    }
+
+    public long getScaleUpCooldownInMilliseconds() {
+        return scaleUpCooldownInMilliseconds;
+    }
+
+    public long getScaleDownCooldownInMilliseconds() {
+        return scaleDownCooldownInMilliseconds;
+    }
+
+    public String toString() {
+        return String.format("[min-replicas] %d [max-replicas] %d [target-utilization] %.1f%% [tolerance] %.2f "
+                        + "[scale-up-cooldown] %d ms [scale-down-cooldown] %d ms", minReplicas, maxReplicas,
+                targetUtilization, tolerance, scaleUpCooldownInMilliseconds, scaleDownCooldownInMilliseconds);
+    }
+}
@@ -0,0 +1,34 @@
+/*
+* Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.wso2.strategy.poc.autoscaling.interfaces;
+
+import org.wso2.strategy.poc.miscellaneous.exceptions.WebArtifactHandlerException;
+
+/**
+ * A Java interface for sources of the load signal which drives the autoscaling of web artifacts
+ */
+public interface IMetricsSource {
+    /**
+     * returns the current utilization of the replica pods of the specified web artifact, averaged
+     * across its replicas and expressed as a percentage of the capacity of a single replica
+     *
+     * @param tenant  tenant which deployed the web artifact
+     * @param appName name of the web artifact
+     * @return the current utilization percentage, or null if no sample is available
+     * @throws WebArtifactHandlerException
+     */
+    Double getUtilization(String tenant, String appName) throws WebArtifactHandlerException;
+}
@@ -0,0 +1,112 @@
+/*
+* Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.wso2.strategy.poc.docker;
+
+import org.wso2.strategy.poc.miscellaneous.io.FileInputKeyValueDataThread;
+import org.wso2.strategy.poc.miscellaneous.io.FileOutputThread;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * a registry of the Docker images built per build digest, persisted to an external file
+ * <p>
+ * The build digest covers the web artifact content and the Dockerfile the artifact is built with, including
+ * the digest pinned base image. It is also recorded as a label of each built image. The registry lets an
+ * identical build be found without querying the Docker daemon, and on a miss the images are looked up by
+ * their label, so that a lost registry file only costs a query.
+ */
+public class ArtifactDigestRegistry {
+    private final String registryFileName;
+    // repository@digest -> Docker image
+    private final Map<String, String> images = new ConcurrentHashMap<>();
+
+    public ArtifactDigestRegistry(String registryFileName) {
+        this.registryFileName = registryFileName;
+        FileInputKeyValueDataThread fileInput = new FileInputKeyValueDataThread(registryFileName);
+        fileInput.run();
+        images.putAll(fileInput.getFileContent());
+    }
+
+    /**
+     * returns the most recent Docker image built under the repository for the specified build digest
+     *
+     * @param repository Docker image repository (creator/artifact name)
+     * @param digest     build digest of the web artifact
+     * @return the Docker image, or null if no image has been built for the digest
+     */
+    public String getImage(String repository, String digest) {
+        return images.get(generateKey(repository, digest));
+    }
+
+    /**
+     * records the Docker image built under the repository for the specified build digest
+     *
+     * @param repository      Docker image repository (creator/artifact name)
+     * @param digest          build digest of the web artifact
+     * @param dockerImageName the Docker image
+     */
+    public synchronized void register(String repository, String digest, String dockerImageName) {
+        images.put(generateKey(repository, digest), dockerImageName);
+        persist();
+    }
+
+    /**
+     * removes the records which refer to the specified Docker image
+     *
+     * @param dockerImageName the Docker image
+     */
+    public void unregister(String dockerImageName) {
+        unregister(Collections.singleton(dockerImageName));
+    }
+
+    /**
+     * removes the records which refer to any of the specified Docker images, persisting the registry once
+     *
+     * @param dockerImageNames the Docker images
+     */
+    public synchronized void unregister(Collection<String> dockerImageNames) {
+        boolean removed = false;
+        Iterator<Map.Entry<String, String>> iterator = images.entrySet().iterator();
+        while (iterator.hasNext()) {
+            if (dockerImageNames.contains(iterator.next().getValue())) {
+                iterator.remove();
+                removed = true;
+            }
+        }
+        if (removed) {
+            persist();
+        }
+    }
+
+    private void persist() {
+        List<String> output = new ArrayList<>();
+        for (Map.Entry<String, String> entry : images.entrySet()) {
+            output.add(entry.getKey() + "=" + entry.getValue());
+        }
+        FileOutputThread fileOutput = new FileOutputThread(registryFileName, output);
+        fileOutput.run();
+    }
+
+    private static String generateKey(String repository, String digest) {
+        return repository + "@" + digest;
+    }
+}
@@ -0,0 +1,245 @@
+/*
+* Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.wso2.strategy.poc.docker;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.spotify.docker.client.DockerClient;
+import com.spotify.docker.client.DockerException;
+import com.spotify.docker.client.ProgressHandler;
+import com.spotify.docker.client.messages.ProgressMessage;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * pre-pulls the base images of the generated Dockerfiles and resolves them to their content digests
+ * <p>
+ * The base images are pulled once, in the background, when the owning handler starts up, so that
+ * no deployment pulls a base image within its build. Dockerfiles are pinned to the resolved digests,
+ * which keeps the layer cache valid when a base image tag moves upstream. A base image which cannot
+ * be pulled, or for which the registry reports no digest, is left unpinned until a later resolution
+ * pulls it again. An untagged base image is
+ * resolved as its latest tag, since pulling a bare repository would pull each of its tags. A pull which
+ * does not complete within the resolution timeout leaves the base image unpinned, rather than holding
+ * up the builds.
+ */
+public class BaseImageResolver {
+    private final DockerClient dockerClient;
+    private final ListeningExecutorService pullExecutor;
+    // base image -> pinned base image reference
+    private final ConcurrentMap<String, ListenableFuture<String>> pinnedImages = new ConcurrentHashMap<>();
+    // base images whose pull has already outlasted a resolution, which are no longer waited for
+    private final Set<String> stalledPulls = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private volatile long resolveTimeoutInMilliseconds = DEFAULT_RESOLVE_TIMEOUT_IN_MILLISECONDS;
+
+    public static final long DEFAULT_RESOLVE_TIMEOUT_IN_MILLISECONDS = 60000;
+
+    private static final String DIGEST_STATUS_PREFIX = "Digest: ";
+    private static final String PULLING_STATUS_PREFIX = "Pulling from ";
+    private static final String DIGEST_SEPARATOR = "@";
+    private static final String TAG_SEPARATOR = ":";
+    private static final String LATEST_TAG = "latest";
+    private static final Logger LOG = LogManager.getLogger(BaseImageResolver.class);
+
+    public BaseImageResolver(DockerClient dockerClient) {
+        this.dockerClient = dockerClient;
+        pullExecutor = MoreExecutors.listeningDecorator(Executors.newSingleThreadExecutor(
+                new ThreadFactoryBuilder().setNameFormat("docker-base-image-pull-%d").setDaemon(true).build()));
+    }
+
+    /**
+     * starts pulling the specified base images in the background, unless they are already being pulled
+     *
+     * @param baseImages base images (repository[:tag]) to be pulled
+     */
+    public void warmUp(Collection<String> baseImages) {
+        for (String baseImage : baseImages) {
+            getPinnedImage(normalize(baseImage));
+        }
+    }
+
+    /**
+     * returns the digest pinned reference (repository@digest) of the specified base image, waiting
+     * for its pull to complete if it is still in progress, at most for the resolution timeout
+     *
+     * @param baseImage base image (repository[:tag])
+     * @return the digest pinned reference of the base image, or the tagged base image if it could not be pinned
+     */
+    public String resolve(String baseImage) {
+        String taggedImage = normalize(baseImage);
+        ListenableFuture<String> pinnedImage = getPinnedImage(taggedImage);
+        try {
+            if (stalledPulls.contains(taggedImage)) {
+                return pinnedImage.isDone() ? pinnedImage.get() : taggedImage;
+            }
+            return pinnedImage.get(resolveTimeoutInMilliseconds, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException exception) {
+            stalledPulls.add(taggedImage);
+            LOG.warn(String.format("The pull of the base image [docker-image] %s did not complete within %d ms, "
+                    + "it is left unpinned until the pull completes.", taggedImage, resolveTimeoutInMilliseconds));
+            return taggedImage;
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            return taggedImage;
+        } catch (ExecutionException exception) {
+            return taggedImage;
+        }
+    }
+
+    /**
+     * sets the maximum time a resolution waits for the pull of a base image
+     *
+     * @param resolveTimeoutInMilliseconds maximum time a resolution waits for the pull of a base image
+     */
+    public void setResolveTimeout(long resolveTimeoutInMilliseconds) {
+        this.resolveTimeoutInMilliseconds = resolveTimeoutInMilliseconds;
+    }
+
+    /**
+     * stops pulling the base images
+     */
+    public void shutdown() {
+        pullExecutor.shutdownNow();
+    }
+
+    private ListenableFuture<String> getPinnedImage(final String baseImage) {
+        ListenableFuture<String> pinnedImage = pinnedImages.get(baseImage);
+        if (pinnedImage == null) {
+            synchronized (this) {
+                pinnedImage = pinnedImages.get(baseImage);
+                if (pinnedImage == null) {
+                    final ListenableFuture<String> pull = pullExecutor.submit(new Callable<String>() {
+                        public String call() throws Exception {
+                            return pull(baseImage);
+                        }
+                    });
+                    pinnedImages.put(baseImage, pull);
+                    // a failed pull is not kept, so that the next resolution pulls the base image again
+                    Futures.addCallback(pull, new FutureCallback<String>() {
+                        public void onSuccess(String pinnedImage) {
+                        }
+
+                        public void onFailure(Throwable throwable) {
+                            pinnedImages.remove(baseImage, pull);
+                            stalledPulls.remove(baseImage);
+                        }
+                    });
+                    pinnedImage = pull;
+                }
+            }
+        }
+        return pinnedImage;
+    }
+
+    private String pull(String baseImage) throws DockerException, InterruptedException {
+        long startTime = System.currentTimeMillis();
+        final String requestedTag = getTag(baseImage);
+        // tag whose layers the pull is currently reporting, null until the daemon names one
+        final String[] pulledTag = new String[1];
+        final String[] digest = new String[1];
+        try {
+            dockerClient.pull(baseImage, new ProgressHandler() {
+                public void progress(ProgressMessage message) throws DockerException {
+                    if (message.error() != null) {
+                        throw new DockerException(message.error());
+                    }
+                    String status = message.status();
+                    if (status == null) {
+                        return;
+                    }
+                    if (status.startsWith(PULLING_STATUS_PREFIX)) {
+                        pulledTag[0] = message.id();
+                    } else if ((status.startsWith(DIGEST_STATUS_PREFIX)) && (digest[0] == null)) {
+                        // only the digest of the requested tag pins the base image
+                        boolean requestedTagPulled = (pulledTag[0] == null) || (requestedTag == null)
+                                || (requestedTag.equals(pulledTag[0]));
+                        if (requestedTagPulled) {
+                            digest[0] = status.substring(DIGEST_STATUS_PREFIX.length()).trim();
+                        }
+                    }
+                }
+            });
+        } catch (DockerException exception) {
+            LOG.error(String.format("Could not pull the base image [docker-image] %s, builds will pull it "
+                    + "instead.", baseImage), exception);
+            throw exception;
+        }
+        if (digest[0] == null) {
+            String message = String.format("No digest reported for the base image [docker-image] %s, it is left "
+                    + "unpinned.", baseImage);
+            LOG.warn(message);
+            throw new DockerException(message);
+        }
+        String pinnedImage = getRepository(baseImage) + DIGEST_SEPARATOR + digest[0];
+        if (LOG.isDebugEnabled()) {
+            LOG.debug(String.format("Pulled the base image [docker-image] %s in %d ms, pinned to %s.", baseImage,
+                    System.currentTimeMillis() - startTime, pinnedImage));
+        }
+        return pinnedImage;
+    }
+
+    /**
+     * returns the specified base image with the latest tag if it has neither a tag nor a digest
+     *
+     * @param baseImage base image (repository[:tag])
+     * @return the tagged or digest pinned base image
+     */
+    static String normalize(String baseImage) {
+        if ((baseImage.contains(DIGEST_SEPARATOR)) || (getTag(baseImage) != null)) {
+            return baseImage;
+        }
+        return baseImage + TAG_SEPARATOR + LATEST_TAG;
+    }
+
+    private static String getTag(String baseImage) {
+        if (baseImage.contains(DIGEST_SEPARATOR)) {
+            return null;
+        }
+        // a colon before the last slash separates a registry port, not a tag
+        int tagSeparatorIndex = baseImage.lastIndexOf(TAG_SEPARATOR);
+        if (tagSeparatorIndex > baseImage.lastIndexOf('/')) {
+            return baseImage.substring(tagSeparatorIndex + 1);
+        }
+        return null;
+    }
+
+    private static String getRepository(String baseImage) {
+        int digestSeparatorIndex = baseImage.indexOf(DIGEST_SEPARATOR);
+        if (digestSeparatorIndex > 0) {
+            return baseImage.substring(0, digestSeparatorIndex);
+        }
+        int tagSeparatorIndex = baseImage.lastIndexOf(':');
+        if (tagSeparatorIndex > baseImage.lastIndexOf('/')) {
+            return baseImage.substring(0, tagSeparatorIndex);
+        }
+        return baseImage;
+    }
+}
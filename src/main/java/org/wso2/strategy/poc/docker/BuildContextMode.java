@@ -0,0 +1,38 @@
+/*
+* Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.wso2.strategy.poc.docker;
+
+/**
+ * the ways in which a Docker build context can be prepared for a web artifact
+ */
+public enum BuildContextMode {
+    /**
+     * the Dockerfile is written next to the web artifact and the artifact's whole parent
+     * directory is sent to the Docker daemon as the build context
+     */
+    ARTIFACT_DIRECTORY,
+    /**
+     * each build gets its own workspace holding only the generated Dockerfile and the web artifact,
+     * and only that workspace is sent to the Docker daemon as the build context
+     */
+    ISOLATED_WORKSPACE,
+    /**
+     * each build gets its own workspace in which the web artifact is exploded, and the third-party
+     * libraries, resources and application classes are added as separate image layers, ordered from
+     * the least to the most volatile, so that unchanged layers are reused from the Docker layer cache
+     */
+    LAYERED_WORKSPACE
+}
@@ -0,0 +1,293 @@
+/*
+* Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.wso2.strategy.poc.docker;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.wso2.strategy.poc.miscellaneous.helper.WebArtifactHandlerHelper;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * a Docker build context directory prepared for a single web artifact build
+ */
+class DockerBuildContext implements Closeable {
+    private final Path directory;
+    private final boolean isolated;
+    private final List<ImageLayer> layers = new ArrayList<>();
+
+    private static final String DOCKER_FILE_NAME = "Dockerfile";
+    private static final String WORKSPACE_PREFIX = "build-";
+    private static final String LAYERS_DIRECTORY = "layers";
+    private static final String LIBRARY_LAYER = "lib";
+    private static final String RESOURCE_LAYER = "resources";
+    private static final String CLASS_LAYER = "classes";
+    // the layers from the least to the most volatile
+    private static final List<String> LAYERS = Arrays.asList(LIBRARY_LAYER, RESOURCE_LAYER, CLASS_LAYER);
+    private static final String LIBRARY_ENTRY_PREFIX = "WEB-INF/lib/";
+    private static final String CLASS_ENTRY_PREFIX = "WEB-INF/classes/";
+    // a fixed modification time, so that the content of unchanged layers is identical across builds
+    private static final FileTime LAYER_FILE_TIME = FileTime.fromMillis(0);
+    private static final Logger LOG = LogManager.getLogger(DockerBuildContext.class);
+
+    private DockerBuildContext(Path directory, boolean isolated) {
+        this.directory = directory;
+        this.isolated = isolated;
+    }
+
+    /**
+     * writes the Dockerfile next to the web artifact and uses the artifact's parent directory
+     * as the build context
+     *
+     * @param artifactPath      path to the web artifact
+     * @param dockerFileContent content of the Dockerfile
+     * @return the build context
+     * @throws IOException
+     */
+    static DockerBuildContext createInArtifactDirectory(Path artifactPath, List<String> dockerFileContent)
+            throws IOException {
+        Path parentDirectory = artifactPath.toAbsolutePath().getParent();
+        if (parentDirectory == null) {
+            parentDirectory = Paths.get("").toAbsolutePath();
+        }
+        Files.write(parentDirectory.resolve(DOCKER_FILE_NAME), dockerFileContent, StandardCharsets.UTF_8);
+        return new DockerBuildContext(parentDirectory, false);
+    }
+
+    /**
+     * creates a new workspace under the workspace root holding only the Dockerfile and the web artifact
+     * <p>
+     * The web artifact is hard linked in to the workspace, so that no copy of the artifact is made.
+     * The artifact is copied only if the workspace root is on a file store which cannot link to it.
+     *
+     * @param workspaceRoot     directory under which the build workspaces are created
+     * @param artifactPath      path to the web artifact
+     * @param dockerFileContent content of the Dockerfile
+     * @return the build context
+     * @throws IOException
+     */
+    static DockerBuildContext createIsolatedWorkspace(Path workspaceRoot, Path artifactPath,
+            List<String> dockerFileContent) throws IOException {
+        Files.createDirectories(workspaceRoot);
+        Path workspace = Files.createTempDirectory(workspaceRoot, WORKSPACE_PREFIX);
+        DockerBuildContext context = new DockerBuildContext(workspace, true);
+        try {
+            Files.write(workspace.resolve(DOCKER_FILE_NAME), dockerFileContent, StandardCharsets.UTF_8);
+            Path linkedArtifact = workspace.resolve(artifactPath.getFileName());
+            try {
+                Files.createLink(linkedArtifact, artifactPath.toAbsolutePath());
+            } catch (IOException | UnsupportedOperationException exception) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug(String.format("Could not link the [web-artifact] %s in to the build workspace, "
+                            + "copying it instead.", artifactPath));
+                }
+                Files.copy(artifactPath, linkedArtifact);
+            }
+        } catch (IOException exception) {
+            context.close();
+            throw exception;
+        }
+        if (LOG.isDebugEnabled()) {
+            LOG.debug(String.format("Created the build workspace [workspace] %s for the [web-artifact] %s.", workspace,
+                    artifactPath));
+        }
+        return context;
+    }
+
+    /**
+     * returns the instructions which copy each non-empty layer of the web artifact in to the web application
+     * directory, ordered from the least to the most volatile layer
+     * <p>
+     * Only the entry names of the artifact are read, so that the Dockerfile of a layered build is known
+     * before the artifact is exploded.
+     *
+     * @param artifactPath     path to the web artifact
+     * @param webAppsDirectory web applications directory of the Apache Tomcat server in the image
+     * @return the layer instructions of the Dockerfile
+     * @throws IOException
+     */
+    static List<String> getLayerInstructions(Path artifactPath, String webAppsDirectory) throws IOException {
+        Set<String> nonEmptyLayers = new HashSet<>();
+        try (ZipFile artifact = new ZipFile(artifactPath.toFile())) {
+            Enumeration<? extends ZipEntry> entries = artifact.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                if (!entry.isDirectory()) {
+                    nonEmptyLayers.add(getLayer(entry.getName()));
+                }
+            }
+        }
+        List<String> instructions = new ArrayList<>();
+        for (String layer : LAYERS) {
+            if (nonEmptyLayers.contains(layer)) {
+                instructions.add(getLayerInstruction(layer, webAppsDirectory));
+            }
+        }
+        return instructions;
+    }
+
+    /**
+     * creates a new workspace under the workspace root in which the web artifact is exploded in to
+     * third-party library, resource and application class layers
+     * <p>
+     * The Dockerfile content is expected to hold the layer instructions of the artifact, as returned by
+     * {@link #getLayerInstructions(Path, String)}.
+     *
+     * @param workspaceRoot     directory under which the build workspaces are created
+     * @param artifactPath      path to the web artifact
+     * @param webAppsDirectory  web applications directory of the Apache Tomcat server in the image
+     * @param dockerFileContent content of the Dockerfile
+     * @return the build context
+     * @throws IOException
+     */
+    static DockerBuildContext createLayeredWorkspace(Path workspaceRoot, Path artifactPath, String webAppsDirectory,
+            List<String> dockerFileContent) throws IOException {
+        Files.createDirectories(workspaceRoot);
+        Path workspace = Files.createTempDirectory(workspaceRoot, WORKSPACE_PREFIX);
+        DockerBuildContext context = new DockerBuildContext(workspace, true);
+        try {
+            String appName = WebArtifactHandlerHelper.getArtifactName(artifactPath);
+            Path layersDirectory = workspace.resolve(LAYERS_DIRECTORY);
+            Map<String, Long> layerSizes = new LinkedHashMap<>();
+            for (String layer : LAYERS) {
+                layerSizes.put(layer, 0L);
+            }
+            try (ZipFile artifact = new ZipFile(artifactPath.toFile())) {
+                Enumeration<? extends ZipEntry> entries = artifact.entries();
+                while (entries.hasMoreElements()) {
+                    ZipEntry entry = entries.nextElement();
+                    if (entry.isDirectory()) {
+                        continue;
+                    }
+                    String layer = getLayer(entry.getName());
+                    Path layerDirectory = layersDirectory.resolve(layer);
+                    Path target = layerDirectory.resolve(appName).resolve(entry.getName()).normalize();
+                    if (!target.startsWith(layerDirectory)) {
+                        throw new IOException(String.format("Invalid entry %s in the [web-artifact] %s.",
+                                entry.getName(), artifactPath));
+                    }
+                    Files.createDirectories(target.getParent());
+                    try (InputStream entryContent = artifact.getInputStream(entry)) {
+                        layerSizes.put(layer, layerSizes.get(layer) + Files.copy(entryContent, target));
+                    }
+                    Files.setLastModifiedTime(target, LAYER_FILE_TIME);
+                }
+            }
+            if (Files.exists(layersDirectory)) {
+                resetDirectoryTimes(layersDirectory);
+            }
+            for (Map.Entry<String, Long> layerSize : layerSizes.entrySet()) {
+                if (Files.exists(layersDirectory.resolve(layerSize.getKey()))) {
+                    context.layers.add(new ImageLayer(layerSize.getKey(),
+                            getLayerInstruction(layerSize.getKey(), webAppsDirectory), layerSize.getValue()));
+                }
+            }
+            Files.write(workspace.resolve(DOCKER_FILE_NAME), dockerFileContent, StandardCharsets.UTF_8);
+        } catch (IOException exception) {
+            context.close();
+            throw exception;
+        }
+        if (LOG.isDebugEnabled()) {
+            LOG.debug(String.format("Created the layered build workspace [workspace] %s for the [web-artifact] %s %s.",
+                    workspace, artifactPath, context.layers));
+        }
+        return context;
+    }
+
+    /**
+     * returns the directory to be sent to the Docker daemon as the build context
+     *
+     * @return the directory to be sent to the Docker daemon as the build context
+     */
+    Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * returns the image layers of a layered build context, empty for other build contexts
+     *
+     * @return the image layers of a layered build context
+     */
+    List<ImageLayer> getLayers() {
+        return layers;
+    }
+
+    /**
+     * deletes the build workspace, if this build context is an isolated workspace
+     *
+     * @throws IOException
+     */
+    public void close() throws IOException {
+        if (isolated && Files.exists(directory)) {
+            Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+                    Files.delete(file);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                public FileVisitResult postVisitDirectory(Path visitedDirectory, IOException exception)
+                        throws IOException {
+                    Files.delete(visitedDirectory);
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        }
+    }
+
+    private static void resetDirectoryTimes(Path layersDirectory) throws IOException {
+        Files.walkFileTree(layersDirectory, new SimpleFileVisitor<Path>() {
+            public FileVisitResult postVisitDirectory(Path visitedDirectory, IOException exception)
+                    throws IOException {
+                Files.setLastModifiedTime(visitedDirectory, LAYER_FILE_TIME);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private static String getLayerInstruction(String layer, String webAppsDirectory) {
+        return "COPY " + LAYERS_DIRECTORY + "/" + layer + "/ " + webAppsDirectory;
+    }
+
+    private static String getLayer(String entryName) {
+        if (entryName.startsWith(LIBRARY_ENTRY_PREFIX)) {
+            return LIBRARY_LAYER;
+        } else if (entryName.startsWith(CLASS_ENTRY_PREFIX)) {
+            return CLASS_LAYER;
+        } else {
+            return RESOURCE_LAYER;
+        }
+    }
+}
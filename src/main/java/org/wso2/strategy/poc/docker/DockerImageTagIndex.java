@@ -0,0 +1,275 @@
+/*
+* Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.wso2.strategy.poc.docker;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.spotify.docker.client.DockerClient;
+import com.spotify.docker.client.DockerException;
+import com.spotify.docker.client.messages.Image;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.wso2.strategy.poc.miscellaneous.helper.WebArtifactHandlerHelper;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * an in-memory index of Docker image repo tags, keyed by repository (tenant/app) and major version
+ * <p>
+ * The index is loaded once from the Docker daemon and is kept current by the image mutations made
+ * through the owning handler (build, tag and remove refresh the affected repository) and by a
+ * periodic background re-synchronization which picks up changes made outside this application.
+ * Lookups are served from immutable snapshots and do not make any Docker daemon round-trip.
+ */
+public class DockerImageTagIndex {
+    private final DockerClient dockerClient;
+    // repository -> (major version -> (repo tag -> image))
+    private volatile Map<String, Map<String, Map<String, Image>>> repositories;
+    private ScheduledExecutorService resyncExecutor;
+
+    private static final String UNTAGGED_REPO_TAG = "<none>:<none>";
+    private static final String LATEST_VERSION = "latest";
+    private static final String REPOSITORY_FILTER = "filter";
+    private static final int RESYNC_INTERVAL_IN_SECONDS = 300;
+    private static final Logger LOG = LogManager.getLogger(DockerImageTagIndex.class);
+
+    public DockerImageTagIndex(DockerClient dockerClient) {
+        this.dockerClient = dockerClient;
+    }
+
+    /**
+     * returns the images which have at least one repo tag under the specified repository and major version
+     *
+     * @param repository   Docker image repository (creator/artifact name)
+     * @param majorVersion major version of the image builds
+     * @return the images which have at least one repo tag under the specified repository and major version
+     * @throws DockerException
+     * @throws InterruptedException
+     */
+    public List<Image> getImages(String repository, String majorVersion) throws DockerException, InterruptedException {
+        Map<String, Image> versionTags = getVersionTags(repository, majorVersion);
+        return new ArrayList<>(new LinkedHashSet<>(versionTags.values()));
+    }
+
+    /**
+     * returns the repo tags under the specified repository and major version
+     *
+     * @param repository   Docker image repository (creator/artifact name)
+     * @param majorVersion major version of the image builds
+     * @return the repo tags under the specified repository and major version
+     * @throws DockerException
+     * @throws InterruptedException
+     */
+    public List<String> getTags(String repository, String majorVersion) throws DockerException, InterruptedException {
+        return new ArrayList<>(getVersionTags(repository, majorVersion).keySet());
+    }
+
+    /**
+     * returns the images of all major versions under the specified repository, keyed by repo tag
+     *
+     * @param repository Docker image repository (creator/artifact name)
+     * @return the images of all major versions under the specified repository, keyed by repo tag
+     * @throws DockerException
+     * @throws InterruptedException
+     */
+    public Map<String, Image> getRepositoryImages(String repository) throws DockerException, InterruptedException {
+        if (repositories == null) {
+            load();
+        }
+        Map<String, Image> repositoryImages = new LinkedHashMap<>();
+        Map<String, Map<String, Image>> versions = repositories.get(repository);
+        if (versions != null) {
+            for (Map<String, Image> versionTags : versions.values()) {
+                repositoryImages.putAll(versionTags);
+            }
+        }
+        return repositoryImages;
+    }
+
+    /**
+     * checks whether the specified repo tag currently exists
+     *
+     * @param repoTag Docker image repo tag (repository:tag)
+     * @return true if the repo tag exists, else false
+     * @throws DockerException
+     * @throws InterruptedException
+     */
+    public boolean containsTag(String repoTag) throws DockerException, InterruptedException {
+        return getImage(repoTag) != null;
+    }
+
+    /**
+     * returns the image which currently carries the specified repo tag
+     *
+     * @param repoTag Docker image repo tag (repository:tag)
+     * @return the image which currently carries the repo tag, null if no such image exists
+     * @throws DockerException
+     * @throws InterruptedException
+     */
+    public Image getImage(String repoTag) throws DockerException, InterruptedException {
+        int tagSeparatorIndex = repoTag.lastIndexOf(':');
+        if (tagSeparatorIndex <= repoTag.lastIndexOf('/')) {
+            return null;
+        }
+        String repository = repoTag.substring(0, tagSeparatorIndex);
+        String majorVersion = WebArtifactHandlerHelper.getMajorVersion(repoTag.substring(tagSeparatorIndex + 1));
+        return getVersionTags(repository, majorVersion).get(repoTag);
+    }
+
+    /**
+     * reloads the index entries of a single repository from the Docker daemon
+     *
+     * @param repository Docker image repository (creator/artifact name)
+     * @throws DockerException
+     * @throws InterruptedException
+     */
+    public void refreshRepository(String repository) throws DockerException, InterruptedException {
+        if (repositories == null) {
+            load();
+            return;
+        }
+        List<Image> images = dockerClient
+                .listImages(DockerClient.ListImagesParam.create(REPOSITORY_FILTER, repository));
+        Map<String, Map<String, Map<String, Image>>> fetched = buildIndex(images);
+        synchronized (this) {
+            Map<String, Map<String, Map<String, Image>>> updated = new HashMap<>(repositories);
+            Map<String, Map<String, Image>> repositoryEntry = fetched.get(repository);
+            if (repositoryEntry != null) {
+                updated.put(repository, repositoryEntry);
+            } else {
+                updated.remove(repository);
+            }
+            repositories = Collections.unmodifiableMap(updated);
+        }
+        if (LOG.isDebugEnabled()) {
+            LOG.debug(String.format("Refreshed the image tag index [repository] %s.", repository));
+        }
+    }
+
+    /**
+     * stops the background re-synchronization of the index
+     */
+    public synchronized void shutdown() {
+        if (resyncExecutor != null) {
+            resyncExecutor.shutdownNow();
+            resyncExecutor = null;
+        }
+    }
+
+    private Map<String, Image> getVersionTags(String repository, String majorVersion)
+            throws DockerException, InterruptedException {
+        if (repositories == null) {
+            load();
+        }
+        Map<String, Map<String, Image>> versions = repositories.get(repository);
+        if (versions == null) {
+            return Collections.emptyMap();
+        }
+        String version = ((majorVersion == null) || (majorVersion.equals(""))) ? LATEST_VERSION : majorVersion;
+        Map<String, Image> versionTags = versions.get(version);
+        if (versionTags == null) {
+            return Collections.emptyMap();
+        }
+        return versionTags;
+    }
+
+    /**
+     * loads the complete index from the Docker daemon, once, and schedules the background re-synchronization
+     *
+     * @throws DockerException
+     * @throws InterruptedException
+     */
+    private synchronized void load() throws DockerException, InterruptedException {
+        if (repositories != null) {
+            return;
+        }
+        resync();
+        resyncExecutor = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("docker-image-index-%d").setDaemon(true).build());
+        resyncExecutor.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                try {
+                    resync();
+                } catch (InterruptedException exception) {
+                    Thread.currentThread().interrupt();
+                } catch (Exception exception) {
+                    LOG.error("Could not re-synchronize the image tag index.", exception);
+                }
+            }
+        }, RESYNC_INTERVAL_IN_SECONDS, RESYNC_INTERVAL_IN_SECONDS, TimeUnit.SECONDS);
+    }
+
+    private void resync() throws DockerException, InterruptedException {
+        Map<String, Map<String, Map<String, Image>>> fetched = buildIndex(dockerClient.listImages());
+        synchronized (this) {
+            repositories = Collections.unmodifiableMap(fetched);
+        }
+        if (LOG.isDebugEnabled()) {
+            LOG.debug(String.format("Loaded the image tag index [repositories] %d.", fetched.size()));
+        }
+    }
+
+    private static Map<String, Map<String, Map<String, Image>>> buildIndex(List<Image> images) {
+        Map<String, Map<String, Map<String, Image>>> index = new HashMap<>();
+        for (Image image : images) {
+            if (image.repoTags() == null) {
+                continue;
+            }
+            for (String repoTag : image.repoTags()) {
+                int tagSeparatorIndex = repoTag.lastIndexOf(':');
+                if ((repoTag.equals(UNTAGGED_REPO_TAG)) || (tagSeparatorIndex <= repoTag.lastIndexOf('/'))) {
+                    continue;
+                }
+                String repository = repoTag.substring(0, tagSeparatorIndex);
+                String majorVersion = WebArtifactHandlerHelper
+                        .getMajorVersion(repoTag.substring(tagSeparatorIndex + 1));
+                Map<String, Map<String, Image>> versions = index.get(repository);
+                if (versions == null) {
+                    versions = new HashMap<>();
+                    index.put(repository, versions);
+                }
+                Map<String, Image> versionTags = versions.get(majorVersion);
+                if (versionTags == null) {
+                    versionTags = new LinkedHashMap<>();
+                    versions.put(majorVersion, versionTags);
+                }
+                versionTags.put(repoTag, image);
+            }
+        }
+        freeze(index);
+        return index;
+    }
+
+    private static void freeze(Map<String, Map<String, Map<String, Image>>> index) {
+        Set<String> repositoryNames = new LinkedHashSet<>(index.keySet());
+        for (String repository : repositoryNames) {
+            Map<String, Map<String, Image>> versions = index.get(repository);
+            for (Map.Entry<String, Map<String, Image>> version : versions.entrySet()) {
+                version.setValue(Collections.unmodifiableMap(version.getValue()));
+            }
+            index.put(repository, Collections.unmodifiableMap(versions));
+        }
+    }
+}
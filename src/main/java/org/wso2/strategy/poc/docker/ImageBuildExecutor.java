@@ -0,0 +1,189 @@
+/*
+* Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.wso2.strategy.poc.docker;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.wso2.strategy.poc.miscellaneous.concurrency.AtomicMaximum;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * a bounded executor which runs the Docker image builds sent to a single Docker endpoint
+ * <p>
+ * At most the configured number of builds run concurrently against an endpoint, the rest wait in
+ * the queue. The queue depth and the time builds spend waiting in the queue are tracked.
+ */
+public class ImageBuildExecutor {
+    private final String dockerEndpointURI;
+    private final ThreadPoolExecutor threadPool;
+    private final ListeningExecutorService executorService;
+    private final AtomicLong startedBuilds = new AtomicLong();
+    private final AtomicLong totalWaitTimeInMilliseconds = new AtomicLong();
+    private final AtomicLong maxWaitTimeInMilliseconds = new AtomicLong();
+
+    // one build executor per Docker endpoint, shared by all handlers of that endpoint
+    private static final ConcurrentMap<String, ImageBuildExecutor> ENDPOINT_EXECUTORS = new ConcurrentHashMap<>();
+    private static final Logger LOG = LogManager.getLogger(ImageBuildExecutor.class);
+
+    private ImageBuildExecutor(String dockerEndpointURI, int maxConcurrentBuilds) {
+        this.dockerEndpointURI = dockerEndpointURI;
+        threadPool = new ThreadPoolExecutor(maxConcurrentBuilds, maxConcurrentBuilds, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactoryBuilder().setNameFormat("docker-image-build-%d").setDaemon(true).build());
+        executorService = MoreExecutors.listeningDecorator(threadPool);
+    }
+
+    /**
+     * returns the build executor of the specified Docker endpoint, creating it with the specified
+     * concurrency limit if the endpoint has none yet
+     * <p>
+     * The limit of an existing executor is left as it is, it is only changed by setMaxConcurrentBuilds.
+     * A differing limit is ignored with a warning.
+     *
+     * @param dockerEndpointURI   URI of the Docker endpoint
+     * @param maxConcurrentBuilds maximum number of builds to run concurrently against a new executor
+     * @return the build executor of the specified Docker endpoint
+     */
+    public static ImageBuildExecutor getInstance(String dockerEndpointURI, int maxConcurrentBuilds) {
+        if (maxConcurrentBuilds < 1) {
+            throw new IllegalArgumentException("Maximum number of concurrent builds should be at least one.");
+        }
+        ImageBuildExecutor buildExecutor = ENDPOINT_EXECUTORS.get(dockerEndpointURI);
+        if (buildExecutor == null) {
+            ImageBuildExecutor newBuildExecutor = new ImageBuildExecutor(dockerEndpointURI, maxConcurrentBuilds);
+            buildExecutor = ENDPOINT_EXECUTORS.putIfAbsent(dockerEndpointURI, newBuildExecutor);
+            if (buildExecutor == null) {
+                return newBuildExecutor;
+            }
+            newBuildExecutor.executorService.shutdown();
+        }
+        if (buildExecutor.getMaxConcurrentBuilds() != maxConcurrentBuilds) {
+            LOG.warn(String.format("Ignoring the requested limit of %d concurrent builds, the build executor of "
+                            + "[docker-endpoint] %s already runs %d concurrent builds.", maxConcurrentBuilds,
+                    dockerEndpointURI, buildExecutor.getMaxConcurrentBuilds()));
+        }
+        return buildExecutor;
+    }
+
+    /**
+     * queues the specified build
+     *
+     * @param build the build to be run
+     * @param <T>   type of the build outcome
+     * @return a future of the build outcome
+     */
+    public <T> ListenableFuture<T> submit(final Callable<T> build) {
+        final long queuedTime = System.currentTimeMillis();
+        return executorService.submit(new Callable<T>() {
+            public T call() throws Exception {
+                recordWaitTime(System.currentTimeMillis() - queuedTime);
+                return build.call();
+            }
+        });
+    }
+
+    /**
+     * sets the maximum number of builds to run concurrently against the Docker endpoint
+     *
+     * @param maxConcurrentBuilds maximum number of builds to run concurrently
+     */
+    public synchronized void setMaxConcurrentBuilds(int maxConcurrentBuilds) {
+        if (maxConcurrentBuilds > threadPool.getMaximumPoolSize()) {
+            threadPool.setMaximumPoolSize(maxConcurrentBuilds);
+            threadPool.setCorePoolSize(maxConcurrentBuilds);
+        } else if (maxConcurrentBuilds < threadPool.getMaximumPoolSize()) {
+            threadPool.setCorePoolSize(maxConcurrentBuilds);
+            threadPool.setMaximumPoolSize(maxConcurrentBuilds);
+        }
+    }
+
+    public int getMaxConcurrentBuilds() {
+        return threadPool.getMaximumPoolSize();
+    }
+
+    /**
+     * returns the number of builds waiting in the queue
+     *
+     * @return the number of builds waiting in the queue
+     */
+    public int getQueueDepth() {
+        return threadPool.getQueue().size();
+    }
+
+    /**
+     * returns the number of builds currently running
+     *
+     * @return the number of builds currently running
+     */
+    public int getActiveBuilds() {
+        return threadPool.getActiveCount();
+    }
+
+    public long getCompletedBuilds() {
+        return threadPool.getCompletedTaskCount();
+    }
+
+    /**
+     * returns the average time builds waited in the queue before they started
+     *
+     * @return the average time builds waited in the queue before they started
+     */
+    public long getAverageWaitTimeInMilliseconds() {
+        long started = startedBuilds.get();
+        if (started > 0) {
+            return totalWaitTimeInMilliseconds.get() / started;
+        } else {
+            return 0;
+        }
+    }
+
+    /**
+     * returns the longest time a build waited in the queue before it started
+     *
+     * @return the longest time a build waited in the queue before it started
+     */
+    public long getMaxWaitTimeInMilliseconds() {
+        return maxWaitTimeInMilliseconds.get();
+    }
+
+    public String toString() {
+        return String.format("[docker-endpoint] %s [max-concurrent-builds] %d [active-builds] %d [queue-depth] %d "
+                        + "[average-wait] %d ms [max-wait] %d ms", dockerEndpointURI, getMaxConcurrentBuilds(),
+                getActiveBuilds(), getQueueDepth(), getAverageWaitTimeInMilliseconds(),
+                getMaxWaitTimeInMilliseconds());
+    }
+
+    private void recordWaitTime(long waitTimeInMilliseconds) {
+        startedBuilds.incrementAndGet();
+        totalWaitTimeInMilliseconds.addAndGet(waitTimeInMilliseconds);
+        AtomicMaximum.update(maxWaitTimeInMilliseconds, waitTimeInMilliseconds);
+        if (LOG.isDebugEnabled()) {
+            LOG.debug(String.format("Starting a Docker image build after waiting %d ms %s.", waitTimeInMilliseconds,
+                    this));
+        }
+    }
+}
@@ -0,0 +1,103 @@
+/*
+* Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.wso2.strategy.poc.docker;
+
+import com.spotify.docker.client.DockerException;
+import com.spotify.docker.client.ProgressHandler;
+import com.spotify.docker.client.messages.ProgressMessage;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * a Docker build progress handler which tracks the final image ID, any build error and the build steps
+ * served from the layer cache, as reported in the build's progress stream
+ */
+class ImageBuildProgressHandler implements ProgressHandler {
+    private final String dockerImageName;
+    private volatile String imageId;
+    private volatile String error;
+    private volatile String currentInstruction;
+    private final Set<String> cachedInstructions = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    private static final String STEP_PREFIX = "Step ";
+    private static final String STEP_INSTRUCTION_SEPARATOR = " : ";
+    private static final String CACHE_HIT_MESSAGE = "Using cache";
+
+    private static final Logger LOG = LogManager.getLogger(ImageBuildProgressHandler.class);
+
+    ImageBuildProgressHandler(String dockerImageName) {
+        this.dockerImageName = dockerImageName;
+    }
+
+    public void progress(ProgressMessage message) throws DockerException {
+        if (message.error() != null) {
+            error = message.error();
+            LOG.error(String.format("Docker image build error [docker-image] %s: %s", dockerImageName, error));
+        }
+        if (message.buildImageId() != null) {
+            imageId = message.buildImageId();
+        }
+        if (message.stream() != null) {
+            String line = message.stream().trim();
+            int separatorIndex = line.indexOf(STEP_INSTRUCTION_SEPARATOR);
+            if ((line.startsWith(STEP_PREFIX)) && (separatorIndex > 0)) {
+                currentInstruction = normalize(line.substring(separatorIndex + STEP_INSTRUCTION_SEPARATOR.length()));
+            } else if ((line.contains(CACHE_HIT_MESSAGE)) && (currentInstruction != null)) {
+                cachedInstructions.add(currentInstruction);
+            }
+            if (LOG.isDebugEnabled()) {
+                LOG.debug(String.format("[docker-image] %s: %s", dockerImageName, line));
+            }
+        }
+    }
+
+    /**
+     * returns true if the build step of the specified Dockerfile instruction was served from the layer cache
+     *
+     * @param instruction the Dockerfile instruction
+     * @return true if the build step was served from the layer cache, else false
+     */
+    boolean isCacheHit(String instruction) {
+        return cachedInstructions.contains(normalize(instruction));
+    }
+
+    private static String normalize(String instruction) {
+        return instruction.trim().replaceAll("\\s+", " ").toUpperCase(Locale.ENGLISH);
+    }
+
+    /**
+     * returns the image ID reported at the end of a successful build, else null
+     *
+     * @return the image ID reported at the end of a successful build
+     */
+    String getImageId() {
+        return imageId;
+    }
+
+    /**
+     * returns the build error reported by the Docker daemon, else null
+     *
+     * @return the build error reported by the Docker daemon
+     */
+    String getError() {
+        return error;
+    }
+}
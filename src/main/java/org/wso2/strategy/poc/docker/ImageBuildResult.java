@@ -0,0 +1,113 @@
+/*
+* Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.wso2.strategy.poc.docker;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * the outcome of a Docker image build, as reported by the build's own progress and result stream
+ */
+public class ImageBuildResult {
+    private final String dockerImageName;
+    private final String imageId;
+    private final Status status;
+    private final String message;
+    private final long durationInMilliseconds;
+    private final List<ImageLayer> layers;
+
+    /**
+     * the completion status of a Docker image build
+     */
+    public enum Status {
+        SUCCEEDED, FAILED, TIMED_OUT
+    }
+
+    public ImageBuildResult(String dockerImageName, String imageId, Status status, String message,
+            long durationInMilliseconds) {
+        this(dockerImageName, imageId, status, message, durationInMilliseconds, new ArrayList<ImageLayer>());
+    }
+
+    public ImageBuildResult(String dockerImageName, String imageId, Status status, String message,
+            long durationInMilliseconds, List<ImageLayer> layers) {
+        this.dockerImageName = dockerImageName;
+        this.imageId = imageId;
+        this.status = status;
+        this.message = message;
+        this.durationInMilliseconds = durationInMilliseconds;
+        this.layers = Collections.unmodifiableList(new ArrayList<>(layers));
+    }
+
+    /**
+     * returns the name of the built Docker image
+     *
+     * @return the name of the built Docker image
+     */
+    public String getDockerImageName() {
+        return dockerImageName;
+    }
+
+    /**
+     * returns the final image ID reported by the Docker daemon, null if the build did not succeed
+     *
+     * @return the final image ID reported by the Docker daemon
+     */
+    public String getImageId() {
+        return imageId;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    /**
+     * returns true if the image has been built and confirmed to exist, else false
+     *
+     * @return true if the image has been built and confirmed to exist, else false
+     */
+    public boolean isSuccessful() {
+        return status == Status.SUCCEEDED;
+    }
+
+    /**
+     * returns a description of the build outcome, such as the build error reported by the Docker daemon
+     *
+     * @return a description of the build outcome
+     */
+    public String getMessage() {
+        return message;
+    }
+
+    public long getDurationInMilliseconds() {
+        return durationInMilliseconds;
+    }
+
+    /**
+     * returns the separately built web artifact layers with their sizes and layer cache hits,
+     * empty unless the image was built in layered mode
+     *
+     * @return the separately built web artifact layers
+     */
+    public List<ImageLayer> getLayers() {
+        return layers;
+    }
+
+    public String toString() {
+        return String.format("[docker-image] %s [image-id] %s [status] %s [duration] %d ms %s", dockerImageName,
+                imageId, status, durationInMilliseconds, layers);
+    }
+}
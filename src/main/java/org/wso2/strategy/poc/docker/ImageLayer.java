@@ -0,0 +1,71 @@
+/*
+* Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.wso2.strategy.poc.docker;
+
+/**
+ * a Docker image layer added by a single build context instruction of a layered web artifact build
+ */
+public class ImageLayer {
+    private final String name;
+    private final String instruction;
+    private final long sizeInBytes;
+    private boolean cacheHit;
+
+    public ImageLayer(String name, String instruction, long sizeInBytes) {
+        this.name = name;
+        this.instruction = instruction;
+        this.sizeInBytes = sizeInBytes;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * returns the Dockerfile instruction which adds the layer
+     *
+     * @return the Dockerfile instruction which adds the layer
+     */
+    public String getInstruction() {
+        return instruction;
+    }
+
+    /**
+     * returns the size of the build context content added by the layer
+     *
+     * @return the size of the build context content added by the layer
+     */
+    public long getSizeInBytes() {
+        return sizeInBytes;
+    }
+
+    /**
+     * returns true if the Docker daemon reused the layer from its layer cache, else false
+     *
+     * @return true if the Docker daemon reused the layer from its layer cache, else false
+     */
+    public boolean isCacheHit() {
+        return cacheHit;
+    }
+
+    void setCacheHit(boolean cacheHit) {
+        this.cacheHit = cacheHit;
+    }
+
+    public String toString() {
+        return String.format("[layer] %s [size] %d bytes [cache-hit] %s", name, sizeInBytes, cacheHit);
+    }
+}
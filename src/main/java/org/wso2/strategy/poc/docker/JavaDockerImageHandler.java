@@ -15,85 +15,206 @@
 */
 package org.wso2.strategy.poc.docker;
 
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 import com.spotify.docker.client.DefaultDockerClient;
 import com.spotify.docker.client.DockerClient;
+import com.spotify.docker.client.DockerException;
 import com.spotify.docker.client.messages.Image;
+import com.spotify.docker.client.messages.RemovedImage;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.wso2.strategy.poc.docker.interfaces.IDockerImageHandler;
 import org.wso2.strategy.poc.miscellaneous.exceptions.WebArtifactHandlerException;
 import org.wso2.strategy.poc.miscellaneous.helper.WebArtifactHandlerHelper;
 
-import java.io.File;
 import java.io.IOException;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * a Java class which implements IDockerImageHandler Java interface
  */
 public class JavaDockerImageHandler implements IDockerImageHandler {
     private final DockerClient dockerClient;
+    private final DockerImageTagIndex imageTagIndex;
+    private final ArtifactDigestRegistry artifactDigestRegistry;
+    private final BuildContextMode buildContextMode;
+    private final Path buildWorkspaceRoot;
+    private final ImageBuildExecutor buildExecutor;
+    private final BaseImageResolver baseImageResolver;
+    private final String baseImage;
+    // names of the images whose builds timed out, which the Docker daemon may yet tag
+    private final Set<String> abandonedImageNames = Collections
+            .newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    private static final long DEFAULT_IMAGE_BUILD_TIMEOUT_IN_MILLISECONDS = 30 * 60 * 1000;
+    private static final int DEFAULT_MAX_CONCURRENT_BUILDS = 4;
+    private static final String DEFAULT_BASE_IMAGE = "tomcat:latest";
+    private static final String BUILD_WORKSPACE_DIRECTORY = "web-artifact-handler-builds";
+    private static final String ARTIFACT_DIGEST_FILENAME = "ArtifactDigests.txt";
+    private static final String TOMCAT_WEB_APPS_DIRECTORY = "/usr/local/tomcat/webapps/";
+    private static final String ARTIFACT_DIGEST_LABEL = "org.wso2.strategy.artifact.sha256";
+    private static final String LABEL_FILTER = "label";
     private static final Logger LOG = LogManager.getLogger(JavaDockerImageHandler.class);
 
     public JavaDockerImageHandler(String dockerEndpointURI) {
+        this(dockerEndpointURI, BuildContextMode.ISOLATED_WORKSPACE);
+    }
+
+    public JavaDockerImageHandler(String dockerEndpointURI, BuildContextMode buildContextMode) {
+        this(dockerEndpointURI, buildContextMode, DEFAULT_MAX_CONCURRENT_BUILDS);
+    }
+
+    /**
+     * @param dockerEndpointURI   URI of the Docker endpoint
+     * @param buildContextMode    the way in which the build context of an image is set up
+     * @param maxConcurrentBuilds maximum number of concurrent builds against the Docker endpoint, which applies
+     *                            only if no handler of the endpoint has been created before, as the build
+     *                            executor is shared per endpoint; else it is ignored with a warning and
+     *                            changed through the shared executor's setMaxConcurrentBuilds alone
+     */
+    public JavaDockerImageHandler(String dockerEndpointURI, BuildContextMode buildContextMode,
+            int maxConcurrentBuilds) {
+        this(dockerEndpointURI, buildContextMode, maxConcurrentBuilds, DEFAULT_BASE_IMAGE);
+    }
+
+    /**
+     * @param dockerEndpointURI   URI of the Docker endpoint
+     * @param buildContextMode    the way in which the build context of an image is set up
+     * @param maxConcurrentBuilds maximum number of concurrent builds against the Docker endpoint, which applies
+     *                            only if no handler of the endpoint has been created before, else it is
+     *                            ignored with a warning
+     * @param baseImage           Tomcat base image of the web artifact images, e.g. tomcat:latest
+     */
+    public JavaDockerImageHandler(String dockerEndpointURI, BuildContextMode buildContextMode,
+            int maxConcurrentBuilds, String baseImage) {
+        this.buildContextMode = buildContextMode;
+        this.baseImage = baseImage;
+        buildWorkspaceRoot = Paths.get(System.getProperty("java.io.tmpdir"), BUILD_WORKSPACE_DIRECTORY);
+        artifactDigestRegistry = new ArtifactDigestRegistry(ARTIFACT_DIGEST_FILENAME);
+        buildExecutor = ImageBuildExecutor.getInstance(dockerEndpointURI, maxConcurrentBuilds);
         if (LOG.isDebugEnabled()) {
             LOG.debug("Creating new DockerClient.");
         }
         dockerClient = DefaultDockerClient.builder().uri(dockerEndpointURI).build();
+        imageTagIndex = new DockerImageTagIndex(dockerClient);
         if (LOG.isDebugEnabled()) {
             LOG.debug(String.format("Creating new DockerClient[docker-client]: %s.", dockerClient));
         }
+        // pre-pulls the base image off the critical path of the first deployment
+        baseImageResolver = new BaseImageResolver(dockerClient);
+        baseImageResolver.warmUp(Collections.singletonList(baseImage));
     }
 
     public String buildImage(String creator, String deployedArtifactName, String version, Path artifactPath)
             throws WebArtifactHandlerException {
-        String dockerImageName = WebArtifactHandlerHelper
+        ImageBuildResult buildResult = buildImage(creator, deployedArtifactName, version, artifactPath,
+                DEFAULT_IMAGE_BUILD_TIMEOUT_IN_MILLISECONDS);
+        if (buildResult == null) {
+            return null;
+        }
+        if (!buildResult.isSuccessful()) {
+            String message = String.format("Could not create the Docker image[docker-image]: %s. %s",
+                    buildResult.getDockerImageName(), buildResult.getMessage());
+            LOG.error(message);
+            throw new WebArtifactHandlerException(message);
+        }
+        return buildResult.getDockerImageName();
+    }
+
+    public ImageBuildResult buildImage(final String creator, final String deployedArtifactName, String version,
+            final Path artifactPath, long timeoutInMilliseconds) throws WebArtifactHandlerException {
+        final String dockerImageName = WebArtifactHandlerHelper
                 .generateImageIdentifier(creator, deployedArtifactName, version);
+        if (dockerImageName == null) {
+            return null;
+        }
+        long startTime = System.currentTimeMillis();
+        ListenableFuture<ImageBuildResult> build = buildImageAsync(creator, deployedArtifactName, version,
+                artifactPath);
         try {
-            if (dockerImageName != null) {
-                /*
-                sets up the environment by creating a new Dockerfile for the specified
-                web-artifact deployment
-                 */
-                setupEnvironment(artifactPath);
-                if (LOG.isDebugEnabled()) {
-                    LOG.debug(String.format("Creating a new Apache Tomcat based "
-                                    + "Docker image for the [web-artifact] %s web artifact.",
-                            artifactPath.getFileName()));
-                }
-                dockerClient.build(artifactPath.getParent(), dockerImageName);
-                if (LOG.isDebugEnabled()) {
-                    LOG.debug(String.format("Created a new Apache Tomcat based "
-                                    + "Docker image for the [web-artifact] %s web artifact.",
-                            artifactPath.getFileName()));
-                }
+            ImageBuildResult buildResult = build.get(timeoutInMilliseconds, TimeUnit.MILLISECONDS);
+            if (LOG.isDebugEnabled()) {
+                LOG.debug(String.format("Docker image build completed %s.", buildResult));
             }
-        } catch (Exception exception) {
-            String message = String.format("Could not create the Docker image[docker-image]: %s.", dockerImageName);
+            return buildResult;
+        } catch (TimeoutException exception) {
+            /*
+            the Docker daemon goes on with a build whose thread is interrupted, hence the build is
+            left to complete and its image, if any, is removed instead
+             */
+            abandonBuild(creator, deployedArtifactName, dockerImageName, build);
+            String message = String.format("Timed out after %d ms waiting for the Docker image[docker-image]: %s "
+                    + "%s.", timeoutInMilliseconds, dockerImageName, buildExecutor);
+            LOG.error(message);
+            return new ImageBuildResult(dockerImageName, null, ImageBuildResult.Status.TIMED_OUT, message,
+                    System.currentTimeMillis() - startTime);
+        } catch (InterruptedException exception) {
+            abandonBuild(creator, deployedArtifactName, dockerImageName, build);
+            Thread.currentThread().interrupt();
+            String message = String.format("Interrupted while building the Docker image[docker-image]: %s.",
+                    dockerImageName);
             LOG.error(message, exception);
             throw new WebArtifactHandlerException(message, exception);
+        } catch (ExecutionException exception) {
+            String message = String.format("Could not create the Docker image[docker-image]: %s.", dockerImageName);
+            LOG.error(message, exception.getCause());
+            throw new WebArtifactHandlerException(message, exception);
         }
-        return dockerImageName;
+    }
+
+    public ListenableFuture<ImageBuildResult> buildImageAsync(final String creator,
+            final String deployedArtifactName, String version, final Path artifactPath) {
+        final String dockerImageName = WebArtifactHandlerHelper
+                .generateImageIdentifier(creator, deployedArtifactName, version);
+        if (dockerImageName == null) {
+            return Futures.immediateFuture(null);
+        }
+        return buildExecutor.submit(new Callable<ImageBuildResult>() {
+            public ImageBuildResult call() throws Exception {
+                if (abandonedImageNames.contains(dockerImageName)) {
+                    // the build timed out while queued, hence it is not sent to the Docker daemon at all
+                    return new ImageBuildResult(dockerImageName, null, ImageBuildResult.Status.TIMED_OUT,
+                            "The Docker image build timed out before it started.", 0);
+                }
+                return createImage(creator, deployedArtifactName, dockerImageName, artifactPath);
+            }
+        });
+    }
+
+    public ImageBuildExecutor getBuildExecutor() {
+        return buildExecutor;
     }
 
     public List<Image> getExistingImages(String creator, String deployedArtifactName, String version)
             throws WebArtifactHandlerException {
         List<Image> matchingImageList = new ArrayList<>();
-        String imageIdentifier = WebArtifactHandlerHelper
-                .generateImageIdentifier(creator, deployedArtifactName, version);
         try {
-            if (imageIdentifier != null) {
-                List<Image> tempImages = dockerClient.listImages();
-                for (Image image : tempImages) {
-                    for (String tag : image.repoTags()) {
-                        if (tag.contains(imageIdentifier)) {
-                            if (!matchingImageList.contains(image)) {
-                                matchingImageList.add(image);
-                            }
+            if ((creator != null) && (deployedArtifactName != null)) {
+                matchingImageList = imageTagIndex.getImages(getRepository(creator, deployedArtifactName), version);
+                if (!abandonedImageNames.isEmpty()) {
+                    // an image of a timed out build does not count as deployed
+                    Set<Image> matchingImages = new LinkedHashSet<>();
+                    for (String repoTag : imageTagIndex
+                            .getTags(getRepository(creator, deployedArtifactName), version)) {
+                        if (!abandonedImageNames.contains(repoTag)) {
+                            matchingImages.add(imageTagIndex.getImage(repoTag));
                         }
                     }
+                    matchingImageList = new ArrayList<>(matchingImages);
                 }
             }
         } catch (Exception exception) {
@@ -104,6 +225,62 @@ public class JavaDockerImageHandler implements IDockerImageHandler {
         return matchingImageList;
     }
 
+    public List<String> getExistingImageTags(String creator, String deployedArtifactName, String version)
+            throws WebArtifactHandlerException {
+        List<String> matchingTagList = new ArrayList<>();
+        try {
+            if ((creator != null) && (deployedArtifactName != null)) {
+                matchingTagList = imageTagIndex.getTags(getRepository(creator, deployedArtifactName), version);
+                matchingTagList.removeAll(abandonedImageNames);
+            }
+        } catch (Exception exception) {
+            String message = "Could not load the repo image tags.";
+            LOG.error(message, exception);
+            throw new WebArtifactHandlerException(message, exception);
+        }
+        return matchingTagList;
+    }
+
+    public List<String> getAllImageTags(String creator, String deployedArtifactName)
+            throws WebArtifactHandlerException {
+        List<String> tagList = new ArrayList<>();
+        try {
+            if ((creator != null) && (deployedArtifactName != null)) {
+                tagList.addAll(imageTagIndex.getRepositoryImages(getRepository(creator, deployedArtifactName))
+                        .keySet());
+            }
+        } catch (Exception exception) {
+            String message = "Could not load the repo image tags.";
+            LOG.error(message, exception);
+            throw new WebArtifactHandlerException(message, exception);
+        }
+        return tagList;
+    }
+
+    public List<String> getBuiltRepositories() throws WebArtifactHandlerException {
+        Set<String> repositories = new LinkedHashSet<>();
+        try {
+            // every built web artifact image carries the artifact digest label, unlike the base images
+            for (Image image : dockerClient
+                    .listImages(DockerClient.ListImagesParam.filter(LABEL_FILTER, ARTIFACT_DIGEST_LABEL))) {
+                if (image.repoTags() == null) {
+                    continue;
+                }
+                for (String repoTag : image.repoTags()) {
+                    int tagSeparatorIndex = repoTag.lastIndexOf(':');
+                    if (tagSeparatorIndex > repoTag.indexOf('/')) {
+                        repositories.add(repoTag.substring(0, tagSeparatorIndex));
+                    }
+                }
+            }
+        } catch (Exception exception) {
+            String message = "Could not list the repositories of the built images.";
+            LOG.error(message, exception);
+            throw new WebArtifactHandlerException(message, exception);
+        }
+        return new ArrayList<>(repositories);
+    }
+
     public String removeImage(String creator, String deployedArtifactName, String version)
             throws WebArtifactHandlerException {
         String dockerImageName = WebArtifactHandlerHelper
@@ -115,6 +292,8 @@ public class JavaDockerImageHandler implements IDockerImageHandler {
                     LOG.debug(String.format("Removing the Docker image [docker-image]: %s.", dockerImageName));
                 }
                 dockerClient.removeImage(dockerImageName);
+                artifactDigestRegistry.unregister(dockerImageName);
+                imageTagIndex.refreshRepository(getRepository(creator, deployedArtifactName));
                 if (LOG.isDebugEnabled()) {
                     LOG.debug(String.format("Removed the Docker image [docker-image]: %s.", dockerImageName));
                 }
@@ -128,51 +307,283 @@ public class JavaDockerImageHandler implements IDockerImageHandler {
         return dockerImageName;
     }
 
+    public long removeImages(String creator, String deployedArtifactName, List<String> dockerImageNames)
+            throws WebArtifactHandlerException {
+        if ((creator == null) || (deployedArtifactName == null) || (dockerImageNames.isEmpty())) {
+            return 0;
+        }
+        String repository = getRepository(creator, deployedArtifactName);
+        List<String> removedImageNames = new ArrayList<>();
+        long reclaimedBytes = 0;
+        try {
+            Map<String, Image> repositoryImages = imageTagIndex.getRepositoryImages(repository);
+            for (String dockerImageName : dockerImageNames) {
+                Image image = repositoryImages.get(dockerImageName);
+                if (image == null) {
+                    continue;
+                }
+                try {
+                    for (RemovedImage removedImage : dockerClient.removeImage(dockerImageName)) {
+                        // only the removal of the last tag of an image frees its layer
+                        if ((removedImage.type() == RemovedImage.Type.DELETED) && (image.id()
+                                .equals(removedImage.imageId())) && (image.size() != null)) {
+                            reclaimedBytes += image.size();
+                        }
+                    }
+                    removedImageNames.add(dockerImageName);
+                } catch (DockerException exception) {
+                    LOG.warn(String.format("Could not remove the docker image[docker-image]: %s.", dockerImageName),
+                            exception);
+                }
+            }
+        } catch (Exception exception) {
+            String message = String.format("Could not remove the docker images of [repository]: %s.", repository);
+            LOG.error(message, exception);
+            throw new WebArtifactHandlerException(message, exception);
+        } finally {
+            artifactDigestRegistry.unregister(removedImageNames);
+            try {
+                imageTagIndex.refreshRepository(repository);
+            } catch (Exception exception) {
+                LOG.error(String.format("Could not refresh the image tag index [repository] %s.", repository),
+                        exception);
+            }
+        }
+        if (LOG.isDebugEnabled()) {
+            LOG.debug(String.format("Removed the Docker images [docker-images] %s reclaiming %d bytes.",
+                    removedImageNames, reclaimedBytes));
+        }
+        return reclaimedBytes;
+    }
+
     /**
-     * utility method which sets up the environment required to build up an
-     * Apache Tomcat based Docker image for the selected web-artifact
+     * records the specified build as timed out and removes its image once the build completes
+     * <p>
+     * The image of the build is hidden from the existing images meanwhile, so that the version is not
+     * taken as deployed. If the image cannot be removed, it stays hidden.
      *
-     * @param filePath path to the web-artifact
-     * @throws IOException
+     * @param creator              name of the person deploying the web artifact
+     * @param deployedArtifactName name of the deployed artifact
+     * @param dockerImageName      name of the Docker image being built
+     * @param build                future of the build outcome
      */
-    private void setupEnvironment(Path filePath) throws IOException, SecurityException {
-        Path parentDirectory = filePath.getParent();
-        File dockerFile;
-        if (parentDirectory != null) {
-            String parentDirectoryPath = parentDirectory.toString();
-            dockerFile = new File(parentDirectoryPath + File.separator + "Dockerfile");
-        } else {
-            dockerFile = new File("Dockerfile");
+    private void abandonBuild(final String creator, final String deployedArtifactName, final String dockerImageName,
+            ListenableFuture<ImageBuildResult> build) {
+        abandonedImageNames.add(dockerImageName);
+        Futures.addCallback(build, new FutureCallback<ImageBuildResult>() {
+            public void onSuccess(ImageBuildResult buildResult) {
+                removeAbandonedImage(creator, deployedArtifactName, dockerImageName);
+            }
+
+            public void onFailure(Throwable throwable) {
+                removeAbandonedImage(creator, deployedArtifactName, dockerImageName);
+            }
+        });
+    }
+
+    private void removeAbandonedImage(String creator, String deployedArtifactName, String dockerImageName) {
+        String repository = getRepository(creator, deployedArtifactName);
+        try {
+            imageTagIndex.refreshRepository(repository);
+            if (imageTagIndex.containsTag(dockerImageName)) {
+                dockerClient.removeImage(dockerImageName);
+                artifactDigestRegistry.unregister(dockerImageName);
+                imageTagIndex.refreshRepository(repository);
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug(String.format("Removed the Docker image [docker-image] %s of a timed out build.",
+                            dockerImageName));
+                }
+            }
+            abandonedImageNames.remove(dockerImageName);
+        } catch (Exception exception) {
+            LOG.error(String.format("Could not remove the Docker image [docker-image] %s of a timed out build.",
+                    dockerImageName), exception);
+        }
+    }
+
+    /**
+     * builds up, or re-tags an image of an identical build as, the specified Docker image
+     * <p>
+     * Two builds are identical if both the web artifact content and the Dockerfile, which names the digest
+     * pinned base image, match.
+     * <p>
+     * A build is confirmed by the image ID which the build's result stream reports on completion, a re-tag
+     * by the image which carries the new tag in the refreshed image tag index.
+     *
+     * @param creator              name of the person deploying the web artifact
+     * @param deployedArtifactName name of the artifact to be deployed
+     * @param dockerImageName      name of the Docker image to be created
+     * @param artifactPath         artifact to be deployed
+     * @return the outcome of the build
+     * @throws Exception
+     */
+    private ImageBuildResult createImage(String creator, String deployedArtifactName, String dockerImageName,
+            Path artifactPath) throws Exception {
+        long startTime = System.currentTimeMillis();
+        String repository = getRepository(creator, deployedArtifactName);
+        String artifactDigest = WebArtifactHandlerHelper.getArtifactDigest(artifactPath);
+        List<String> dockerFileContent = getDockerFileContent(artifactPath);
+        // a patched base image or another build context mode changes the Dockerfile, hence the build digest
+        String buildDigest = WebArtifactHandlerHelper.getBuildDigest(artifactDigest, dockerFileContent);
+        String identicalImageName = artifactDigestRegistry.getImage(repository, buildDigest);
+        if ((identicalImageName != null) && (!imageTagIndex.containsTag(identicalImageName))) {
+            identicalImageName = null;
+        }
+        if (identicalImageName == null) {
+            // the registry file may be lost or belong to another working directory, the image label is not
+            identicalImageName = findImageByDigest(repository, buildDigest);
         }
-        boolean exists = dockerFile.exists();
-        if (!exists) {
-            boolean created = dockerFile.createNewFile();
-            if (created) {
+        String buildError = null;
+        String imageId = null;
+        List<ImageLayer> layers = new ArrayList<>();
+        if (identicalImageName != null) {
+            // an image of an identical build exists, hence re-tag it instead of rebuilding
+            if (LOG.isDebugEnabled()) {
+                LOG.debug(String.format("Reusing the Docker image [docker-image] %s of an identical build "
+                        + "for the [web-artifact] %s web artifact.", identicalImageName, artifactPath.getFileName()));
+            }
+            dockerClient.tag(identicalImageName, dockerImageName);
+            imageTagIndex.refreshRepository(repository);
+            Image image = imageTagIndex.getImage(dockerImageName);
+            imageId = (image != null) ? image.id() : null;
+        } else {
+            /*
+            sets up the environment by creating a new build context holding the Dockerfile for
+            the specified web-artifact deployment
+             */
+            try (DockerBuildContext buildContext = setupEnvironment(artifactPath, dockerFileContent, buildDigest)) {
                 if (LOG.isDebugEnabled()) {
-                    LOG.debug("New Dockerfile created for " + filePath.toString() + ".");
+                    LOG.debug(String.format("Creating a new Apache Tomcat based "
+                            + "Docker image for the [web-artifact] %s web artifact.", artifactPath.getFileName()));
+                }
+                ImageBuildProgressHandler progressHandler = new ImageBuildProgressHandler(dockerImageName);
+                dockerClient.build(buildContext.getDirectory(), dockerImageName, progressHandler);
+                buildError = progressHandler.getError();
+                imageId = progressHandler.getImageId();
+                for (ImageLayer layer : buildContext.getLayers()) {
+                    layer.setCacheHit(progressHandler.isCacheHit(layer.getInstruction()));
+                    layers.add(layer);
                 }
             }
+            // keeps the index current for the following lookups, the build itself is confirmed by its stream
+            imageTagIndex.refreshRepository(repository);
         }
+        long duration = System.currentTimeMillis() - startTime;
+        if ((buildError == null) && (imageId != null)) {
+            artifactDigestRegistry.register(repository, buildDigest, dockerImageName);
+            if (LOG.isDebugEnabled()) {
+                LOG.debug(String.format("Created a new Apache Tomcat based "
+                        + "Docker image for the [web-artifact] %s web artifact %s.", artifactPath.getFileName(),
+                        layers));
+            }
+            return new ImageBuildResult(dockerImageName, imageId, ImageBuildResult.Status.SUCCEEDED,
+                    "Docker image built.", duration, layers);
+        } else {
+            String message = (buildError != null) ? buildError
+                    : "The Docker image could not be confirmed after the build.";
+            return new ImageBuildResult(dockerImageName, null, ImageBuildResult.Status.FAILED, message, duration,
+                    layers);
+        }
+    }
+
+    /**
+     * looks up an image of the specified repository whose label records the specified build digest
+     *
+     * @param repository  Docker image repository (creator/artifact name)
+     * @param buildDigest digest of the web-artifact content and the Dockerfile it is built with
+     * @return a repo tag of an image of an identical build, null if no such image exists
+     * @throws DockerException
+     * @throws InterruptedException
+     */
+    private String findImageByDigest(String repository, String buildDigest)
+            throws DockerException, InterruptedException {
+        List<Image> images = dockerClient.listImages(DockerClient.ListImagesParam
+                .filter(LABEL_FILTER, ARTIFACT_DIGEST_LABEL + "=" + buildDigest));
+        for (Image image : images) {
+            if (image.repoTags() == null) {
+                continue;
+            }
+            for (String repoTag : image.repoTags()) {
+                if (repoTag.startsWith(repository + ":")) {
+                    artifactDigestRegistry.register(repository, buildDigest, repoTag);
+                    return repoTag;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * returns the Docker image repository name used for the specified creator and web artifact
+     *
+     * @param creator              name of the person deploying the web artifact
+     * @param deployedArtifactName name of the artifact deployed
+     * @return the Docker image repository name
+     */
+    private String getRepository(String creator, String deployedArtifactName) {
+        return creator + "/" + deployedArtifactName;
+    }
+
+    /**
+     * returns the content of the Dockerfile which deploys the selected web-artifact in the Apache Tomcat
+     * server, in the way the build context mode adds the artifact
+     *
+     * @param filePath path to the web-artifact
+     * @return content of the Dockerfile, without the build digest label
+     * @throws IOException
+     */
+    private List<String> getDockerFileContent(Path filePath) throws IOException {
         // get base Apache Tomcat Dockerfile content from the application's file
-        List<String> baseDockerFileContent;
-        baseDockerFileContent = getTomcatDockerFileContent();
-        /*
-            set up a new Dockerfile with the specified WAR file deploying command in the Apache
-            Tomcat server
-        */
-        baseDockerFileContent.add(2, "ADD " + filePath.getFileName().toString() + " /usr/local/tomcat/webapps/");
-        WebArtifactHandlerHelper.writeToFile(dockerFile, baseDockerFileContent);
+        List<String> dockerFileContent = getTomcatDockerFileContent();
+        if (buildContextMode == BuildContextMode.LAYERED_WORKSPACE) {
+            // the exploded web-artifact is deployed as separate layers instead of a single WAR file layer
+            dockerFileContent
+                    .addAll(2, DockerBuildContext.getLayerInstructions(filePath, TOMCAT_WEB_APPS_DIRECTORY));
+        } else {
+            dockerFileContent.add(2, "ADD " + filePath.getFileName().toString() + " " + TOMCAT_WEB_APPS_DIRECTORY);
+        }
+        return dockerFileContent;
+    }
+
+    /**
+     * utility method which sets up the environment required to build up an
+     * Apache Tomcat based Docker image for the selected web-artifact
+     *
+     * @param filePath          path to the web-artifact
+     * @param dockerFileContent content of the Dockerfile, as returned by getDockerFileContent
+     * @param buildDigest       digest of the web-artifact content and the Dockerfile, recorded as an image label
+     * @return the build context to be sent to the Docker daemon
+     * @throws IOException
+     */
+    private DockerBuildContext setupEnvironment(Path filePath, List<String> dockerFileContent, String buildDigest)
+            throws IOException, SecurityException {
+        List<String> labelledDockerFileContent = new ArrayList<>(dockerFileContent);
+        labelledDockerFileContent.add("LABEL " + ARTIFACT_DIGEST_LABEL + "=" + buildDigest);
+        DockerBuildContext buildContext;
+        if (buildContextMode == BuildContextMode.LAYERED_WORKSPACE) {
+            buildContext = DockerBuildContext.createLayeredWorkspace(buildWorkspaceRoot, filePath,
+                    TOMCAT_WEB_APPS_DIRECTORY, labelledDockerFileContent);
+        } else if (buildContextMode == BuildContextMode.ISOLATED_WORKSPACE) {
+            buildContext = DockerBuildContext.createIsolatedWorkspace(buildWorkspaceRoot, filePath,
+                    labelledDockerFileContent);
+        } else {
+            buildContext = DockerBuildContext.createInArtifactDirectory(filePath, labelledDockerFileContent);
+        }
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("New Dockerfile created for " + filePath.toString() + ".");
+        }
+        return buildContext;
     }
 
     /**
      * returns a String list of base content to be written to the Apache
-     * Tomcat based Dockerfile
+     * Tomcat based Dockerfile, based on the digest pinned base image
      *
      * @return base content to be written to the Apache Tomcat based Dockerfile
      */
     private List<String> getTomcatDockerFileContent() {
         List<String> baseContent = new ArrayList<>();
-        baseContent.add("FROM tomcat");
+        baseContent.add("FROM " + baseImageResolver.resolve(baseImage));
         baseContent.add("MAINTAINER user");
         baseContent.add("CMD [\"catalina.sh\", \"run\"]");
         return baseContent;
@@ -15,7 +15,10 @@
 */
 package org.wso2.strategy.poc.docker.interfaces;
 
+import com.google.common.util.concurrent.ListenableFuture;
 import com.spotify.docker.client.messages.Image;
+import org.wso2.strategy.poc.docker.ImageBuildExecutor;
+import org.wso2.strategy.poc.docker.ImageBuildResult;
 import org.wso2.strategy.poc.miscellaneous.exceptions.WebArtifactHandlerException;
 
 import java.nio.file.Path;
@@ -39,6 +42,45 @@ public interface IDockerImageHandler {
     String buildImage(String creator, String deployedArtifactName, String version, Path artifactPath)
             throws WebArtifactHandlerException;
 
+    /**
+     * builds up a Docker image which deploys the specified artifact and waits until the build's result
+     * stream reports completion and the image is confirmed to exist, or until the timeout elapses.
+     * the timeout includes the time the build waits in the build queue. the image of a timed out build
+     * is not taken as existing and is removed once the build completes
+     *
+     * @param creator               name of the person deploying the web artifact
+     * @param deployedArtifactName  name of the artifact to be deployed
+     * @param version               Docker Image version
+     * @param artifactPath          artifact to be deployed
+     * @param timeoutInMilliseconds maximum time to wait for the build to complete
+     * @return the outcome of the build holding the final image ID and the completion status.
+     * if at least one of either the creator or artifact name equals null, null is returned
+     * @throws WebArtifactHandlerException
+     */
+    ImageBuildResult buildImage(String creator, String deployedArtifactName, String version, Path artifactPath,
+            long timeoutInMilliseconds) throws WebArtifactHandlerException;
+
+    /**
+     * queues up a Docker image build which deploys the specified artifact on the bounded build executor
+     * of the Docker endpoint, without blocking the caller
+     *
+     * @param creator              name of the person deploying the web artifact
+     * @param deployedArtifactName name of the artifact to be deployed
+     * @param version              Docker Image version
+     * @param artifactPath         artifact to be deployed
+     * @return a future of the outcome of the build.
+     * if at least one of either the creator or artifact name equals null, the future holds null
+     */
+    ListenableFuture<ImageBuildResult> buildImageAsync(String creator, String deployedArtifactName, String version,
+            Path artifactPath);
+
+    /**
+     * returns the build executor of the Docker endpoint, which exposes the build queue depth and wait times
+     *
+     * @return the build executor of the Docker endpoint
+     */
+    ImageBuildExecutor getBuildExecutor();
+
     /**
      * returns a list images from existing Docker images specified by the creator,
      * image name and image version
@@ -52,6 +94,40 @@ public interface IDockerImageHandler {
     List<Image> getExistingImages(String creator, String deployedArtifactName, String version)
             throws WebArtifactHandlerException;
 
+    /**
+     * returns the repo tags of existing Docker images specified by the creator,
+     * image name and image version
+     *
+     * @param creator              name of the person deploying the web artifact
+     * @param deployedArtifactName name of the artifact deployed
+     * @param version              Docker Image version
+     * @return the repo tags of existing Docker images specified by the creator,
+     * image name and image version
+     * @throws WebArtifactHandlerException
+     */
+    List<String> getExistingImageTags(String creator, String deployedArtifactName, String version)
+            throws WebArtifactHandlerException;
+
+    /**
+     * returns the repo tags of all existing Docker image builds of the specified web artifact,
+     * across all major versions
+     *
+     * @param creator              name of the person deploying the web artifact
+     * @param deployedArtifactName name of the artifact deployed
+     * @return the repo tags of all existing Docker image builds of the specified web artifact
+     * @throws WebArtifactHandlerException
+     */
+    List<String> getAllImageTags(String creator, String deployedArtifactName) throws WebArtifactHandlerException;
+
+    /**
+     * returns the Docker image repositories (creator/artifact name) of all web artifact images built
+     * on the Docker endpoint, including those built by other processes
+     *
+     * @return the Docker image repositories of all built web artifact images
+     * @throws WebArtifactHandlerException
+     */
+    List<String> getBuiltRepositories() throws WebArtifactHandlerException;
+
     /**
      * deletes the specified Docker image
      *
@@ -62,4 +138,17 @@ public interface IDockerImageHandler {
      * @throws WebArtifactHandlerException
      */
     String removeImage(String creator, String deployedArtifactName, String version) throws WebArtifactHandlerException;
+
+    /**
+     * deletes the specified Docker images of a web artifact as a single batch, skipping the images
+     * which the Docker daemon refuses to remove
+     *
+     * @param creator              name of the person deploying the web artifact
+     * @param deployedArtifactName name of the artifact deployed
+     * @param dockerImageNames     repo tags of the Docker images to be deleted
+     * @return the number of bytes reclaimed by the images which were deleted, rather than only untagged
+     * @throws WebArtifactHandlerException
+     */
+    long removeImages(String creator, String deployedArtifactName, List<String> dockerImageNames)
+            throws WebArtifactHandlerException;
 }
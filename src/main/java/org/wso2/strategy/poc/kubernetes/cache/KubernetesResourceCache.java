@@ -0,0 +1,385 @@
+/*
+* Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.wso2.strategy.poc.kubernetes.cache;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import io.fabric8.kubernetes.api.model.HasMetadata;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.wso2.strategy.poc.kubernetes.rest.KubernetesRestClient;
+import org.wso2.strategy.poc.miscellaneous.exceptions.WebArtifactHandlerException;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * an informer style local cache of a single kind of Kubernetes resource in the default namespace
+ * <p>
+ * The cache performs one initial list of the resources, followed by a watch stream which starts at
+ * the list's resource version and applies every added, modified and deleted resource to the cache.
+ * When the watch stream ends it is resumed from the latest resource version seen, and when the
+ * resource version has expired the resources are listed again. Reads are served locally and return
+ * copies, so that callers may modify them without corrupting the cache. Until the initial list has
+ * succeeded, reads wait for the first list attempt at most once: after a failed or timed out attempt
+ * they fail fast until the watch thread manages to list the resources. A lost watch marks the cache
+ * unsynced as well, so that reads fail fast, and callers fall back to the API server, rather than being
+ * served from a cache which no longer follows the changes, until the resources are listed again.
+ *
+ * @param <T> type of the cached Kubernetes resource
+ */
+public class KubernetesResourceCache<T extends HasMetadata> {
+    private final KubernetesRestClient restClient;
+    private final String resourceName;
+    private final Class<T> resourceType;
+    private final ConcurrentMap<String, T> resources = new ConcurrentHashMap<>();
+    private final CountDownLatch firstListAttempt = new CountDownLatch(1);
+    // set while the cached resources follow the watch, from a successful list until the watch is lost
+    private volatile boolean synced;
+    // set once the first list attempt has failed or timed out, until the initial list succeeds
+    private volatile boolean syncFailed;
+    private volatile String resourceVersion;
+    private volatile boolean running;
+    private Thread watcher;
+
+    private static final String ADDED_EVENT = "ADDED";
+    private static final String MODIFIED_EVENT = "MODIFIED";
+    private static final String DELETED_EVENT = "DELETED";
+    private static final String ERROR_EVENT = "ERROR";
+    private static final int WATCH_TIMEOUT_IN_SECONDS = 300;
+    private static final long RETRY_DELAY_IN_MILLISECONDS = 5000;
+    private static final long INITIAL_SYNC_TIMEOUT_IN_MILLISECONDS = 30000;
+    private static final Logger LOG = LogManager.getLogger(KubernetesResourceCache.class);
+
+    /**
+     * @param kubernetesURI URI of the Kubernetes API server
+     * @param resourceName  plural resource name used in the API path (e.g. replicationcontrollers)
+     * @param resourceType  type of the cached Kubernetes resource
+     */
+    public KubernetesResourceCache(String kubernetesURI, String resourceName, Class<T> resourceType) {
+        this(new KubernetesRestClient(kubernetesURI), resourceName, resourceType);
+    }
+
+    /**
+     * @param restClient   client of the Kubernetes API server
+     * @param resourceName plural resource name used in the API path (e.g. replicationcontrollers)
+     * @param resourceType type of the cached Kubernetes resource
+     */
+    public KubernetesResourceCache(KubernetesRestClient restClient, String resourceName, Class<T> resourceType) {
+        this.restClient = restClient;
+        this.resourceName = resourceName;
+        this.resourceType = resourceType;
+    }
+
+    /**
+     * starts listing and watching the resources on a background thread
+     */
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        watcher = new Thread(new Runnable() {
+            public void run() {
+                watch();
+            }
+        }, "kubernetes-watch-" + resourceType.getSimpleName());
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    /**
+     * stops watching the resources
+     */
+    public synchronized void shutdown() {
+        running = false;
+        if (watcher != null) {
+            watcher.interrupt();
+            watcher = null;
+        }
+    }
+
+    /**
+     * returns a copy of the cached resource of the specified name
+     *
+     * @param name name of the resource
+     * @return a copy of the cached resource, null if no such resource exists
+     * @throws WebArtifactHandlerException if the cache could not be synchronized with the API server
+     */
+    public T get(String name) throws WebArtifactHandlerException {
+        awaitSync();
+        T resource = resources.get(name);
+        if (resource == null) {
+            return null;
+        }
+        return restClient.copy(resource, resourceType);
+    }
+
+    /**
+     * returns the resource version of the cached resource of the specified name, which changes with
+     * every change of the resource, without copying the resource
+     *
+     * @param name name of the resource
+     * @return the resource version of the cached resource, null if no such resource exists
+     * @throws WebArtifactHandlerException if the cache could not be synchronized with the API server
+     */
+    public String getResourceVersion(String name) throws WebArtifactHandlerException {
+        awaitSync();
+        T resource = resources.get(name);
+        if ((resource == null) || (resource.getMetadata() == null)) {
+            return null;
+        }
+        return resource.getMetadata().getResourceVersion();
+    }
+
+    /**
+     * returns copies of all cached resources
+     *
+     * @return copies of all cached resources
+     * @throws WebArtifactHandlerException if the cache could not be synchronized with the API server
+     */
+    public List<T> list() throws WebArtifactHandlerException {
+        awaitSync();
+        List<T> copies = new ArrayList<>();
+        for (T resource : resources.values()) {
+            copies.add(restClient.copy(resource, resourceType));
+        }
+        return copies;
+    }
+
+    /**
+     * returns the latest resource version seen by the cache
+     *
+     * @return the latest resource version seen by the cache
+     */
+    public String getResourceVersion() {
+        return resourceVersion;
+    }
+
+    /**
+     * checks whether the cached resources follow the watch, without waiting
+     *
+     * @return true if the resources have been listed and the watch has not been lost since, else false
+     */
+    public boolean isSynced() {
+        return synced;
+    }
+
+    /**
+     * re-reads the resource of the specified name from the API server, so that a change made through
+     * this application is visible to the following reads without waiting for its watch event
+     *
+     * @param name name of the resource
+     * @throws WebArtifactHandlerException
+     */
+    public void refresh(String name) throws WebArtifactHandlerException {
+        try {
+            reload(name);
+        } catch (IOException exception) {
+            String message = String.format("Could not refresh the cached [resource] %s/%s.", resourceName, name);
+            LOG.error(message, exception);
+            throw new WebArtifactHandlerException(message, exception);
+        }
+    }
+
+    /**
+     * refreshes the resource of the specified name as {@link #refresh(String)} does, but only logs a failure,
+     * which merely delays the change until its watch event arrives
+     *
+     * @param name name of the resource
+     */
+    public void refreshQuietly(String name) {
+        try {
+            reload(name);
+        } catch (IOException exception) {
+            LOG.warn(String.format("Could not refresh the cached [resource] %s/%s.", resourceName, name), exception);
+        }
+    }
+
+    private void reload(String name) throws IOException {
+        JsonNode resource = restClient.get(resourceName + "/" + KubernetesRestClient.encode(name));
+        if (resource == null) {
+            resources.remove(name);
+        } else {
+            store(restClient.toResource(resource, resourceType));
+        }
+    }
+
+    private void awaitSync() throws WebArtifactHandlerException {
+        if (isSynced()) {
+            return;
+        }
+        if (!running) {
+            start();
+        }
+        try {
+            if ((!syncFailed) && (!firstListAttempt.await(INITIAL_SYNC_TIMEOUT_IN_MILLISECONDS,
+                    TimeUnit.MILLISECONDS))) {
+                syncFailed = true;
+            }
+            if (!isSynced()) {
+                throw new WebArtifactHandlerException(
+                        String.format("The [resources] %s are not synchronized with the API server.", resourceName));
+            }
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new WebArtifactHandlerException(
+                    String.format("Interrupted while listing the [resources] %s.", resourceName), exception);
+        }
+    }
+
+    private void watch() {
+        boolean listRequired = true;
+        while (running) {
+            try {
+                if (listRequired) {
+                    relist();
+                    syncFailed = false;
+                    synced = true;
+                    firstListAttempt.countDown();
+                }
+                listRequired = !resumeWatch();
+            } catch (IOException exception) {
+                LOG.error(String.format("Lost the watch on the [resources] %s, re-listing.", resourceName), exception);
+                if (firstListAttempt.getCount() > 0) {
+                    syncFailed = true;
+                    firstListAttempt.countDown();
+                }
+                // changes are missed until the resources are listed again
+                synced = false;
+                listRequired = true;
+                try {
+                    Thread.sleep(RETRY_DELAY_IN_MILLISECONDS);
+                } catch (InterruptedException interruptedException) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void relist() throws IOException {
+        JsonNode resourceList = restClient.get(resourceName);
+        if (resourceList == null) {
+            throw new IOException(String.format("Could not find the [resources] %s.", resourceName));
+        }
+        Map<String, T> listed = new HashMap<>();
+        for (JsonNode item : resourceList.path("items")) {
+            T resource = restClient.toResource(item, resourceType);
+            listed.put(resource.getMetadata().getName(), resource);
+        }
+        resources.keySet().retainAll(listed.keySet());
+        resources.putAll(listed);
+        resourceVersion = resourceList.path("metadata").path("resourceVersion").asText();
+        if (LOG.isDebugEnabled()) {
+            LOG.debug(String.format("Listed the [resources] %s [count] %d [resource-version] %s.", resourceName,
+                    resources.size(), resourceVersion));
+        }
+    }
+
+    /**
+     * applies the events of a single watch stream, starting at the latest resource version seen
+     *
+     * @return false if the resource version has expired and the resources should be listed again
+     * @throws IOException
+     */
+    private boolean resumeWatch() throws IOException {
+        String watchPath = resourceName + "?watch=true&resourceVersion=" + KubernetesRestClient.encode(resourceVersion)
+                + "&timeoutSeconds=" + WATCH_TIMEOUT_IN_SECONDS;
+        try (BufferedReader events = restClient.watch(watchPath, WATCH_TIMEOUT_IN_SECONDS)) {
+            String line;
+            while ((running) && ((line = events.readLine()) != null)) {
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                JsonNode event = restClient.readEvent(line);
+                String type = event.path("type").asText();
+                if (ERROR_EVENT.equals(type)) {
+                    LOG.warn(String.format("Watch on the [resources] %s reported %s.", resourceName,
+                            event.path("object").path("message").asText()));
+                    return false;
+                }
+                T resource = restClient.toResource(event.path("object"), resourceType);
+                if ((ADDED_EVENT.equals(type)) || (MODIFIED_EVENT.equals(type))) {
+                    store(resource);
+                } else if (DELETED_EVENT.equals(type)) {
+                    remove(resource);
+                }
+                resourceVersion = resource.getMetadata().getResourceVersion();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * stores the specified resource unless a newer version of it is already cached, whether written
+     * by the watch or by a refresh
+     *
+     * @param resource the resource
+     */
+    private void store(T resource) {
+        String name = resource.getMetadata().getName();
+        while (true) {
+            T cached = resources.get(name);
+            if (cached == null) {
+                if (resources.putIfAbsent(name, resource) == null) {
+                    return;
+                }
+            } else if (compareVersions(resource.getMetadata().getResourceVersion(),
+                    cached.getMetadata().getResourceVersion()) < 0) {
+                return;
+            } else if (resources.replace(name, cached, resource)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * removes the specified deleted resource unless a newer version of it is already cached, e.g. one of
+     * a resource recreated under the same name and refreshed before the late deletion event arrived
+     *
+     * @param resource the deleted resource, as of its deletion
+     */
+    private void remove(T resource) {
+        String name = resource.getMetadata().getName();
+        while (true) {
+            T cached = resources.get(name);
+            if ((cached == null) || (compareVersions(resource.getMetadata().getResourceVersion(),
+                    cached.getMetadata().getResourceVersion()) < 0)) {
+                return;
+            } else if (resources.remove(name, cached)) {
+                return;
+            }
+        }
+    }
+
+    private static int compareVersions(String versionOne, String versionTwo) {
+        try {
+            long one = Long.parseLong(versionOne);
+            long two = Long.parseLong(versionTwo);
+            return (one < two) ? -1 : ((one == two) ? 0 : 1);
+        } catch (NumberFormatException exception) {
+            // resource versions are opaque, if they are not numeric the latest read wins
+            return 1;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/*
+* Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.wso2.strategy.poc.kubernetes.components.pod;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * the aggregated outcome of deleting a set of pods, holding the pods deleted, the pods which could
+ * not be deleted together with the reason, the pods whose deletion was not attempted and the time
+ * taken by each batch of deletions
+ */
+public class PodDeletionResult {
+    private final List<String> deletedPods = new ArrayList<>();
+    // pod name -> failure reason
+    private final Map<String, String> failedPods = new LinkedHashMap<>();
+    private final List<String> notAttemptedPods = new ArrayList<>();
+    private final List<Long> batchDurationsInMilliseconds = new ArrayList<>();
+
+    void addDeletedPod(String podName) {
+        deletedPods.add(podName);
+    }
+
+    void addFailedPod(String podName, String reason) {
+        failedPods.put(podName, reason);
+    }
+
+    void addNotAttemptedPods(List<String> podNames) {
+        notAttemptedPods.addAll(podNames);
+    }
+
+    void addBatchDuration(long durationInMilliseconds) {
+        batchDurationsInMilliseconds.add(durationInMilliseconds);
+    }
+
+    public List<String> getDeletedPods() {
+        return Collections.unmodifiableList(deletedPods);
+    }
+
+    /**
+     * returns the pods which could not be deleted, mapped to the reason
+     *
+     * @return the pods which could not be deleted, mapped to the reason
+     */
+    public Map<String, String> getFailedPods() {
+        return Collections.unmodifiableMap(failedPods);
+    }
+
+    /**
+     * returns the pods whose deletion was never sent, as the deletions were interrupted before
+     *
+     * @return the pods whose deletion was never sent
+     */
+    public List<String> getNotAttemptedPods() {
+        return Collections.unmodifiableList(notAttemptedPods);
+    }
+
+    /**
+     * returns the time taken by each batch of concurrent deletions, in the order of the batches
+     *
+     * @return the time taken by each batch of concurrent deletions
+     */
+    public List<Long> getBatchDurationsInMilliseconds() {
+        return Collections.unmodifiableList(batchDurationsInMilliseconds);
+    }
+
+    public boolean isSuccessful() {
+        return (failedPods.isEmpty()) && (notAttemptedPods.isEmpty());
+    }
+
+    public String toString() {
+        return String.format("[deleted-pods] %d [failed-pods] %s [not-attempted-pods] %s [batch-durations] %s ms",
+                deletedPods.size(), failedPods, notAttemptedPods, batchDurationsInMilliseconds);
+    }
+}
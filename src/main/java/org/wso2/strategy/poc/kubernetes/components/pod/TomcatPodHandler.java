@@ -15,30 +15,77 @@
 */
 package org.wso2.strategy.poc.kubernetes.components.pod;
 
-import io.fabric8.kubernetes.api.KubernetesClient;
-import io.fabric8.kubernetes.api.KubernetesFactory;
-import io.fabric8.kubernetes.api.KubernetesHelper;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import io.fabric8.kubernetes.api.model.*;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.wso2.strategy.poc.kubernetes.components.pod.interfaces.ITomcatPodHandler;
 import org.wso2.strategy.poc.kubernetes.constants.KubernetesConstantsExtended;
+import org.wso2.strategy.poc.kubernetes.rest.KubernetesRestClient;
+import org.wso2.strategy.poc.kubernetes.rest.KubernetesTransport;
 import org.wso2.strategy.poc.miscellaneous.exceptions.WebArtifactHandlerException;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * A Java class which implements the ITomcatPodHandler Java interface
  */
 public class TomcatPodHandler implements ITomcatPodHandler {
-    private final KubernetesClient client;
+    private final KubernetesRestClient restClient;
+    private final ExecutorService deletionExecutor;
+    private final int maxConcurrentDeletions;
+    private final long deletionTimeoutInMilliseconds;
+
+    private static final int DEFAULT_MAX_CONCURRENT_DELETIONS = 10;
+    private static final long DEFAULT_DELETION_TIMEOUT_IN_MILLISECONDS = 30000;
+    private static final String POD_RESOURCE = "pods";
+    // pods of a replication controller which have terminated are no longer counted as its replicas
+    private static final String ACTIVE_POD_FIELD_SELECTOR = "status.phase!=Succeeded,status.phase!=Failed";
     private static final Logger LOG = LogManager.getLogger(TomcatPodHandler.class);
 
     public TomcatPodHandler(String kubernetesURI) {
-        client = new KubernetesClient(new KubernetesFactory(kubernetesURI));
+        this(KubernetesTransport.getInstance(kubernetesURI));
+    }
+
+    public TomcatPodHandler(KubernetesTransport transport) {
+        this(transport, DEFAULT_MAX_CONCURRENT_DELETIONS, DEFAULT_DELETION_TIMEOUT_IN_MILLISECONDS);
+    }
+
+    /**
+     * @param kubernetesURI                 URI of the Kubernetes API server
+     * @param maxConcurrentDeletions        maximum number of pod deletion calls made concurrently
+     * @param deletionTimeoutInMilliseconds maximum time of a single pod deletion call, from when it is sent
+     */
+    public TomcatPodHandler(String kubernetesURI, int maxConcurrentDeletions, long deletionTimeoutInMilliseconds) {
+        this(KubernetesTransport.getInstance(kubernetesURI), maxConcurrentDeletions, deletionTimeoutInMilliseconds);
+    }
+
+    /**
+     * @param transport                     shared transport of the Kubernetes API server
+     * @param maxConcurrentDeletions        maximum number of pod deletion calls made concurrently
+     * @param deletionTimeoutInMilliseconds maximum time of a single pod deletion call, from when it is sent
+     */
+    public TomcatPodHandler(KubernetesTransport transport, int maxConcurrentDeletions,
+            long deletionTimeoutInMilliseconds) {
+        if (maxConcurrentDeletions < 1) {
+            throw new IllegalArgumentException("Maximum number of concurrent deletions should be at least one.");
+        }
+        restClient = new KubernetesRestClient(transport);
+        this.maxConcurrentDeletions = maxConcurrentDeletions;
+        this.deletionTimeoutInMilliseconds = deletionTimeoutInMilliseconds;
+        deletionExecutor = Executors.newFixedThreadPool(maxConcurrentDeletions,
+                new ThreadFactoryBuilder().setNameFormat("kubernetes-pod-deletion-%d").setDaemon(true).build());
     }
 
     public void createPod(String podName, String podLabel, String tomcatDockerImageName)
@@ -76,7 +123,7 @@ public class TomcatPodHandler implements ITomcatPodHandler {
                 pod.setSpec(podSpec);
 
                 // creates a Pod using the specified Pod entity
-                client.createPod(pod);
+                restClient.create(POD_RESOURCE, pod);
                 if (LOG.isDebugEnabled()) {
                     String message = String.format("Created Kubernetes pod [pod-name] %s "
                             + "[pod-label] %s [pod-Docker-image-name] %s.", podName, podLabel, tomcatDockerImageName);
@@ -97,18 +144,63 @@ public class TomcatPodHandler implements ITomcatPodHandler {
         }
     }
 
-    public List<Pod> getPods() {
-        return client.getPods().getItems();
+    public List<Pod> getPods() throws WebArtifactHandlerException {
+        return getPods(new HashMap<String, String>());
+    }
+
+    public List<Pod> getPods(Map<String, String> labelSelector) throws WebArtifactHandlerException {
+        return getPods(labelSelector, null);
+    }
+
+    public List<Pod> getPods(Map<String, String> labelSelector, String fieldSelector)
+            throws WebArtifactHandlerException {
+        List<Pod> pods = new ArrayList<>();
+        try {
+            String podsPath = POD_RESOURCE + "?labelSelector=" + KubernetesRestClient.toLabelSelector(labelSelector);
+            if (fieldSelector != null) {
+                podsPath += "&fieldSelector=" + KubernetesRestClient.encode(fieldSelector);
+            }
+            JsonNode podList = restClient.get(podsPath);
+            if (podList != null) {
+                for (JsonNode item : podList.path("items")) {
+                    pods.add(restClient.toResource(item, Pod.class));
+                }
+            }
+        } catch (IOException exception) {
+            String message = String.format("Could not load the pods [label-selector] %s [field-selector] %s.",
+                    labelSelector, fieldSelector);
+            LOG.error(message, exception);
+            throw new WebArtifactHandlerException(message, exception);
+        }
+        return pods;
+    }
+
+    public List<Pod> getReplicaPods(ReplicationController replicationController)
+            throws WebArtifactHandlerException {
+        if ((replicationController == null) || (replicationController.getSpec() == null) || (
+                replicationController.getSpec().getSelector() == null) || (replicationController.getSpec()
+                .getSelector().isEmpty())) {
+            // an empty selector would select every pod of the namespace
+            return new ArrayList<>();
+        }
+        return getPods(replicationController.getSpec().getSelector(), ACTIVE_POD_FIELD_SELECTOR);
     }
 
     public Pod deletePod(String podName) throws WebArtifactHandlerException {
-        Pod pod = client.getPod(podName);
+        Pod pod;
+        try {
+            pod = restClient.get(POD_RESOURCE + "/" + KubernetesRestClient.encode(podName), Pod.class);
+        } catch (IOException exception) {
+            String message = String.format("Could not find the pod[pod-identifier]: " + "%s", podName);
+            LOG.error(message, exception);
+            throw new WebArtifactHandlerException(message, exception);
+        }
         try {
             if (pod != null) {
                 if (LOG.isDebugEnabled()) {
                     LOG.debug(String.format("Deleting Kubernetes pod [pod-name] %s", podName));
                 }
-                client.deletePod(podName);
+                restClient.delete(POD_RESOURCE + "/" + KubernetesRestClient.encode(podName));
                 if (LOG.isDebugEnabled()) {
                     LOG.debug(String.format("Deleted Kubernetes pod [pod-name] %s", podName));
                 }
@@ -125,30 +217,86 @@ public class TomcatPodHandler implements ITomcatPodHandler {
         return pod;
     }
 
-    public void deleteReplicaPods(ReplicationController replicationController, String creator, String podArtifactName)
-            throws WebArtifactHandlerException {
-        try {
-            if ((creator != null) && (podArtifactName != null)) {
-                if (LOG.isDebugEnabled()) {
-                    LOG.debug("Deleting Kubernetes replica pods.");
-                }
-                List<Pod> replicaPods = KubernetesHelper
-                        .getPodsForReplicationController(replicationController, getPods());
-                for (Pod pod : replicaPods) {
-                    client.deletePod(pod);
-                }
-                if (LOG.isDebugEnabled()) {
-                    LOG.debug("Deleted Kubernetes replica pods.");
+    public PodDeletionResult deleteReplicaPods(ReplicationController replicationController, String creator,
+            String podArtifactName) throws WebArtifactHandlerException {
+        if ((creator != null) && (podArtifactName != null)) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Deleting Kubernetes replica pods.");
+            }
+            List<String> podNames = new ArrayList<>();
+            for (Pod pod : getReplicaPods(replicationController)) {
+                podNames.add(pod.getMetadata().getName());
+            }
+            PodDeletionResult deletionResult = deletePods(podNames);
+            if (LOG.isDebugEnabled()) {
+                LOG.debug(String.format("Deleted Kubernetes replica pods %s.", deletionResult));
+            }
+            return deletionResult;
+        } else {
+            String message = "Could not delete the replica pods. Arguments for creator or/and" + " cannot be null.";
+            LOG.error(message);
+            throw new WebArtifactHandlerException(message);
+        }
+    }
+
+    public PodDeletionResult deletePods(List<String> podNames) {
+        PodDeletionResult deletionResult = new PodDeletionResult();
+        for (int batchStart = 0; batchStart < podNames.size(); batchStart += maxConcurrentDeletions) {
+            if (Thread.currentThread().isInterrupted()) {
+                // no further batch is sent once interrupted
+                deletionResult.addNotAttemptedPods(podNames.subList(batchStart, podNames.size()));
+                break;
+            }
+            List<String> batch = podNames
+                    .subList(batchStart, Math.min(batchStart + maxConcurrentDeletions, podNames.size()));
+            long batchStartTime = System.currentTimeMillis();
+            Map<String, Future<JsonNode>> deletions = new LinkedHashMap<>();
+            for (final String podName : batch) {
+                deletions.put(podName, deletionExecutor.submit(new Callable<JsonNode>() {
+                    public JsonNode call() throws Exception {
+                        // the timeout is counted from when the call is sent, not while it is queued
+                        return restClient.delete(POD_RESOURCE + "/" + KubernetesRestClient.encode(podName),
+                                deletionTimeoutInMilliseconds);
+                    }
+                }));
+            }
+            for (Map.Entry<String, Future<JsonNode>> deletion : deletions.entrySet()) {
+                try {
+                    // each call is bounded by its own timeout, hence the outcome is awaited as reported
+                    deletion.getValue().get();
+                    deletionResult.addDeletedPod(deletion.getKey());
+                } catch (ExecutionException exception) {
+                    deletionResult.addFailedPod(deletion.getKey(), String.valueOf(exception.getCause()));
+                } catch (InterruptedException exception) {
+                    Thread.currentThread().interrupt();
+                    deletion.getValue().cancel(true);
+                    deletionResult.addFailedPod(deletion.getKey(), "Interrupted.");
                 }
-            } else {
-                String message = "Could not delete the replica pods. Arguments for creator or/and" + " cannot be null.";
-                LOG.error(message);
-                throw new WebArtifactHandlerException(message);
             }
-        } catch (Exception exception) {
-            String message = "Could not delete the replica pods.";
-            LOG.error(message, exception);
-            throw new WebArtifactHandlerException(message, exception);
+            deletionResult.addBatchDuration(System.currentTimeMillis() - batchStartTime);
+        }
+        if (!deletionResult.isSuccessful()) {
+            LOG.error(String.format("Could not delete all of the pods %s.", deletionResult));
+        }
+        return deletionResult;
+    }
+
+    /**
+     * checks whether the specified pod reports the Ready condition
+     *
+     * @param pod the pod
+     * @return true if the pod is ready to serve, else false
+     */
+    public static boolean isReady(Pod pod) {
+        if ((pod.getStatus() == null) || (pod.getStatus().getConditions() == null)) {
+            return false;
+        }
+        for (PodCondition condition : pod.getStatus().getConditions()) {
+            if ((KubernetesConstantsExtended.POD_READY_CONDITION.equals(condition.getType()))
+                    && (KubernetesConstantsExtended.CONDITION_STATUS_TRUE.equals(condition.getStatus()))) {
+                return true;
+            }
         }
+        return false;
     }
 }
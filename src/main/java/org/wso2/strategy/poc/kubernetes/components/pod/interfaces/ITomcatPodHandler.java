@@ -17,9 +17,11 @@ package org.wso2.strategy.poc.kubernetes.components.pod.interfaces;
 
 import io.fabric8.kubernetes.api.model.Pod;
 import io.fabric8.kubernetes.api.model.ReplicationController;
+import org.wso2.strategy.poc.kubernetes.components.pod.PodDeletionResult;
 import org.wso2.strategy.poc.miscellaneous.exceptions.WebArtifactHandlerException;
 
 import java.util.List;
+import java.util.Map;
 
 /**
  * a Java interface for Pod handling operations
@@ -39,8 +41,39 @@ public interface ITomcatPodHandler {
      * returns the list of active pods
      *
      * @return list of Kubernetes pods
+     * @throws WebArtifactHandlerException
+     */
+    List<Pod> getPods() throws WebArtifactHandlerException;
+
+    /**
+     * returns the pods which match the specified label selector, as selected by the Kubernetes API server
+     *
+     * @param labelSelector labels which the pods should all carry
+     * @return the pods which match the label selector
+     * @throws WebArtifactHandlerException
+     */
+    List<Pod> getPods(Map<String, String> labelSelector) throws WebArtifactHandlerException;
+
+    /**
+     * returns the pods which match the specified label and field selectors, as selected by the
+     * Kubernetes API server
+     *
+     * @param labelSelector labels which the pods should all carry
+     * @param fieldSelector field selector expression (e.g. status.phase=Running), null to select any
+     * @return the pods which match the label and field selectors
+     * @throws WebArtifactHandlerException
+     */
+    List<Pod> getPods(Map<String, String> labelSelector, String fieldSelector) throws WebArtifactHandlerException;
+
+    /**
+     * returns the running and pending pods controlled by the specified replication controller,
+     * selected by the Kubernetes API server using the replication controller's selector
+     *
+     * @param controller the replication controller
+     * @return the pods controlled by the replication controller
+     * @throws WebArtifactHandlerException
      */
-    List<Pod> getPods();
+    List<Pod> getReplicaPods(ReplicationController controller) throws WebArtifactHandlerException;
 
     /**
      * deletes the pod specified by the identifier
@@ -51,14 +84,25 @@ public interface ITomcatPodHandler {
      */
     Pod deletePod(String podName) throws WebArtifactHandlerException;
 
+    /**
+     * deletes the specified pods concurrently, in batches bounded by the handler's concurrency limit,
+     * collecting the failures instead of aborting on the first one. once interrupted, no further batch
+     * is sent and its pods are reported as not attempted
+     *
+     * @param podNames names of the pods to be deleted
+     * @return the aggregated outcome of the deletions
+     */
+    PodDeletionResult deletePods(List<String> podNames);
+
     /**
      * deletes pods generated by a replication controller with similar pod base name
      *
      * @param controller      the replication controller which controlled the pods to be deleted
      * @param creator         creator of the Docker image
      * @param podArtifactName name of the artifact deployed in Docker Container(s) within the pod
+     * @return the aggregated outcome of the deletions
      * @throws WebArtifactHandlerException
      */
-    void deleteReplicaPods(ReplicationController controller, String creator, String podArtifactName)
+    PodDeletionResult deleteReplicaPods(ReplicationController controller, String creator, String podArtifactName)
             throws WebArtifactHandlerException;
 }
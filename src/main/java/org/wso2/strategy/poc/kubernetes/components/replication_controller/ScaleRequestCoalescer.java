@@ -0,0 +1,247 @@
+/*
+* Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.wso2.strategy.poc.kubernetes.components.replication_controller;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.wso2.strategy.poc.kubernetes.components.replication_controller.interfaces.ITomcatReplicationControllerHandler;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * buffers the scale requests of each replication controller for a short window and applies only the
+ * latest requested number of replicas, in a single update, once the window closes
+ * <p>
+ * The first request of a replication controller opens its window, and every request made within the
+ * window replaces the pending target. All requests of a window complete together with the one update.
+ * Updates are applied on a small pool of threads, so that a slow update of one replication controller,
+ * e.g. one retrying on conflicts, does not hold up the windows of the others. The updates of a single
+ * replication controller are applied one at a time: a window opened while an update is in flight is
+ * flushed only after that update completes, so that an older target never lands after a newer one.
+ * Once shut down, scale requests fail straight away.
+ */
+public class ScaleRequestCoalescer {
+    private final ITomcatReplicationControllerHandler replicationControllerHandler;
+    private final ScheduledExecutorService flushExecutor;
+    // replication controller name -> scale request pending within its window
+    private final Map<String, PendingScale> pendingScales = new HashMap<>();
+    // names of the replication controllers whose update is in flight
+    private final Set<String> flushingControllers = new HashSet<>();
+    // guarded by pendingScales
+    private boolean shutDown;
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong coalescedRequests = new AtomicLong();
+    private final AtomicLong appliedUpdates = new AtomicLong();
+    private volatile long windowInMilliseconds;
+
+    public static final int DEFAULT_FLUSH_THREADS = 4;
+    private static final Logger LOG = LogManager.getLogger(ScaleRequestCoalescer.class);
+
+    /**
+     * @param replicationControllerHandler replication controller handler
+     * @param windowInMilliseconds         time for which scale requests of a replication controller are buffered
+     */
+    public ScaleRequestCoalescer(ITomcatReplicationControllerHandler replicationControllerHandler,
+            long windowInMilliseconds) {
+        this(replicationControllerHandler, windowInMilliseconds, DEFAULT_FLUSH_THREADS);
+    }
+
+    /**
+     * @param replicationControllerHandler replication controller handler
+     * @param windowInMilliseconds         time for which scale requests of a replication controller are buffered
+     * @param flushThreads                 number of threads applying the coalesced updates
+     */
+    public ScaleRequestCoalescer(ITomcatReplicationControllerHandler replicationControllerHandler,
+            long windowInMilliseconds, int flushThreads) {
+        if (flushThreads < 1) {
+            throw new IllegalArgumentException("Number of flush threads should be at least one.");
+        }
+        this.replicationControllerHandler = replicationControllerHandler;
+        setWindow(windowInMilliseconds);
+        flushExecutor = Executors.newScheduledThreadPool(flushThreads,
+                new ThreadFactoryBuilder().setNameFormat("scale-request-coalescer-%d").setDaemon(true).build());
+    }
+
+    /**
+     * sets the time for which the scale requests of a replication controller are buffered, which
+     * applies to the windows opened afterwards
+     *
+     * @param windowInMilliseconds time for which scale requests of a replication controller are buffered
+     */
+    public void setWindow(long windowInMilliseconds) {
+        if (windowInMilliseconds < 0) {
+            throw new IllegalArgumentException("Coalescing window should not be negative.");
+        }
+        this.windowInMilliseconds = windowInMilliseconds;
+    }
+
+    /**
+     * requests the specified replication controller to be scaled to the specified number of replicas
+     *
+     * @param controllerName name of the replication controller
+     * @param newReplicas    new number of replicas
+     * @return a future of the number of replicas applied by the coalesced update, which may be the
+     * target of a later request of the same window, or a failed future if the coalescer is shut down
+     */
+    public ListenableFuture<Integer> requestScale(final String controllerName, int newReplicas) {
+        requests.incrementAndGet();
+        synchronized (pendingScales) {
+            if (shutDown) {
+                return Futures.immediateFailedFuture(new IllegalStateException("Scale request coalescer shut down."));
+            }
+            PendingScale pendingScale = pendingScales.get(controllerName);
+            if (pendingScale == null) {
+                pendingScale =
+                        new PendingScale(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(windowInMilliseconds));
+                if (!flushingControllers.contains(controllerName)) {
+                    // else the window is scheduled once the update in flight completes
+                    try {
+                        scheduleFlush(controllerName, pendingScale);
+                    } catch (RejectedExecutionException exception) {
+                        // a window which is never flushed is not opened
+                        return Futures.immediateFailedFuture(exception);
+                    }
+                }
+                pendingScales.put(controllerName, pendingScale);
+            } else {
+                coalescedRequests.incrementAndGet();
+            }
+            pendingScale.targetReplicas = newReplicas;
+            pendingScale.requests++;
+            return pendingScale.result;
+        }
+    }
+
+    /**
+     * returns the number of scale requests made
+     *
+     * @return the number of scale requests made
+     */
+    public long getRequests() {
+        return requests.get();
+    }
+
+    /**
+     * returns the number of scale requests which were absorbed into the update of an earlier request
+     *
+     * @return the number of scale requests which were absorbed into the update of an earlier request
+     */
+    public long getCoalescedRequests() {
+        return coalescedRequests.get();
+    }
+
+    /**
+     * returns the number of replication controller updates made for the scale requests
+     *
+     * @return the number of replication controller updates made for the scale requests
+     */
+    public long getAppliedUpdates() {
+        return appliedUpdates.get();
+    }
+
+    /**
+     * stops applying the buffered scale requests, failing those pending
+     */
+    public void shutdown() {
+        synchronized (pendingScales) {
+            shutDown = true;
+            flushExecutor.shutdownNow();
+            for (PendingScale pendingScale : pendingScales.values()) {
+                pendingScale.result.setException(new IllegalStateException("Scale request coalescer shut down."));
+            }
+            pendingScales.clear();
+        }
+    }
+
+    public String toString() {
+        return String.format("[scale-requests] %d [coalesced-requests] %d [applied-updates] %d", getRequests(),
+                getCoalescedRequests(), getAppliedUpdates());
+    }
+
+    private void scheduleFlush(final String controllerName, PendingScale pendingScale) {
+        flushExecutor.schedule(new Runnable() {
+            public void run() {
+                flush(controllerName);
+            }
+        }, Math.max(0, pendingScale.closesAt - System.nanoTime()), TimeUnit.NANOSECONDS);
+    }
+
+    private void flush(String controllerName) {
+        PendingScale pendingScale;
+        synchronized (pendingScales) {
+            // requests made from now on open a new window
+            pendingScale = pendingScales.remove(controllerName);
+            if (pendingScale == null) {
+                return;
+            }
+            flushingControllers.add(controllerName);
+        }
+        try {
+            replicationControllerHandler.updateNoOfReplicas(controllerName, pendingScale.targetReplicas);
+            appliedUpdates.incrementAndGet();
+            if (pendingScale.requests > 1) {
+                LOG.info(String.format("Scaled [rc-name] %s to [replicas] %d, coalescing [scale-requests] %d %s",
+                        controllerName, pendingScale.targetReplicas, pendingScale.requests, this));
+            } else if (LOG.isDebugEnabled()) {
+                LOG.debug(String.format("Scaled [rc-name] %s to [replicas] %d.", controllerName,
+                        pendingScale.targetReplicas));
+            }
+            pendingScale.result.set(pendingScale.targetReplicas);
+        } catch (Exception exception) {
+            pendingScale.result.setException(exception);
+        } finally {
+            synchronized (pendingScales) {
+                flushingControllers.remove(controllerName);
+                PendingScale nextPendingScale = pendingScales.get(controllerName);
+                if (nextPendingScale != null) {
+                    try {
+                        scheduleFlush(controllerName, nextPendingScale);
+                    } catch (RejectedExecutionException exception) {
+                        pendingScales.remove(controllerName);
+                        nextPendingScale.result.setException(exception);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * the latest scale request of a replication controller within its window
+     */
+    private static class PendingScale {
+        private final SettableFuture<Integer> result = SettableFuture.create();
+        // System.nanoTime() at which the window closes
+        private final long closesAt;
+        private int targetReplicas;
+        private int requests;
+
+        private PendingScale(long closesAt) {
+            this.closesAt = closesAt;
+        }
+    }
+}
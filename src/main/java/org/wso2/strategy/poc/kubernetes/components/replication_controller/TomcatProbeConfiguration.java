@@ -0,0 +1,193 @@
+/*
+* Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.wso2.strategy.poc.kubernetes.components.replication_controller;
+
+import io.fabric8.kubernetes.api.model.ExecAction;
+import io.fabric8.kubernetes.api.model.HTTPGetAction;
+import io.fabric8.kubernetes.api.model.IntOrString;
+import io.fabric8.kubernetes.api.model.Probe;
+import io.fabric8.kubernetes.api.model.TCPSocketAction;
+import org.wso2.strategy.poc.kubernetes.constants.KubernetesConstantsExtended;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * the readiness and liveness probes of the Tomcat container of a web artifact
+ * <p>
+ * Unless a readiness path is set, the readiness probe opens a TCP connection to Tomcat's port, which
+ * Tomcat opens only after it has deployed the web artifacts of the image, so that a web artifact without
+ * a welcome file still becomes ready. A readiness path should be set to a path which the web artifact
+ * serves, e.g. a health check. If a warm-up path is set, the readiness probe gets the warm-up path once,
+ * and only after it succeeded the readiness path, which requires curl in the Tomcat image. The liveness
+ * probe gets a path served by Tomcat itself, or unless a liveness path is set, opens a TCP connection to
+ * Tomcat's port, so that neither a slow web artifact nor a Tomcat image without a ROOT web app causes
+ * the container to be restarted.
+ * <p>
+ * Only the initial delay and the timeout of a probe are set, the period and thresholds are those of the
+ * kubelet, since the Kubernetes model in use predates them.
+ */
+public class TomcatProbeConfiguration {
+    private final String readinessPath;
+    private final String livenessPath;
+    private final String warmUpPath;
+    private final int readinessInitialDelaySeconds;
+    private final int livenessInitialDelaySeconds;
+    private final int timeoutSeconds;
+
+    public static final int DEFAULT_READINESS_INITIAL_DELAY_SECONDS = 15;
+    public static final int DEFAULT_LIVENESS_INITIAL_DELAY_SECONDS = 60;
+    public static final int DEFAULT_TIMEOUT_SECONDS = 5;
+    private static final String WARMED_UP_MARKER_FILE = "/tmp/warmed-up";
+
+    /**
+     * @param readinessPath HTTP path which is served once the web artifact is ready, null to probe Tomcat's port
+     * @param livenessPath  HTTP path which is served while Tomcat is alive, null to probe Tomcat's port instead
+     * @param warmUpPath    HTTP path to be hit once before the pod reports ready, null if none
+     */
+    public TomcatProbeConfiguration(String readinessPath, String livenessPath, String warmUpPath) {
+        this(readinessPath, livenessPath, warmUpPath, DEFAULT_READINESS_INITIAL_DELAY_SECONDS,
+                DEFAULT_LIVENESS_INITIAL_DELAY_SECONDS, DEFAULT_TIMEOUT_SECONDS);
+    }
+
+    /**
+     * @param readinessPath                HTTP path which is served once the web artifact is ready, null to
+     *                                     probe Tomcat's port instead
+     * @param livenessPath                 HTTP path which is served while Tomcat is alive, null to probe
+     *                                     Tomcat's port instead
+     * @param warmUpPath                   HTTP path to be hit once before the pod reports ready, null if none
+     * @param readinessInitialDelaySeconds time after the container start before the first readiness probe
+     * @param livenessInitialDelaySeconds  time after the container start before the first liveness probe
+     * @param timeoutSeconds               time after which a probe fails
+     */
+    public TomcatProbeConfiguration(String readinessPath, String livenessPath, String warmUpPath,
+            int readinessInitialDelaySeconds, int livenessInitialDelaySeconds, int timeoutSeconds) {
+        if ((readinessInitialDelaySeconds < 0) || (livenessInitialDelaySeconds < 0) || (timeoutSeconds < 1)) {
+            throw new IllegalArgumentException("Probe delays should not be negative, and probe timeout should be "
+                    + "at least one.");
+        }
+        this.readinessPath = readinessPath;
+        this.livenessPath = livenessPath;
+        this.warmUpPath = warmUpPath;
+        this.readinessInitialDelaySeconds = readinessInitialDelaySeconds;
+        this.livenessInitialDelaySeconds = livenessInitialDelaySeconds;
+        this.timeoutSeconds = timeoutSeconds;
+    }
+
+    /**
+     * returns the HTTP path got by the readiness probe
+     *
+     * @return the HTTP path got by the readiness probe, null if the readiness probe opens a TCP connection
+     */
+    public String getReadinessPath() {
+        return readinessPath;
+    }
+
+    /**
+     * returns the HTTP path got by the liveness probe
+     *
+     * @return the HTTP path got by the liveness probe, null if the liveness probe opens a TCP connection
+     */
+    public String getLivenessPath() {
+        return livenessPath;
+    }
+
+    public String getWarmUpPath() {
+        return warmUpPath;
+    }
+
+    /**
+     * returns the readiness probe of the Tomcat container
+     *
+     * @return the readiness probe of the Tomcat container
+     */
+    public Probe createReadinessProbe() {
+        Probe probe = createProbe(readinessInitialDelaySeconds);
+        if ((warmUpPath == null) && (readinessPath == null)) {
+            probe.setTcpSocket(createTcpSocketAction());
+        } else if (warmUpPath == null) {
+            probe.setHttpGet(createHttpGetAction(readinessPath));
+        } else {
+            // the marker file keeps the warm-up to the first successful probe of the container
+            String command = String.format("[ -f %s ] || { %s && touch %s; }", WARMED_UP_MARKER_FILE,
+                    createCurlCommand(warmUpPath), WARMED_UP_MARKER_FILE);
+            if (readinessPath != null) {
+                command += " && " + createCurlCommand(readinessPath);
+            }
+            List<String> commandLine = new ArrayList<>();
+            commandLine.add("sh");
+            commandLine.add("-c");
+            commandLine.add(command);
+            ExecAction execAction = new ExecAction();
+            execAction.setCommand(commandLine);
+            probe.setExec(execAction);
+        }
+        return probe;
+    }
+
+    /**
+     * returns the liveness probe of the Tomcat container
+     *
+     * @return the liveness probe of the Tomcat container
+     */
+    public Probe createLivenessProbe() {
+        Probe probe = createProbe(livenessInitialDelaySeconds);
+        if (livenessPath != null) {
+            probe.setHttpGet(createHttpGetAction(livenessPath));
+        } else {
+            probe.setTcpSocket(createTcpSocketAction());
+        }
+        return probe;
+    }
+
+    public String toString() {
+        return String.format("[readiness-path] %s [liveness-path] %s [warm-up-path] %s [readiness-initial-delay] "
+                        + "%d s [liveness-initial-delay] %d s [timeout] %d s",
+                (readinessPath != null) ? readinessPath : "tcp", (livenessPath != null) ? livenessPath : "tcp",
+                warmUpPath, readinessInitialDelaySeconds, livenessInitialDelaySeconds, timeoutSeconds);
+    }
+
+    private Probe createProbe(int initialDelaySeconds) {
+        Probe probe = new Probe();
+        probe.setInitialDelaySeconds(initialDelaySeconds);
+        probe.setTimeoutSeconds(timeoutSeconds);
+        return probe;
+    }
+
+    private static HTTPGetAction createHttpGetAction(String path) {
+        HTTPGetAction httpGetAction = new HTTPGetAction();
+        httpGetAction.setPath(path);
+        httpGetAction.setPort(createTomcatPort());
+        return httpGetAction;
+    }
+
+    private static TCPSocketAction createTcpSocketAction() {
+        TCPSocketAction tcpSocketAction = new TCPSocketAction();
+        tcpSocketAction.setPort(createTomcatPort());
+        return tcpSocketAction;
+    }
+
+    private static IntOrString createTomcatPort() {
+        IntOrString port = new IntOrString();
+        port.setIntVal(KubernetesConstantsExtended.TOMCAT_DOCKER_CONTAINER_EXPOSED_PORT);
+        return port;
+    }
+
+    private String createCurlCommand(String path) {
+        return String.format("curl -fs -o /dev/null -m %d 'http://localhost:%d%s'", timeoutSeconds,
+                KubernetesConstantsExtended.TOMCAT_DOCKER_CONTAINER_EXPOSED_PORT, path.replace("'", ""));
+    }
+}
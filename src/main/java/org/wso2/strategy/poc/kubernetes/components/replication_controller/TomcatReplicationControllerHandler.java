@@ -15,15 +15,20 @@
 */
 package org.wso2.strategy.poc.kubernetes.components.replication_controller;
 
-import io.fabric8.kubernetes.api.KubernetesClient;
-import io.fabric8.kubernetes.api.KubernetesFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import io.fabric8.kubernetes.api.model.*;
+import org.apache.http.HttpStatus;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.wso2.strategy.poc.kubernetes.cache.KubernetesResourceCache;
 import org.wso2.strategy.poc.kubernetes.components.replication_controller.interfaces.ITomcatReplicationControllerHandler;
 import org.wso2.strategy.poc.kubernetes.constants.KubernetesConstantsExtended;
+import org.wso2.strategy.poc.kubernetes.rest.KubernetesApiException;
+import org.wso2.strategy.poc.kubernetes.rest.KubernetesRestClient;
+import org.wso2.strategy.poc.kubernetes.rest.KubernetesTransport;
 import org.wso2.strategy.poc.miscellaneous.exceptions.WebArtifactHandlerException;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -31,20 +36,41 @@ import java.util.Map;
 
 /**
  * A Java class which implements the ITomcatReplicationControllerHandler interface
+ * <p>
+ * Replication controllers are read from a watch-backed local cache, rather than from the API server.
+ * Updates are sent as patches of the changed fields only, conditional on the resourceVersion read.
  */
 public class TomcatReplicationControllerHandler implements ITomcatReplicationControllerHandler {
-    private final KubernetesClient client;
+    private final KubernetesRestClient restClient;
+    private final KubernetesResourceCache<ReplicationController> replicationControllerCache;
+
+    private static final String REPLICATION_CONTROLLER_RESOURCE = "replicationcontrollers";
+    private static final int MAX_CONFLICT_RETRIES = 5;
+    private static final long CONFLICT_RETRY_DELAY_IN_MILLISECONDS = 100;
     private static final Logger LOG = LogManager.getLogger(TomcatReplicationControllerHandler.class);
 
     public TomcatReplicationControllerHandler(String kubernetesURI) {
-        client = new KubernetesClient(new KubernetesFactory(kubernetesURI));
+        this(KubernetesTransport.getInstance(kubernetesURI));
+    }
+
+    public TomcatReplicationControllerHandler(KubernetesTransport transport) {
+        restClient = new KubernetesRestClient(transport);
+        replicationControllerCache = new KubernetesResourceCache<>(restClient, REPLICATION_CONTROLLER_RESOURCE,
+                ReplicationController.class);
+        replicationControllerCache.start();
     }
 
-    public void createReplicationController(String controllerName, String podLabel, String tomcatDockerImageName,
+    public boolean createReplicationController(String controllerName, String podLabel, String tomcatDockerImageName,
             int numberOfReplicas) throws WebArtifactHandlerException {
+        return createReplicationController(controllerName, podLabel, tomcatDockerImageName, numberOfReplicas, null, null);
+    }
+
+    public boolean createReplicationController(String controllerName, String podLabel, String tomcatDockerImageName,
+            int numberOfReplicas, TomcatProbeConfiguration probeConfiguration, TomcatResourceProfile resourceProfile)
+            throws WebArtifactHandlerException {
         try {
             if ((controllerName != null) && (podLabel != null) && (tomcatDockerImageName != null)) {
-                ReplicationController controller = client.getReplicationController(controllerName);
+                ReplicationController controller = getReplicationController(controllerName);
                 if (controller == null) {
                     if (LOG.isDebugEnabled()) {
                         String message = String.format("Creating Kubernetes replication controller"
@@ -71,6 +97,14 @@ public class TomcatReplicationControllerHandler implements ITomcatReplicationCon
                     Container container = new Container();
                     container.setImage(tomcatDockerImageName);
                     container.setName(podLabel);
+                    if (probeConfiguration != null) {
+                        container.setReadinessProbe(probeConfiguration.createReadinessProbe());
+                        container.setLivenessProbe(probeConfiguration.createLivenessProbe());
+                    }
+                    if (resourceProfile != null) {
+                        container.setResources(resourceProfile.createResourceRequirements());
+                        container.setEnv(resourceProfile.createEnvironmentVariables());
+                    }
                     podContainers.add(container);
                     podSpec.setContainers(podContainers);
 
@@ -91,14 +125,17 @@ public class TomcatReplicationControllerHandler implements ITomcatReplicationCon
                         creates a replication controller using the specified
                         replication controller entity
                      */
-                    client.createReplicationController(replicationController, "default");
+                    restClient.create(REPLICATION_CONTROLLER_RESOURCE, replicationController);
+                    replicationControllerCache.refreshQuietly(controllerName);
                     if (LOG.isDebugEnabled()) {
                         String message = String.format("Created Kubernetes replication controller"
                                         + " [controller-name] %s [pod-label] %s " + "[pod-Docker-image-name] %s",
                                 controllerName, podLabel, tomcatDockerImageName);
                         LOG.debug(message);
                     }
+                    return true;
                 }
+                return false;
             } else {
                 String message = "Could not create the replication controller. Replication controller id, "
                         + "pod label and Docker Image name cannot be null.";
@@ -113,9 +150,23 @@ public class TomcatReplicationControllerHandler implements ITomcatReplicationCon
         }
     }
 
-    public ReplicationController getReplicationController(String controllerName) {
+    public ReplicationController getReplicationController(String controllerName)
+            throws WebArtifactHandlerException {
         if (controllerName != null) {
-            return client.getReplicationController(controllerName);
+            try {
+                return replicationControllerCache.get(controllerName);
+            } catch (WebArtifactHandlerException exception) {
+                // falls back to reading from the API server while the cache cannot be synchronized
+                try {
+                    return restClient.get(getPath(controllerName), ReplicationController.class);
+                } catch (IOException readException) {
+                    // a failed read is not an absent replication controller, which callers act upon
+                    String message = String.format("Could not read the replication controller [rc-name] %s.",
+                            controllerName);
+                    LOG.error(message, readException);
+                    throw new WebArtifactHandlerException(message, readException);
+                }
+            }
         } else {
             return null;
         }
@@ -123,7 +174,7 @@ public class TomcatReplicationControllerHandler implements ITomcatReplicationCon
 
     public int getNoOfReplicas(String controllerName) throws WebArtifactHandlerException {
         if (controllerName != null) {
-            ReplicationController replicationController = client.getReplicationController(controllerName);
+            ReplicationController replicationController = getReplicationController(controllerName);
             if (replicationController != null) {
                 return replicationController.getSpec().getReplicas();
             } else {
@@ -135,17 +186,19 @@ public class TomcatReplicationControllerHandler implements ITomcatReplicationCon
         }
     }
 
-    public void updateNoOfReplicas(String controllerName, int newReplicas) throws WebArtifactHandlerException {
+    public void updateNoOfReplicas(String controllerName, final int newReplicas) throws WebArtifactHandlerException {
         if (controllerName != null) {
-            ReplicationController replicationController = client.getReplicationController(controllerName);
             try {
-                if (replicationController != null) {
-                    ReplicationControllerSpec spec = replicationController.getSpec();
-                    if (spec.getReplicas() != newReplicas) {
-                        spec.setReplicas(newReplicas);
-                        client.updateReplicationController(controllerName, replicationController);
+                patchReplicationController(controllerName, new FieldChange() {
+                    public ObjectNode toPatch(ReplicationController replicationController) {
+                        if (replicationController.getSpec().getReplicas() == newReplicas) {
+                            return null;
+                        }
+                        ObjectNode patch = restClient.createPatch();
+                        patch.putObject("spec").put("replicas", newReplicas);
+                        return patch;
                     }
-                }
+                });
             } catch (Exception exception) {
                 String message = String
                         .format("Could not update the replication controller[rc-identifier]: " + "%s", controllerName);
@@ -158,20 +211,29 @@ public class TomcatReplicationControllerHandler implements ITomcatReplicationCon
         }
     }
 
-    public void updateImage(String controllerName, String dockerImage) throws WebArtifactHandlerException {
+    public void updateImage(String controllerName, final String dockerImage) throws WebArtifactHandlerException {
         if (controllerName != null) {
-            ReplicationController replicationController = client.getReplicationController(controllerName);
-            final int imageIndex = 0;
             try {
-                if (replicationController != null) {
-                    if (dockerImage != null) {
-                        List<Container> podContainers = replicationController.getSpec().getTemplate().getSpec()
-                                .getContainers();
-                        if ((podContainers != null) && (podContainers.size() > 0)) {
-                            podContainers.get(imageIndex).setImage(dockerImage);
+                if (dockerImage != null) {
+                    patchReplicationController(controllerName, new FieldChange() {
+                        public ObjectNode toPatch(ReplicationController replicationController) {
+                            final int imageIndex = 0;
+                            List<Container> podContainers = replicationController.getSpec().getTemplate().getSpec()
+                                    .getContainers();
+                            if ((podContainers == null) || (podContainers.size() == 0) || dockerImage
+                                    .equals(podContainers.get(imageIndex).getImage())) {
+                                return null;
+                            }
+                            // containers are merged by name, hence only the image of the named container changes
+                            ObjectNode container = restClient.createPatch();
+                            container.put("name", podContainers.get(imageIndex).getName());
+                            container.put("image", dockerImage);
+                            ObjectNode patch = restClient.createPatch();
+                            patch.putObject("spec").putObject("template").putObject("spec").putArray("containers")
+                                    .add(container);
+                            return patch;
                         }
-                        client.updateReplicationController(controllerName, replicationController);
-                    }
+                    });
                 }
             } catch (Exception exception) {
                 String message = String
@@ -187,14 +249,15 @@ public class TomcatReplicationControllerHandler implements ITomcatReplicationCon
 
     public ReplicationController deleteReplicationController(String controllerName) throws WebArtifactHandlerException {
         if (controllerName != null) {
-            ReplicationController replicationController = client.getReplicationController(controllerName);
+            ReplicationController replicationController = getReplicationController(controllerName);
             try {
                 if (replicationController != null) {
                     if (LOG.isDebugEnabled()) {
                         LOG.debug(String.format("Deleting Kubernetes replication controller" + " [rc-name] %s",
                                 controllerName));
                     }
-                    client.deleteReplicationController(controllerName);
+                    restClient.delete(getPath(controllerName));
+                    replicationControllerCache.refreshQuietly(controllerName);
                     if (LOG.isDebugEnabled()) {
                         LOG.debug(String.format("Deleted Kubernetes replication controller" + " [rc-name] %s",
                                 controllerName));
@@ -212,4 +275,77 @@ public class TomcatReplicationControllerHandler implements ITomcatReplicationCon
             throw new WebArtifactHandlerException(message);
         }
     }
+
+    /**
+     * patches the specified replication controller with only the fields of the change, conditional on the
+     * resourceVersion the change was computed from
+     * <p>
+     * If the replication controller has been modified concurrently, the API server rejects the patch with
+     * 409 Conflict, and the change is computed again from the latest replication controller and retried,
+     * so that a concurrent change of another field is never overwritten. The first attempt is computed from
+     * the cached replication controller, which may lag behind a concurrent change, hence the change is only
+     * skipped as already applied once a fresh read confirms it.
+     *
+     * @param controllerName name of the replication controller
+     * @param change         the field change
+     * @throws IOException
+     * @throws InterruptedException
+     * @throws WebArtifactHandlerException if the replication controller cannot be read
+     */
+    private void patchReplicationController(String controllerName, FieldChange change)
+            throws IOException, InterruptedException, WebArtifactHandlerException {
+        ReplicationController replicationController = getReplicationController(controllerName);
+        boolean fresh = false;
+        int attempt = 1;
+        while (replicationController != null) {
+            ObjectNode patch = change.toPatch(replicationController);
+            if (patch == null) {
+                if (fresh) {
+                    return;
+                }
+                replicationController = restClient.get(getPath(controllerName), ReplicationController.class);
+                fresh = true;
+                continue;
+            }
+            String resourceVersion = replicationController.getMetadata().getResourceVersion();
+            if (resourceVersion != null) {
+                patch.putObject("metadata").put("resourceVersion", resourceVersion);
+            }
+            try {
+                restClient.patch(getPath(controllerName), patch);
+                replicationControllerCache.refreshQuietly(controllerName);
+                return;
+            } catch (KubernetesApiException exception) {
+                if ((exception.getStatusCode() != HttpStatus.SC_CONFLICT) || (attempt >= MAX_CONFLICT_RETRIES)) {
+                    throw exception;
+                }
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug(String.format("Conflicting update of [rc-name] %s at [resource-version] %s, retrying "
+                            + "[attempt] %d.", controllerName, resourceVersion, attempt));
+                }
+            }
+            Thread.sleep(CONFLICT_RETRY_DELAY_IN_MILLISECONDS * attempt);
+            attempt++;
+            // the cache may not have caught up with the conflicting change yet
+            replicationController = restClient.get(getPath(controllerName), ReplicationController.class);
+            fresh = true;
+        }
+    }
+
+    private static String getPath(String controllerName) throws IOException {
+        return REPLICATION_CONTROLLER_RESOURCE + "/" + KubernetesRestClient.encode(controllerName);
+    }
+
+    /**
+     * a change of some fields of a replication controller, computed from its current state
+     */
+    private interface FieldChange {
+        /**
+         * returns the patch which applies the change to the specified replication controller
+         *
+         * @param replicationController current replication controller
+         * @return the patch, null if the replication controller already reflects the change
+         */
+        ObjectNode toPatch(ReplicationController replicationController);
+    }
 }
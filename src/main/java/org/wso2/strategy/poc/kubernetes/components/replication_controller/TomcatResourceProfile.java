@@ -0,0 +1,275 @@
+/*
+* Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.wso2.strategy.poc.kubernetes.components.replication_controller;
+
+import io.fabric8.kubernetes.api.model.EnvVar;
+import io.fabric8.kubernetes.api.model.Quantity;
+import io.fabric8.kubernetes.api.model.ResourceRequirements;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * the compute resources of the Tomcat container of a web artifact, together with the JVM options which
+ * size Tomcat to those resources
+ * <p>
+ * CPU and memory requests and limits are set on the container. As the JVM of the Tomcat image does not
+ * size its heap to the container, the maximum heap is derived from the memory limit (or the memory
+ * request, if no limit is set) and passed to Tomcat through CATALINA_OPTS, along with the garbage
+ * collector and the thread stack size. Any further JVM options are passed through JAVA_OPTS.
+ * <p>
+ * The maximum heap is the configured share of the container memory, capped so that a fixed reserve is
+ * left for the memory the JVM uses outside the heap (metaspace, thread stacks, code cache and direct
+ * buffers), which would otherwise get the container killed on small memory limits. A container memory
+ * too small to hold the reserve and a minimal heap is rejected. The initial heap is only pinned to the
+ * maximum heap on request.
+ */
+public class TomcatResourceProfile {
+    private final String cpuRequest;
+    private final String cpuLimit;
+    private final String memoryRequest;
+    private final String memoryLimit;
+    private final int heapPercentage;
+    private final GarbageCollector garbageCollector;
+    private final String threadStackSize;
+    private final String javaOptions;
+    private final String nonHeapReserve;
+    private final boolean fixedHeap;
+
+    public static final int DEFAULT_HEAP_PERCENTAGE = 75;
+    public static final String DEFAULT_NON_HEAP_RESERVE = "192Mi";
+    private static final long MIN_HEAP_IN_MEBIBYTES = 32;
+    private static final String CPU_RESOURCE = "cpu";
+    private static final String MEMORY_RESOURCE = "memory";
+    private static final String CATALINA_OPTS = "CATALINA_OPTS";
+    private static final String JAVA_OPTS = "JAVA_OPTS";
+    // signed decimal number followed by a binary suffix, a decimal exponent or a decimal suffix
+    private static final Pattern MEMORY_QUANTITY = Pattern
+            .compile("([+-]?(?:\\d+(?:\\.\\d*)?|\\.\\d+))(?:([KMGTPE]i)|[eE]([+-]?\\d+)|([mkMGTPE]))?");
+    private static final String BINARY_SUFFIXES = "KMGTPE";
+    private static final String DECIMAL_SUFFIXES = "kMGTPE";
+    private static final Pattern THREAD_STACK_SIZE = Pattern.compile("\\d+[kKmMgG]?");
+    private static final long BYTES_PER_MEBIBYTE = 1024 * 1024;
+
+    /**
+     * garbage collectors of the Tomcat JVM
+     * <p>
+     * Only collectors available on every JDK the floating Tomcat base image may ship are offered, hence not
+     * CMS, with which a JDK 14 or later JVM does not start.
+     */
+    public enum GarbageCollector {
+        SERIAL("-XX:+UseSerialGC"), PARALLEL("-XX:+UseParallelGC"), G1("-XX:+UseG1GC");
+
+        private final String option;
+
+        GarbageCollector(String option) {
+            this.option = option;
+        }
+
+        public String getOption() {
+            return option;
+        }
+    }
+
+    /**
+     * @param cpuRequest       CPU request of the container as a Kubernetes quantity (e.g. 500m), null if none
+     * @param cpuLimit         CPU limit of the container as a Kubernetes quantity (e.g. 1), null if none
+     * @param memoryRequest    memory request of the container as a Kubernetes quantity (e.g. 512Mi), null if none
+     * @param memoryLimit      memory limit of the container as a Kubernetes quantity (e.g. 1Gi), null if none
+     * @param heapPercentage   share of the container memory given to the maximum heap, in percent
+     * @param garbageCollector garbage collector of the Tomcat JVM, null for the JVM's default
+     * @param threadStackSize  thread stack size of the Tomcat JVM (e.g. 256k), null for the JVM's default
+     * @param javaOptions      further JVM options, null if none
+     */
+    public TomcatResourceProfile(String cpuRequest, String cpuLimit, String memoryRequest, String memoryLimit,
+            int heapPercentage, GarbageCollector garbageCollector, String threadStackSize, String javaOptions) {
+        this(cpuRequest, cpuLimit, memoryRequest, memoryLimit, heapPercentage, garbageCollector, threadStackSize,
+                javaOptions, DEFAULT_NON_HEAP_RESERVE, false);
+    }
+
+    /**
+     * @param cpuRequest       CPU request of the container as a Kubernetes quantity (e.g. 500m), null if none
+     * @param cpuLimit         CPU limit of the container as a Kubernetes quantity (e.g. 1), null if none
+     * @param memoryRequest    memory request of the container as a Kubernetes quantity (e.g. 512Mi), null if none
+     * @param memoryLimit      memory limit of the container as a Kubernetes quantity (e.g. 1Gi), null if none
+     * @param heapPercentage   share of the container memory given to the maximum heap, in percent
+     * @param garbageCollector garbage collector of the Tomcat JVM, null for the JVM's default
+     * @param threadStackSize  thread stack size of the Tomcat JVM (e.g. 256k), null for the JVM's default
+     * @param javaOptions      further JVM options, null if none
+     * @param nonHeapReserve   container memory kept out of the heap as a Kubernetes quantity (e.g. 192Mi)
+     * @param fixedHeap        true to set the initial heap to the maximum heap, else false
+     */
+    public TomcatResourceProfile(String cpuRequest, String cpuLimit, String memoryRequest, String memoryLimit,
+            int heapPercentage, GarbageCollector garbageCollector, String threadStackSize, String javaOptions,
+            String nonHeapReserve, boolean fixedHeap) {
+        if ((heapPercentage < 1) || (heapPercentage > 100)) {
+            throw new IllegalArgumentException("Heap percentage should be between 1 and 100.");
+        }
+        if ((threadStackSize != null) && (!THREAD_STACK_SIZE.matcher(threadStackSize).matches())) {
+            throw new IllegalArgumentException(String.format("Invalid thread stack size: %s", threadStackSize));
+        }
+        // quantities are parsed up front, so that a malformed one fails here rather than on deployment
+        Long memoryRequestBytes = (memoryRequest != null) ? toBytes(memoryRequest) : null;
+        Long memoryLimitBytes = (memoryLimit != null) ? toBytes(memoryLimit) : null;
+        if ((memoryRequestBytes != null) && (memoryLimitBytes != null) && (memoryRequestBytes > memoryLimitBytes)) {
+            throw new IllegalArgumentException("Memory request should not exceed the memory limit.");
+        }
+        if (nonHeapReserve == null) {
+            throw new IllegalArgumentException("Non-heap memory reserve cannot be null.");
+        }
+        long nonHeapReserveBytes = toBytes(nonHeapReserve);
+        Long containerBytes = (memoryLimitBytes != null) ? memoryLimitBytes : memoryRequestBytes;
+        if ((containerBytes != null)
+                && (containerBytes - nonHeapReserveBytes < MIN_HEAP_IN_MEBIBYTES * BYTES_PER_MEBIBYTE)) {
+            // the minimum heap on top of the reserve would exceed the container and get it killed
+            throw new IllegalArgumentException(String.format("Container memory %s should exceed the non-heap "
+                    + "memory reserve %s by at least %d Mi.", (memoryLimit != null) ? memoryLimit : memoryRequest,
+                    nonHeapReserve, MIN_HEAP_IN_MEBIBYTES));
+        }
+        this.cpuRequest = cpuRequest;
+        this.cpuLimit = cpuLimit;
+        this.memoryRequest = memoryRequest;
+        this.memoryLimit = memoryLimit;
+        this.heapPercentage = heapPercentage;
+        this.garbageCollector = garbageCollector;
+        this.threadStackSize = threadStackSize;
+        this.javaOptions = javaOptions;
+        this.nonHeapReserve = nonHeapReserve;
+        this.fixedHeap = fixedHeap;
+    }
+
+    /**
+     * returns the compute resource requests and limits of the Tomcat container
+     *
+     * @return the compute resource requests and limits of the Tomcat container
+     */
+    public ResourceRequirements createResourceRequirements() {
+        Map<String, Quantity> requests = new HashMap<>();
+        Map<String, Quantity> limits = new HashMap<>();
+        putQuantity(requests, CPU_RESOURCE, cpuRequest);
+        putQuantity(requests, MEMORY_RESOURCE, memoryRequest);
+        putQuantity(limits, CPU_RESOURCE, cpuLimit);
+        putQuantity(limits, MEMORY_RESOURCE, memoryLimit);
+        ResourceRequirements resourceRequirements = new ResourceRequirements();
+        resourceRequirements.setRequests(requests);
+        resourceRequirements.setLimits(limits);
+        return resourceRequirements;
+    }
+
+    /**
+     * returns the environment variables which pass the JVM options to Tomcat
+     *
+     * @return the environment variables which pass the JVM options to Tomcat
+     */
+    public List<EnvVar> createEnvironmentVariables() {
+        List<EnvVar> environmentVariables = new ArrayList<>();
+        String catalinaOptions = getCatalinaOptions();
+        if (!catalinaOptions.isEmpty()) {
+            environmentVariables.add(createEnvironmentVariable(CATALINA_OPTS, catalinaOptions));
+        }
+        if ((javaOptions != null) && (!javaOptions.trim().isEmpty())) {
+            environmentVariables.add(createEnvironmentVariable(JAVA_OPTS, javaOptions.trim()));
+        }
+        return environmentVariables;
+    }
+
+    /**
+     * returns the JVM options which size Tomcat to the container
+     *
+     * @return the JVM options which size Tomcat to the container, separated by spaces
+     */
+    public String getCatalinaOptions() {
+        StringBuilder options = new StringBuilder();
+        String containerMemory = (memoryLimit != null) ? memoryLimit : memoryRequest;
+        if (containerMemory != null) {
+            long containerBytes = toBytes(containerMemory);
+            long heapBytes = Math.min(containerBytes * heapPercentage / 100, containerBytes - toBytes(nonHeapReserve));
+            long heapInMebibytes = Math.max(MIN_HEAP_IN_MEBIBYTES, heapBytes / BYTES_PER_MEBIBYTE);
+            if (fixedHeap) {
+                // a fixed heap size avoids heap resizing pauses
+                options.append("-Xms").append(heapInMebibytes).append("m ");
+            }
+            options.append("-Xmx").append(heapInMebibytes).append('m');
+        }
+        if (garbageCollector != null) {
+            options.append(' ').append(garbageCollector.getOption());
+        }
+        if (threadStackSize != null) {
+            options.append(" -Xss").append(threadStackSize);
+        }
+        return options.toString().trim();
+    }
+
+    public String toString() {
+        return String.format("[cpu-request] %s [cpu-limit] %s [memory-request] %s [memory-limit] %s "
+                        + "[catalina-opts] %s [java-opts] %s", cpuRequest, cpuLimit, memoryRequest, memoryLimit,
+                getCatalinaOptions(), javaOptions);
+    }
+
+    private static void putQuantity(Map<String, Quantity> quantities, String resource, String amount) {
+        if (amount != null) {
+            quantities.put(resource, new Quantity(amount));
+        }
+    }
+
+    private static EnvVar createEnvironmentVariable(String name, String value) {
+        EnvVar environmentVariable = new EnvVar();
+        environmentVariable.setName(name);
+        environmentVariable.setValue(value);
+        return environmentVariable;
+    }
+
+    /**
+     * returns the number of bytes of a Kubernetes memory quantity, rounded up to a whole byte as
+     * Kubernetes does
+     *
+     * @param quantity Kubernetes memory quantity, e.g. 512Mi, 1.5Gi, 1G or 512e6
+     * @return the number of bytes of the memory quantity
+     */
+    private static long toBytes(String quantity) {
+        Matcher matcher = MEMORY_QUANTITY.matcher(quantity);
+        if (!matcher.matches()) {
+            throw new IllegalArgumentException(String.format("Invalid memory quantity: %s", quantity));
+        }
+        BigDecimal amount = new BigDecimal(matcher.group(1));
+        if (amount.signum() < 0) {
+            throw new IllegalArgumentException(String.format("Memory quantity cannot be negative: %s", quantity));
+        }
+        // binary suffixes (Ki, Mi, ...) are powers of 1024, decimal suffixes (k, M, ...) are powers of 1000
+        if (matcher.group(2) != null) {
+            int exponent = BINARY_SUFFIXES.indexOf(matcher.group(2).charAt(0)) + 1;
+            amount = amount.multiply(BigDecimal.valueOf(1024).pow(exponent));
+        } else if (matcher.group(3) != null) {
+            amount = amount.scaleByPowerOfTen(Integer.parseInt(matcher.group(3)));
+        } else if (matcher.group(4) != null) {
+            String suffix = matcher.group(4);
+            int exponent = suffix.equals("m") ? -1 : DECIMAL_SUFFIXES.indexOf(suffix.charAt(0)) + 1;
+            amount = amount.scaleByPowerOfTen(3 * exponent);
+        }
+        try {
+            return amount.setScale(0, RoundingMode.CEILING).longValueExact();
+        } catch (ArithmeticException exception) {
+            throw new IllegalArgumentException(String.format("Memory quantity is too large: %s", quantity),
+                    exception);
+        }
+    }
+}
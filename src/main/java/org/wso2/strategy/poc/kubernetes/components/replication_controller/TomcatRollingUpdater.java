@@ -0,0 +1,224 @@
+/*
+* Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.wso2.strategy.poc.kubernetes.components.replication_controller;
+
+import io.fabric8.kubernetes.api.model.Container;
+import io.fabric8.kubernetes.api.model.Pod;
+import io.fabric8.kubernetes.api.model.ReplicationController;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.wso2.strategy.poc.kubernetes.components.pod.TomcatPodHandler;
+import org.wso2.strategy.poc.kubernetes.components.pod.interfaces.ITomcatPodHandler;
+import org.wso2.strategy.poc.kubernetes.components.replication_controller.interfaces.ITomcatReplicationControllerHandler;
+import org.wso2.strategy.poc.miscellaneous.exceptions.WebArtifactHandlerException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * rolls the replica pods of a replication controller over to a new Docker image in batches bounded
+ * by a maximum surge and a maximum number of unavailable pods
+ * <p>
+ * The pod template is switched to the new image and the replication controller is scaled up by the
+ * surge, so that it starts new pods while the old ones keep serving. Old pods are deleted only as far
+ * as the ready pods exceed the desired replicas less the allowed unavailable pods, and the replication
+ * controller replaces each deleted pod with a new one. Once no old pod remains, the replication
+ * controller is scaled back to the desired replicas. If the new pods do not become ready in time, the
+ * pod template is switched back to the previous image and the new pods which are not ready are deleted,
+ * so that the replication controller replaces them with pods of the previous image. The new pods which
+ * are already ready keep serving next to the old ones.
+ */
+public class TomcatRollingUpdater {
+    private final ITomcatReplicationControllerHandler replicationControllerHandler;
+    private final ITomcatPodHandler podHandler;
+    private final int maxSurge;
+    private final int maxUnavailable;
+    private final long timeoutInMilliseconds;
+
+    private static final long POLL_INTERVAL_IN_MILLISECONDS = 2000;
+    private static final Logger LOG = LogManager.getLogger(TomcatRollingUpdater.class);
+
+    /**
+     * @param replicationControllerHandler replication controller handler
+     * @param podHandler                   pod handler
+     * @param maxSurge                     maximum number of pods created above the desired replicas
+     * @param maxUnavailable               maximum number of the desired replicas which may be unavailable
+     * @param timeoutInMilliseconds        maximum time to wait for the new pods to become ready
+     */
+    public TomcatRollingUpdater(ITomcatReplicationControllerHandler replicationControllerHandler,
+            ITomcatPodHandler podHandler, int maxSurge, int maxUnavailable, long timeoutInMilliseconds) {
+        if ((maxSurge < 0) || (maxUnavailable < 0) || ((maxSurge == 0) && (maxUnavailable == 0))) {
+            throw new IllegalArgumentException("Maximum surge and maximum unavailable pods should not be negative "
+                    + "and should not both be zero.");
+        }
+        this.replicationControllerHandler = replicationControllerHandler;
+        this.podHandler = podHandler;
+        this.maxSurge = maxSurge;
+        this.maxUnavailable = maxUnavailable;
+        this.timeoutInMilliseconds = timeoutInMilliseconds;
+    }
+
+    /**
+     * rolls the replica pods of the specified replication controller over to the specified Docker image
+     *
+     * @param controllerName name of the replication controller
+     * @param dockerImage    new Docker image
+     * @throws WebArtifactHandlerException if the rolling update fails or times out
+     */
+    public void rollOver(String controllerName, String dockerImage) throws WebArtifactHandlerException {
+        int desiredReplicas = replicationControllerHandler.getNoOfReplicas(controllerName);
+        String previousImage = getTemplateImage(controllerName);
+        replicationControllerHandler.updateImage(controllerName, dockerImage);
+        if (desiredReplicas == 0) {
+            return;
+        }
+        long startTime = System.currentTimeMillis();
+        long deadline = startTime + timeoutInMilliseconds;
+        int minAvailable = Math.max(0, desiredReplicas - maxUnavailable);
+        if (LOG.isDebugEnabled()) {
+            LOG.debug(String.format("Rolling over [rc-name] %s to [docker-image] %s [replicas] %d [max-surge] %d "
+                    + "[max-unavailable] %d.", controllerName, dockerImage, desiredReplicas, maxSurge, maxUnavailable));
+        }
+        replicationControllerHandler.updateNoOfReplicas(controllerName, desiredReplicas + maxSurge);
+        WebArtifactHandlerException failure = null;
+        try {
+            while (true) {
+                List<Pod> oldPods = new ArrayList<>();
+                List<Pod> oldUnreadyPods = new ArrayList<>();
+                List<String> newUnreadyPods = new ArrayList<>();
+                int readyPods = 0;
+                for (Pod pod : getReplicaPods(controllerName)) {
+                    if (isTerminating(pod)) {
+                        continue;
+                    }
+                    boolean ready = TomcatPodHandler.isReady(pod);
+                    if (ready) {
+                        readyPods++;
+                    }
+                    if (!runsImage(pod, dockerImage)) {
+                        if (ready) {
+                            oldPods.add(pod);
+                        } else {
+                            oldUnreadyPods.add(pod);
+                        }
+                    } else if (!ready) {
+                        newUnreadyPods.add(pod.getMetadata().getName());
+                    }
+                }
+                if (oldPods.isEmpty() && oldUnreadyPods.isEmpty()) {
+                    break;
+                }
+                // old pods which do not serve can be replaced without reducing the availability
+                oldUnreadyPods.addAll(oldPods);
+                int deletablePods = Math.min(oldUnreadyPods.size(),
+                        (oldUnreadyPods.size() - oldPods.size()) + Math.max(0, readyPods - minAvailable));
+                List<String> deletedPods = new ArrayList<>();
+                for (Pod pod : oldUnreadyPods.subList(0, deletablePods)) {
+                    deletedPods.add(pod.getMetadata().getName());
+                }
+                // pods which could not be deleted are still old pods, hence are retried in the next round
+                podHandler.deletePods(deletedPods);
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug(String.format("Rolling over [rc-name] %s [ready-pods] %d [old-pods] %d "
+                            + "[deleted-pods] %d.", controllerName, readyPods, oldUnreadyPods.size(), deletablePods));
+                }
+                if (System.currentTimeMillis() > deadline) {
+                    String message = String.format("Timed out after %d ms rolling over the replication controller"
+                            + "[rc-identifier]: %s, reverting to [docker-image] %s.", timeoutInMilliseconds,
+                            controllerName, previousImage);
+                    LOG.error(message);
+                    if ((previousImage != null) && (!previousImage.equals(dockerImage))) {
+                        replicationControllerHandler.updateImage(controllerName, previousImage);
+                        podHandler.deletePods(newUnreadyPods);
+                    }
+                    throw new WebArtifactHandlerException(message);
+                }
+                Thread.sleep(POLL_INTERVAL_IN_MILLISECONDS);
+            }
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            String message = String.format("Interrupted while rolling over the replication controller"
+                    + "[rc-identifier]: %s.", controllerName);
+            LOG.error(message, exception);
+            failure = new WebArtifactHandlerException(message, exception);
+        } catch (WebArtifactHandlerException exception) {
+            failure = exception;
+        }
+        try {
+            replicationControllerHandler.updateNoOfReplicas(controllerName, desiredReplicas);
+        } catch (WebArtifactHandlerException exception) {
+            if (failure == null) {
+                throw exception;
+            }
+            // the failure of the rolling update itself is the one reported, the scale down failure is attached
+            LOG.error(String.format("Could not scale [rc-name] %s back to [replicas] %d.", controllerName,
+                    desiredReplicas), exception);
+            failure.addSuppressed(exception);
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        if (LOG.isDebugEnabled()) {
+            LOG.debug(String.format("Rolled over [rc-name] %s to [docker-image] %s in %d ms.", controllerName,
+                    dockerImage, System.currentTimeMillis() - startTime));
+        }
+    }
+
+    /**
+     * returns the Docker image of the pod template of the specified replication controller
+     *
+     * @param controllerName name of the replication controller
+     * @return the Docker image of the pod template, null if the replication controller has no container
+     * @throws WebArtifactHandlerException
+     */
+    private String getTemplateImage(String controllerName) throws WebArtifactHandlerException {
+        ReplicationController replicationController = replicationControllerHandler
+                .getReplicationController(controllerName);
+        if ((replicationController == null) || (replicationController.getSpec().getTemplate() == null)) {
+            return null;
+        }
+        List<Container> containers = replicationController.getSpec().getTemplate().getSpec().getContainers();
+        return ((containers == null) || (containers.isEmpty())) ? null : containers.get(0).getImage();
+    }
+
+    private List<Pod> getReplicaPods(String controllerName) throws WebArtifactHandlerException {
+        ReplicationController replicationController = replicationControllerHandler
+                .getReplicationController(controllerName);
+        if (replicationController == null) {
+            String message = String.format("Could not find the replication controller[rc-identifier]: %s.",
+                    controllerName);
+            LOG.error(message);
+            throw new WebArtifactHandlerException(message);
+        }
+        return podHandler.getReplicaPods(replicationController);
+    }
+
+    private static boolean runsImage(Pod pod, String dockerImage) {
+        if ((pod.getSpec() == null) || (pod.getSpec().getContainers() == null)) {
+            return false;
+        }
+        for (Container container : pod.getSpec().getContainers()) {
+            if (dockerImage.equals(container.getImage())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isTerminating(Pod pod) {
+        return (pod.getMetadata() != null) && (pod.getMetadata().getDeletionTimestamp() != null);
+    }
+}
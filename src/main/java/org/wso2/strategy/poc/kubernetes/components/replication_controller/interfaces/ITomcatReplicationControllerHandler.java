@@ -16,6 +16,8 @@
 package org.wso2.strategy.poc.kubernetes.components.replication_controller.interfaces;
 
 import io.fabric8.kubernetes.api.model.ReplicationController;
+import org.wso2.strategy.poc.kubernetes.components.replication_controller.TomcatProbeConfiguration;
+import org.wso2.strategy.poc.kubernetes.components.replication_controller.TomcatResourceProfile;
 import org.wso2.strategy.poc.miscellaneous.exceptions.WebArtifactHandlerException;
 
 /**
@@ -29,18 +31,39 @@ public interface ITomcatReplicationControllerHandler {
      * @param podLabel              value for pod label
      * @param tomcatDockerImageName Apache Tomcat based Docker Image name
      * @param numberOfReplicas      number of pod replicas to be created
+     * @return true if the replication controller was created, false if an existing one was kept
      * @throws WebArtifactHandlerException
      */
-    void createReplicationController(String controllerName, String podLabel, String tomcatDockerImageName,
+    boolean createReplicationController(String controllerName, String podLabel, String tomcatDockerImageName,
             int numberOfReplicas) throws WebArtifactHandlerException;
 
+    /**
+     * creates a replication controller whose Tomcat container is probed for readiness and liveness,
+     * and is given the compute resources and JVM options of a resource profile
+     *
+     * @param controllerName        name of the replication controller
+     * @param podLabel              value for pod label
+     * @param tomcatDockerImageName Apache Tomcat based Docker Image name
+     * @param numberOfReplicas      number of pod replicas to be created
+     * @param probeConfiguration    readiness and liveness probes of the Tomcat container, null if none
+     * @param resourceProfile       compute resources and JVM options of the Tomcat container, null if none
+     * @return true if the replication controller was created, false if an existing one was kept
+     * @throws WebArtifactHandlerException
+     */
+    boolean createReplicationController(String controllerName, String podLabel, String tomcatDockerImageName,
+            int numberOfReplicas, TomcatProbeConfiguration probeConfiguration, TomcatResourceProfile resourceProfile)
+            throws WebArtifactHandlerException;
+
     /**
      * returns a replication controller corresponding to the controller name
      *
      * @param controllerName name of the replication controller
-     * @return a replication controller corresponding to the controller name
+     * @return a replication controller corresponding to the controller name, null if no such replication
+     * controller exists
+     * @throws WebArtifactHandlerException if the replication controller cannot be read, which callers should
+     *                                     not take as its absence
      */
-    ReplicationController getReplicationController(String controllerName);
+    ReplicationController getReplicationController(String controllerName) throws WebArtifactHandlerException;
 
     /**
      * returns the number of replica pods that has been already deployed
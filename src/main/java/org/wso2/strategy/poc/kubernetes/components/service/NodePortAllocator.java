@@ -0,0 +1,299 @@
+/*
+* Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.wso2.strategy.poc.kubernetes.components.service;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * a bitmap allocator of the NodePorts within a port range, which persists the allocated ports to an
+ * external file
+ * <p>
+ * Each port of the range is a bit of an atomic bitmap, which is set and cleared with compare-and-set,
+ * so that ports are allocated and released concurrently without locking. The search for a free port
+ * starts after the most recently allocated port, so that a released port is reused only once the rest
+ * of the range has been allocated. The allocated ports are written and synced to a temporary file which then
+ * atomically replaces the allocation file, so that a crash never leaves a partially written file.
+ * As the allocation file may still lag behind the cluster, the allocator should be reconciled against
+ * the NodePorts of the existing services at startup.
+ */
+public class NodePortAllocator {
+    private final int lowerLimit;
+    private final int upperLimit;
+    private final AtomicLongArray bitmap;
+    private final AtomicInteger nextOffset = new AtomicInteger();
+    private final Path allocationFile;
+    private final Object persistenceLock = new Object();
+
+    private static final int BITS_PER_WORD = 64;
+    private static final Logger LOG = LogManager.getLogger(NodePortAllocator.class);
+
+    /**
+     * @param lowerLimit         lowest NodePort of the range
+     * @param upperLimit         highest NodePort of the range
+     * @param allocationFileName name of the file to which the allocated ports are persisted
+     */
+    public NodePortAllocator(int lowerLimit, int upperLimit, String allocationFileName) {
+        if (upperLimit < lowerLimit) {
+            throw new IllegalArgumentException("Upper NodePort limit should not be lower than the lower limit.");
+        }
+        this.lowerLimit = lowerLimit;
+        this.upperLimit = upperLimit;
+        bitmap = new AtomicLongArray((getRangeSize() + BITS_PER_WORD - 1) / BITS_PER_WORD);
+        allocationFile = Paths.get(allocationFileName);
+        load();
+    }
+
+    /**
+     * allocates a free NodePort
+     *
+     * @return the NodePort allocated, or -1 if all NodePorts of the range are allocated
+     */
+    public int allocate() {
+        int rangeSize = getRangeSize();
+        int startOffset = Math.abs(nextOffset.get() % rangeSize);
+        for (int count = 0; count < rangeSize; count++) {
+            int offset = (startOffset + count) % rangeSize;
+            if (setBit(offset)) {
+                nextOffset.set(offset + 1);
+                persist();
+                return lowerLimit + offset;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * marks the specified NodePort as allocated, e.g. as it is used by a service not created by this allocator
+     *
+     * @param nodePort the NodePort
+     * @return true if the NodePort was free, else false
+     */
+    public boolean reserve(int nodePort) {
+        if (!isInRange(nodePort)) {
+            return false;
+        }
+        boolean reserved = setBit(nodePort - lowerLimit);
+        if (reserved) {
+            persist();
+        }
+        return reserved;
+    }
+
+    /**
+     * releases the specified NodePort for reuse
+     *
+     * @param nodePort the NodePort
+     * @return true if the NodePort was allocated, else false
+     */
+    public boolean release(int nodePort) {
+        if (!isInRange(nodePort)) {
+            return false;
+        }
+        boolean released = clearBit(nodePort - lowerLimit);
+        if (released) {
+            persist();
+        }
+        return released;
+    }
+
+    /**
+     * checks whether the specified NodePort is allocated
+     *
+     * @param nodePort the NodePort
+     * @return true if the NodePort is allocated, else false
+     */
+    public boolean isAllocated(int nodePort) {
+        if (!isInRange(nodePort)) {
+            return false;
+        }
+        int offset = nodePort - lowerLimit;
+        return (bitmap.get(offset / BITS_PER_WORD) & (1L << (offset % BITS_PER_WORD))) != 0;
+    }
+
+    /**
+     * replaces the allocated NodePorts by the NodePorts which the existing services actually use, which
+     * frees the ports of services deleted, or never created, while the allocation file was not updated
+     * <p>
+     * The reconciliation is not excluded from {@link #allocate()}, {@link #reserve(int)} and
+     * {@link #release(int)}, which take no lock, so a port allocated concurrently would be freed again.
+     * Hence it should only be called before the allocator is shared, as {@code TomcatServiceHandler}
+     * does from its constructor.
+     *
+     * @param usedNodePorts NodePorts used by the existing services
+     */
+    public void reconcile(Collection<Integer> usedNodePorts) {
+        // the new bitmap is built apart, so that each word goes straight to its new value, never cleared first
+        long[] words = new long[bitmap.length()];
+        int inUse = 0;
+        for (Integer nodePort : usedNodePorts) {
+            if ((nodePort != null) && isInRange(nodePort)) {
+                int offset = nodePort - lowerLimit;
+                long mask = 1L << (offset % BITS_PER_WORD);
+                if ((words[offset / BITS_PER_WORD] & mask) == 0) {
+                    words[offset / BITS_PER_WORD] |= mask;
+                    inUse++;
+                }
+            }
+        }
+        int persisted;
+        synchronized (persistenceLock) {
+            persisted = getAllocatedPorts().size();
+            for (int index = 0; index < words.length; index++) {
+                bitmap.set(index, words[index]);
+            }
+            persist();
+        }
+        LOG.info(String.format("Reconciled NodePort allocations [persisted] %d [in-use] %d [free] %d", persisted,
+                inUse, getRangeSize() - inUse));
+    }
+
+    /**
+     * returns the allocated NodePorts in ascending order
+     *
+     * @return the allocated NodePorts in ascending order
+     */
+    public List<Integer> getAllocatedPorts() {
+        List<Integer> allocatedPorts = new ArrayList<>();
+        for (int index = 0; index < bitmap.length(); index++) {
+            long word = bitmap.get(index);
+            while (word != 0) {
+                int bit = Long.numberOfTrailingZeros(word);
+                allocatedPorts.add(lowerLimit + (index * BITS_PER_WORD) + bit);
+                word &= (word - 1);
+            }
+        }
+        return allocatedPorts;
+    }
+
+    private int getRangeSize() {
+        return upperLimit - lowerLimit + 1;
+    }
+
+    private boolean isInRange(int nodePort) {
+        return (nodePort >= lowerLimit) && (nodePort <= upperLimit);
+    }
+
+    private boolean setBit(int offset) {
+        int index = offset / BITS_PER_WORD;
+        long mask = 1L << (offset % BITS_PER_WORD);
+        while (true) {
+            long word = bitmap.get(index);
+            if ((word & mask) != 0) {
+                return false;
+            }
+            if (bitmap.compareAndSet(index, word, word | mask)) {
+                return true;
+            }
+        }
+    }
+
+    private boolean clearBit(int offset) {
+        int index = offset / BITS_PER_WORD;
+        long mask = 1L << (offset % BITS_PER_WORD);
+        while (true) {
+            long word = bitmap.get(index);
+            if ((word & mask) == 0) {
+                return false;
+            }
+            if (bitmap.compareAndSet(index, word, word & ~mask)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * reads in the allocated NodePorts, one per line, ignoring any value which is not a NodePort of the range
+     */
+    private void load() {
+        if (!Files.exists(allocationFile)) {
+            return;
+        }
+        try {
+            for (String line : Files.readAllLines(allocationFile, StandardCharsets.UTF_8)) {
+                try {
+                    int nodePort = Integer.parseInt(line.trim());
+                    if (isInRange(nodePort)) {
+                        setBit(nodePort - lowerLimit);
+                    }
+                } catch (NumberFormatException exception) {
+                    LOG.warn(String.format("Ignoring invalid NodePort allocation [file] %s: %s", allocationFile,
+                            line));
+                }
+            }
+        } catch (IOException exception) {
+            LOG.error(String.format("Could not read the NodePort allocations [file] %s.", allocationFile), exception);
+        }
+    }
+
+    /**
+     * writes the allocated NodePorts to a temporary file which then atomically replaces the allocation file
+     */
+    private void persist() {
+        synchronized (persistenceLock) {
+            // the snapshot is taken under the lock, hence a later snapshot is never overwritten by an earlier one
+            List<String> output = new ArrayList<>();
+            for (Integer nodePort : getAllocatedPorts()) {
+                output.add(String.valueOf(nodePort));
+            }
+            Path temporaryFile = allocationFile.resolveSibling(allocationFile.getFileName() + ".tmp");
+            try {
+                // the temporary file is synced before the move, else a crash may leave the renamed file empty
+                try (FileChannel channel = FileChannel.open(temporaryFile, StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                    ByteBuffer buffer = ByteBuffer.wrap(toText(output).getBytes(StandardCharsets.UTF_8));
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer);
+                    }
+                    channel.force(true);
+                }
+                try {
+                    Files.move(temporaryFile, allocationFile, StandardCopyOption.REPLACE_EXISTING,
+                            StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException exception) {
+                    Files.move(temporaryFile, allocationFile, StandardCopyOption.REPLACE_EXISTING);
+                }
+            } catch (IOException exception) {
+                LOG.error(String.format("Could not persist the NodePort allocations [file] %s.", allocationFile),
+                        exception);
+            }
+        }
+    }
+
+    private static String toText(List<String> lines) {
+        StringBuilder text = new StringBuilder();
+        for (String line : lines) {
+            text.append(line).append(System.lineSeparator());
+        }
+        return text.toString();
+    }
+}
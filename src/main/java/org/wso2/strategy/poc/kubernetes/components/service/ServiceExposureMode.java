@@ -0,0 +1,27 @@
+/*
+* Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.wso2.strategy.poc.kubernetes.components.service;
+
+/**
+ * the ways in which the Kubernetes service of a web artifact is exposed outside the cluster
+ */
+public enum ServiceExposureMode {
+    // a NodePort service per web artifact, reached on a port of its own
+    NODE_PORT,
+    // a ClusterIP service per web artifact, reached through the shared ingress front by its path,
+    // which requires an ingress controller already running in the cluster
+    INGRESS
+}
@@ -15,39 +15,82 @@
 */
 package org.wso2.strategy.poc.kubernetes.components.service;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import io.fabric8.kubernetes.api.KubernetesHelper;
+import io.fabric8.kubernetes.api.model.IntOrString;
+import io.fabric8.kubernetes.api.model.ObjectMeta;
 import io.fabric8.kubernetes.api.model.Service;
+import io.fabric8.kubernetes.api.model.ServicePort;
+import io.fabric8.kubernetes.api.model.ServiceSpec;
+import org.apache.http.HttpStatus;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.apache.stratos.kubernetes.client.KubernetesApiClient;
-import org.apache.stratos.kubernetes.client.KubernetesConstants;
-import org.apache.stratos.kubernetes.client.interfaces.KubernetesAPIClientInterface;
+import org.wso2.strategy.poc.kubernetes.cache.KubernetesResourceCache;
 import org.wso2.strategy.poc.kubernetes.components.service.interfaces.ITomcatServiceHandler;
 import org.wso2.strategy.poc.kubernetes.constants.KubernetesConstantsExtended;
+import org.wso2.strategy.poc.kubernetes.rest.KubernetesApiException;
+import org.wso2.strategy.poc.kubernetes.rest.KubernetesRestClient;
+import org.wso2.strategy.poc.kubernetes.rest.KubernetesTransport;
 import org.wso2.strategy.poc.miscellaneous.exceptions.WebArtifactHandlerException;
-import org.wso2.strategy.poc.miscellaneous.io.FileInputSingletonDataThread;
-import org.wso2.strategy.poc.miscellaneous.io.FileOutputThread;
 
+import java.io.IOException;
 import java.net.InetAddress;
+import java.net.UnknownHostException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 public class TomcatServiceHandler implements ITomcatServiceHandler {
-    // holds the next available, valid port allocation for NodePort
-    private static int nodePortValue;
-    private final KubernetesAPIClientInterface client;
+    private final KubernetesRestClient restClient;
+    private final KubernetesRestClient ingressClient;
+    private final NodePortAllocator nodePortAllocator;
+    private final KubernetesResourceCache<Service> serviceCache;
+    // service id -> access endpoint resolved from the service
+    private final ConcurrentMap<String, ServiceEndpoint> endpoints = new ConcurrentHashMap<>();
+    // host name of this node, resolved once as the lookup may stall on DNS
+    private volatile String nodeHostName;
+    // base URL of the shared ingress front, null if it is served on this node
+    private volatile String ingressBaseURL;
+
+    private static final String SERVICE_RESOURCE = "services";
+    private static final String INGRESS_RESOURCE = "ingresses";
+    private static final int MAX_NODE_PORT_COLLISIONS = 3;
+    private static final String NODE_PORT_COLLISION_MESSAGE = "already allocated";
+    private static final long ENDPOINT_TTL_IN_MILLISECONDS = 30000;
     private static final Logger LOG = LogManager.getLogger(TomcatServiceHandler.class);
 
     public TomcatServiceHandler(String kubernetesURI) {
-        client = new KubernetesApiClient(kubernetesURI);
-        setInitNodePortValue();
+        this(KubernetesTransport.getInstance(kubernetesURI));
+    }
+
+    public TomcatServiceHandler(KubernetesTransport transport) {
+        restClient = new KubernetesRestClient(transport);
+        ingressClient = new KubernetesRestClient(transport, KubernetesRestClient.EXTENSIONS_API_PATH);
+        nodePortAllocator = new NodePortAllocator(KubernetesConstantsExtended.NODE_PORT_LOWER_LIMIT,
+                KubernetesConstantsExtended.NODE_PORT_UPPER_LIMIT,
+                KubernetesConstantsExtended.NODE_PORT_ALLOCATION_FILENAME);
+        reconcileNodePorts();
+        serviceCache = new KubernetesResourceCache<>(restClient, SERVICE_RESOURCE, Service.class);
+        serviceCache.start();
     }
 
-    public void createService(String serviceId, String serviceName) throws WebArtifactHandlerException {
+    public boolean createService(String serviceId, String serviceName) throws WebArtifactHandlerException {
+        return createService(serviceId, serviceName, ServiceExposureMode.NODE_PORT, null);
+    }
+
+    public boolean createService(String serviceId, String serviceName, ServiceExposureMode exposureMode,
+            String contextPath) throws WebArtifactHandlerException {
+        if ((exposureMode == ServiceExposureMode.INGRESS) && (contextPath == null)) {
+            throw new WebArtifactHandlerException("Context path cannot be null for a service exposed by ingress.");
+        }
+        boolean created = false;
         if (serviceId != null) {
             try {
-                Service service = client.getService(serviceId);
-                FileOutputThread fileOutput;
+                Service service = readService(serviceId);
                 if (service == null) {
                     if (LOG.isDebugEnabled()) {
                         String message = String
@@ -55,29 +98,26 @@ public class TomcatServiceHandler implements ITomcatServiceHandler {
                                         serviceId, serviceName);
                         LOG.debug(message);
                     }
-                    client.createService(serviceId, serviceName, nodePortValue, KubernetesConstants.NODE_PORT,
-                            KubernetesConstantsExtended.SERVICE_PORT_NAME,
-                            KubernetesConstantsExtended.TOMCAT_DOCKER_CONTAINER_EXPOSED_PORT,
-                            KubernetesConstantsExtended.SESSION_AFFINITY_CONFIG);
+                    if (exposureMode == ServiceExposureMode.INGRESS) {
+                        // ClusterIP services take no NodePort, they are reached through the shared ingress front
+                        restClient.create(SERVICE_RESOURCE,
+                                buildService(serviceId, serviceName, ServiceExposureMode.INGRESS, null));
+                    } else {
+                        createNodePortService(serviceId, serviceName);
+                    }
+                    created = true;
+                    endpoints.remove(serviceId);
+                    serviceCache.refreshQuietly(serviceId);
                     if (LOG.isDebugEnabled()) {
                         String message = String
-                                .format("Created Kubernetes service" + " [service-ID] %s [service-name] %s ", serviceId,
-                                        serviceName);
+                                .format("Created Kubernetes service" + " [service-ID] %s [service-name] %s "
+                                        + "[exposure-mode] %s", serviceId, serviceName, exposureMode);
                         LOG.debug(message);
                     }
-                    // changing the NodePort service type port value to the next available port value
-                    if (nodePortValue < (KubernetesConstantsExtended.NODE_PORT_UPPER_LIMIT)) {
-                        nodePortValue++;
-                    } else {
-                        nodePortValue = KubernetesConstantsExtended.NODE_PORT_LOWER_LIMIT + 1;
-                    }
-
-                    // write the next possible port allocation value to a text file
-                    List<String> output = new ArrayList<>();
-                    output.add("" + nodePortValue);
-                    fileOutput = new FileOutputThread(KubernetesConstantsExtended.NODE_PORT_ALLOCATION_FILENAME,
-                            output);
-                    fileOutput.run();
+                }
+                if (exposureMode == ServiceExposureMode.INGRESS) {
+                    // the ingress is created apart from the service, so that a failed creation is completed
+                    createIngress(serviceId, serviceName, contextPath);
                 }
             } catch (Exception exception) {
                 String message = String.format("Could not create the service[service-identifier]: " + "%s", serviceId);
@@ -86,13 +126,14 @@ public class TomcatServiceHandler implements ITomcatServiceHandler {
             }
 
         }
+        return created;
     }
 
     public Service getService(String serviceId) throws WebArtifactHandlerException {
         Service service;
         if (serviceId != null) {
             try {
-                service = client.getService(serviceId);
+                service = readService(serviceId);
             } catch (Exception exception) {
                 String message = String.format("Could not create the service[service-identifier]: " + "%s", serviceId);
                 LOG.error(message, exception);
@@ -108,9 +149,9 @@ public class TomcatServiceHandler implements ITomcatServiceHandler {
     public String getClusterIP(String serviceId, String appName) throws WebArtifactHandlerException {
         if (serviceId != null) {
             try {
-                Service service = client.getService(serviceId);
-                if (service != null) {
-                    return KubernetesHelper.getServiceURL(service) + "/" + appName;
+                ServiceEndpoint endpoint = resolveEndpoint(serviceId);
+                if (endpoint != null) {
+                    return endpoint.serviceURL + "/" + appName;
                 } else {
                     return "ClusterIP not available.";
                 }
@@ -128,18 +169,10 @@ public class TomcatServiceHandler implements ITomcatServiceHandler {
 
     public String getNodePortIP(String serviceId, String appName) throws WebArtifactHandlerException {
         if (serviceId != null) {
-            int nodePort;
             try {
-                Service service = client.getService(serviceId);
-                final int portIndex = 0;
-                if (service != null) {
-                    nodePort = service.getSpec().getPorts().get(portIndex).getNodePort();
-                } else {
-                    nodePort = -1;
-                }
-                if (nodePort != -1) {
-                    return String
-                            .format("http://%s:%d/%s", InetAddress.getLocalHost().getHostName(), nodePort, appName);
+                ServiceEndpoint endpoint = resolveEndpoint(serviceId);
+                if ((endpoint != null) && (endpoint.nodePort != -1)) {
+                    return String.format("http://%s:%d/%s", getNodeHostName(), endpoint.nodePort, appName);
                 } else {
                     return "NodePortIP not available";
                 }
@@ -154,17 +187,52 @@ public class TomcatServiceHandler implements ITomcatServiceHandler {
         }
     }
 
+    public String getIngressURL(String serviceId) throws WebArtifactHandlerException {
+        if (serviceId != null) {
+            try {
+                ServiceEndpoint endpoint = resolveEndpoint(serviceId);
+                if ((endpoint != null) && (endpoint.exposedByIngress)) {
+                    String baseURL = (ingressBaseURL != null) ? ingressBaseURL : ("http://" + getNodeHostName());
+                    return String.format("%s/%s/", baseURL, serviceId);
+                } else {
+                    return null;
+                }
+            } catch (Exception exception) {
+                String message = String
+                        .format("Could not find the service[service-identifier] " + "ingress URL: %s", serviceId);
+                LOG.error(message, exception);
+                throw new WebArtifactHandlerException(message, exception);
+            }
+        } else {
+            String message = "Service id cannot be null.";
+            throw new WebArtifactHandlerException(message);
+        }
+    }
+
+    public void setIngressBaseURL(String ingressBaseURL) {
+        this.ingressBaseURL = ((ingressBaseURL != null) && ingressBaseURL.endsWith("/")) ? ingressBaseURL
+                .substring(0, ingressBaseURL.length() - 1) : ingressBaseURL;
+    }
+
     public Service deleteService(String serviceId) throws WebArtifactHandlerException {
         if (serviceId != null) {
             Service service;
             try {
-                service = client.getService(serviceId);
+                service = readService(serviceId);
                 if (service != null) {
                     if (LOG.isDebugEnabled()) {
                         String message = String.format("Deleting Kubernetes service" + " [service-ID] %s", serviceId);
                         LOG.debug(message);
                     }
-                    client.deleteService(serviceId);
+                    if (isExposedByIngress(service)) {
+                        ingressClient.delete(INGRESS_RESOURCE + "/" + KubernetesRestClient.encode(serviceId));
+                    }
+                    restClient.delete(getPath(serviceId));
+                    for (int nodePort : getNodePorts(service)) {
+                        nodePortAllocator.release(nodePort);
+                    }
+                    endpoints.remove(serviceId);
+                    serviceCache.refreshQuietly(serviceId);
                     if (LOG.isDebugEnabled()) {
                         String message = String.format("Deleted Kubernetes service" + " [service-ID] %s", serviceId);
                         LOG.debug(message);
@@ -183,18 +251,275 @@ public class TomcatServiceHandler implements ITomcatServiceHandler {
     }
 
     /**
-     * reads in the next available NodePort service type, port allocation value and assigns
-     * the value to nodePortValue-TomcatServiceHandler class member variable
+     * returns the access endpoint of the specified service from local memory, re-resolving it only once
+     * the watch-backed service cache holds a new version of the service, or, while the cache cannot be
+     * synchronized, once the endpoint has outlived its TTL
+     *
+     * @param serviceId id of the service
+     * @return the access endpoint of the service, null if no such service exists
+     * @throws IOException
      */
-    private void setInitNodePortValue() {
-        FileInputSingletonDataThread fileInput = new FileInputSingletonDataThread(
-                KubernetesConstantsExtended.NODE_PORT_ALLOCATION_FILENAME);
-        fileInput.run();
-        List<String> input = fileInput.getFileContent();
-        if (input.size() > 0) {
-            nodePortValue = Integer.parseInt(input.get(0));
-        } else {
-            nodePortValue = KubernetesConstantsExtended.NODE_PORT_LOWER_LIMIT + 1;
+    private ServiceEndpoint resolveEndpoint(String serviceId) throws IOException {
+        ServiceEndpoint endpoint = endpoints.get(serviceId);
+        // the sync state is checked first, so that an unsynced cache never blocks a lookup served by the TTL
+        if (!serviceCache.isSynced()) {
+            return resolveUnsyncedEndpoint(serviceId, endpoint);
+        }
+        String resourceVersion;
+        try {
+            resourceVersion = serviceCache.getResourceVersion(serviceId);
+        } catch (WebArtifactHandlerException exception) {
+            return resolveUnsyncedEndpoint(serviceId, endpoint);
+        }
+        if (resourceVersion == null) {
+            endpoints.remove(serviceId);
+            return null;
+        }
+        if ((endpoint != null) && (resourceVersion.equals(endpoint.resourceVersion))) {
+            return endpoint;
+        }
+        Service service;
+        try {
+            service = serviceCache.get(serviceId);
+        } catch (WebArtifactHandlerException exception) {
+            service = readService(serviceId);
+        }
+        return cacheEndpoint(serviceId, service);
+    }
+
+    private ServiceEndpoint resolveUnsyncedEndpoint(String serviceId, ServiceEndpoint endpoint) throws IOException {
+        if ((endpoint != null) && ((System.currentTimeMillis() - endpoint.resolvedTime)
+                < ENDPOINT_TTL_IN_MILLISECONDS)) {
+            return endpoint;
+        }
+        return cacheEndpoint(serviceId, readService(serviceId));
+    }
+
+    private ServiceEndpoint cacheEndpoint(String serviceId, Service service) {
+        if (service == null) {
+            endpoints.remove(serviceId);
+            return null;
+        }
+        List<Integer> nodePorts = getNodePorts(service);
+        ServiceEndpoint endpoint = new ServiceEndpoint(service.getMetadata().getResourceVersion(),
+                KubernetesHelper.getServiceURL(service), nodePorts.isEmpty() ? -1 : nodePorts.get(0),
+                isExposedByIngress(service));
+        endpoints.put(serviceId, endpoint);
+        return endpoint;
+    }
+
+    /**
+     * checks the exposure mode label of the specified service, as a ClusterIP service alone does not
+     * tell whether an ingress of this handler routes to it
+     *
+     * @param service the service
+     * @return true if the service was created to be exposed by ingress, else false
+     */
+    private static boolean isExposedByIngress(Service service) {
+        Map<String, String> labels = (service.getMetadata() != null) ? service.getMetadata().getLabels() : null;
+        return (labels != null) && ServiceExposureMode.INGRESS.name()
+                .equals(labels.get(KubernetesConstantsExtended.LABEL_EXPOSURE_MODE));
+    }
+
+    private String getNodeHostName() throws UnknownHostException {
+        if (nodeHostName == null) {
+            nodeHostName = InetAddress.getLocalHost().getHostName();
+        }
+        return nodeHostName;
+    }
+
+    private Service readService(String serviceId) throws IOException {
+        return restClient.get(getPath(serviceId), Service.class);
+    }
+
+    private static String getPath(String serviceId) throws IOException {
+        return SERVICE_RESOURCE + "/" + KubernetesRestClient.encode(serviceId);
+    }
+
+    /**
+     * builds a service which exposes the Tomcat container port of the pods labeled by the service name,
+     * a NodePort service if a NodePort is specified, else a ClusterIP service
+     * <p>
+     * The exposure mode is recorded as a label of the service, but not of its selector, so that the
+     * deletion and the endpoint lookups know whether an ingress belongs to the service.
+     *
+     * @param serviceId    id of the service
+     * @param serviceName  service name to be used by the label name
+     * @param exposureMode the way in which the service is exposed outside the cluster
+     * @param nodePort     NodePort to be allocated to the service, null for a ClusterIP service
+     * @return the service entity
+     */
+    private static Service buildService(String serviceId, String serviceName, ServiceExposureMode exposureMode,
+            Integer nodePort) {
+        Service service = new Service();
+        service.setApiVersion(Service.ApiVersion.V_1);
+        service.setKind(KubernetesConstantsExtended.SERVICE_COMPONENT_KIND);
+
+        Map<String, String> labels = new HashMap<>();
+        labels.put(KubernetesConstantsExtended.LABEL_NAME, serviceName);
+
+        Map<String, String> serviceLabels = new HashMap<>(labels);
+        serviceLabels.put(KubernetesConstantsExtended.LABEL_EXPOSURE_MODE, exposureMode.name());
+
+        ObjectMeta metadata = new ObjectMeta();
+        metadata.setName(serviceId);
+        metadata.setLabels(serviceLabels);
+        service.setMetadata(metadata);
+
+        IntOrString targetPort = new IntOrString();
+        targetPort.setIntVal(KubernetesConstantsExtended.TOMCAT_DOCKER_CONTAINER_EXPOSED_PORT);
+
+        ServicePort port = new ServicePort();
+        port.setName(KubernetesConstantsExtended.SERVICE_PORT_NAME);
+        port.setPort(KubernetesConstantsExtended.TOMCAT_DOCKER_CONTAINER_EXPOSED_PORT);
+        port.setTargetPort(targetPort);
+        port.setNodePort(nodePort);
+        port.setProtocol(KubernetesConstantsExtended.SERVICE_PORT_PROTOCOL);
+        List<ServicePort> ports = new ArrayList<>();
+        ports.add(port);
+
+        ServiceSpec serviceSpec = new ServiceSpec();
+        serviceSpec.setType((nodePort != null) ? KubernetesConstantsExtended.NODE_PORT_SERVICE_TYPE
+                : KubernetesConstantsExtended.CLUSTER_IP_SERVICE_TYPE);
+        serviceSpec.setPorts(ports);
+        serviceSpec.setSelector(labels);
+        serviceSpec.setSessionAffinity(KubernetesConstantsExtended.SESSION_AFFINITY_CONFIG);
+        service.setSpec(serviceSpec);
+        return service;
+    }
+
+    /**
+     * creates the ingress which routes the requests to /service id/ on the shared ingress front to the
+     * specified service, rewriting the path to the web artifact's context path
+     * <p>
+     * Each web artifact has an ingress of its own, which the shared ingress controller merges into its
+     * routing table. The ingress controller proxies to the service's pods over its pooled keep-alive
+     * upstream connections.
+     * <p>
+     * An ingress controller must already be running in the cluster, as this handler neither deploys nor
+     * detects one; without it the ingress is created but never served.
+     *
+     * @param serviceId   id of the service
+     * @param serviceName service name to be used by the label name
+     * @param contextPath context path of the web artifact in Tomcat
+     * @throws IOException
+     */
+    private void createIngress(String serviceId, String serviceName, String contextPath) throws IOException {
+        String path = INGRESS_RESOURCE + "/" + KubernetesRestClient.encode(serviceId);
+        if (ingressClient.get(path) != null) {
+            return;
+        }
+        ObjectNode ingress = ingressClient.createPatch();
+        ingress.put("apiVersion", KubernetesConstantsExtended.INGRESS_API_VERSION);
+        ingress.put("kind", KubernetesConstantsExtended.INGRESS_COMPONENT_KIND);
+        ObjectNode metadata = ingress.putObject("metadata");
+        metadata.put("name", serviceId);
+        metadata.putObject("labels").put(KubernetesConstantsExtended.LABEL_NAME, serviceName);
+        metadata.putObject("annotations")
+                .put(KubernetesConstantsExtended.INGRESS_REWRITE_TARGET_ANNOTATION, "/" + contextPath);
+        ObjectNode ingressPath = ingress.putObject("spec").putArray("rules").addObject().putObject("http")
+                .putArray("paths").addObject();
+        ingressPath.put("path", "/" + serviceId);
+        ObjectNode backend = ingressPath.putObject("backend");
+        backend.put("serviceName", serviceId);
+        backend.put("servicePort", KubernetesConstantsExtended.TOMCAT_DOCKER_CONTAINER_EXPOSED_PORT);
+        ingressClient.create(INGRESS_RESOURCE, ingress);
+    }
+
+    /**
+     * creates a NodePort service on a newly allocated NodePort, moving on to another NodePort if the
+     * allocated one turns out to be taken by a service created outside this handler
+     *
+     * @param serviceId   id of the service
+     * @param serviceName service name to be used by the label name
+     * @return the NodePort of the service
+     * @throws IOException
+     * @throws WebArtifactHandlerException if all NodePorts are allocated
+     */
+    private int createNodePortService(String serviceId, String serviceName)
+            throws IOException, WebArtifactHandlerException {
+        for (int attempt = 1; ; attempt++) {
+            int nodePort = nodePortAllocator.allocate();
+            if (nodePort == -1) {
+                throw new WebArtifactHandlerException(String.format("No free NodePort between %d and %d.",
+                        KubernetesConstantsExtended.NODE_PORT_LOWER_LIMIT,
+                        KubernetesConstantsExtended.NODE_PORT_UPPER_LIMIT));
+            }
+            try {
+                restClient.create(SERVICE_RESOURCE,
+                        buildService(serviceId, serviceName, ServiceExposureMode.NODE_PORT, nodePort));
+                return nodePort;
+            } catch (KubernetesApiException exception) {
+                boolean collision = (exception.getStatusCode() == HttpStatus.SC_UNPROCESSABLE_ENTITY) && (exception
+                        .getMessage().contains(NODE_PORT_COLLISION_MESSAGE));
+                if (!collision) {
+                    nodePortAllocator.release(nodePort);
+                    throw exception;
+                }
+                // the NodePort stays allocated, as it is in use
+                LOG.warn(String.format("NodePort %d is already in use, allocating another one for [service-ID] %s.",
+                        nodePort, serviceId));
+                if (attempt >= MAX_NODE_PORT_COLLISIONS) {
+                    throw exception;
+                }
+            } catch (IOException exception) {
+                nodePortAllocator.release(nodePort);
+                throw exception;
+            }
+        }
+    }
+
+    /**
+     * reconciles the NodePort allocations against the NodePorts used by the existing services, keeping
+     * the persisted allocations if the services cannot be listed
+     */
+    private void reconcileNodePorts() {
+        try {
+            // NodePorts are allocated cluster-wide, hence the services of every namespace are taken into account
+            JsonNode services = restClient.getAllNamespaces(SERVICE_RESOURCE);
+            List<Integer> usedNodePorts = new ArrayList<>();
+            if (services != null) {
+                for (JsonNode service : services.path("items")) {
+                    for (JsonNode port : service.path("spec").path("ports")) {
+                        if (port.path("nodePort").isInt()) {
+                            usedNodePorts.add(port.path("nodePort").asInt());
+                        }
+                    }
+                }
+            }
+            nodePortAllocator.reconcile(usedNodePorts);
+        } catch (IOException exception) {
+            LOG.warn("Could not list the services, using the persisted NodePort allocations.", exception);
+        }
+    }
+
+    private static List<Integer> getNodePorts(Service service) {
+        List<Integer> nodePorts = new ArrayList<>();
+        if ((service.getSpec() != null) && (service.getSpec().getPorts() != null)) {
+            for (ServicePort port : service.getSpec().getPorts()) {
+                if (port.getNodePort() != null) {
+                    nodePorts.add(port.getNodePort());
+                }
+            }
+        }
+        return nodePorts;
+    }
+
+    /**
+     * the access endpoint of a service, as of a version of the service
+     */
+    private static class ServiceEndpoint {
+        private final String resourceVersion;
+        private final String serviceURL;
+        private final int nodePort;
+        private final boolean exposedByIngress;
+        private final long resolvedTime = System.currentTimeMillis();
+
+        ServiceEndpoint(String resourceVersion, String serviceURL, int nodePort, boolean exposedByIngress) {
+            this.resourceVersion = resourceVersion;
+            this.serviceURL = serviceURL;
+            this.nodePort = nodePort;
+            this.exposedByIngress = exposedByIngress;
         }
     }
 }
@@ -16,6 +16,7 @@
 package org.wso2.strategy.poc.kubernetes.components.service.interfaces;
 
 import io.fabric8.kubernetes.api.model.Service;
+import org.wso2.strategy.poc.kubernetes.components.service.ServiceExposureMode;
 import org.wso2.strategy.poc.miscellaneous.exceptions.WebArtifactHandlerException;
 
 public interface ITomcatServiceHandler {
@@ -24,9 +25,26 @@ public interface ITomcatServiceHandler {
      *
      * @param serviceId   id of the service
      * @param serviceName service name to be used by the label name
+     * @return true if the service was created, false if an existing one was kept
      * @throws WebArtifactHandlerException
      */
-    void createService(String serviceId, String serviceName) throws WebArtifactHandlerException;
+    boolean createService(String serviceId, String serviceName) throws WebArtifactHandlerException;
+
+    /**
+     * creates a Kubernetes service exposed in the specified mode
+     * <p>
+     * The ingress mode requires an ingress controller already running in the cluster to serve the
+     * shared ingress front.
+     *
+     * @param serviceId    id of the service
+     * @param serviceName  service name to be used by the label name
+     * @param exposureMode the way in which the service is exposed outside the cluster
+     * @param contextPath  context path of the web artifact in Tomcat, required by the ingress mode
+     * @return true if the service was created, false if an existing one was kept
+     * @throws WebArtifactHandlerException
+     */
+    boolean createService(String serviceId, String serviceName, ServiceExposureMode exposureMode, String contextPath)
+            throws WebArtifactHandlerException;
 
     /**
      * returns a service corresponding to the service id
@@ -57,6 +75,23 @@ public interface ITomcatServiceHandler {
      */
     String getNodePortIP(String serviceId, String appName) throws WebArtifactHandlerException;
 
+    /**
+     * returns access URL String value of the service on the shared ingress front
+     *
+     * @param serviceId id of the service
+     * @return access URL String value of the service on the shared ingress front, null if the service
+     * is not exposed by ingress
+     * @throws WebArtifactHandlerException
+     */
+    String getIngressURL(String serviceId) throws WebArtifactHandlerException;
+
+    /**
+     * sets the base URL of the shared ingress front, which defaults to port 80 of this node
+     *
+     * @param ingressBaseURL base URL of the shared ingress front
+     */
+    void setIngressBaseURL(String ingressBaseURL);
+
     /**
      * removes the specified Kubernetes service
      *
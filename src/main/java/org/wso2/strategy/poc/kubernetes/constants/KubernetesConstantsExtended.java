@@ -18,11 +18,21 @@ package org.wso2.strategy.poc.kubernetes.constants;
 public class KubernetesConstantsExtended {
     public static final String POD_COMPONENT_KIND = "Pod";
     public static final String REPLICATION_CONTROLLER_COMPONENT_KIND = "ReplicationController";
+    public static final String SERVICE_COMPONENT_KIND = "Service";
     public static final String LABEL_NAME = "name";
+    public static final String LABEL_EXPOSURE_MODE = "exposure-mode";
+    public static final String POD_READY_CONDITION = "Ready";
+    public static final String CONDITION_STATUS_TRUE = "True";
     public static final int NODE_PORT_LOWER_LIMIT = 30000;
     public static final int NODE_PORT_UPPER_LIMIT = 32767;
     public static final int TOMCAT_DOCKER_CONTAINER_EXPOSED_PORT = 8080;
     public static final String NODE_PORT_ALLOCATION_FILENAME = "NodePortAllocation.txt";
     public static final String SESSION_AFFINITY_CONFIG = "None";
     public static final String SERVICE_PORT_NAME = "http-1";
+    public static final String SERVICE_PORT_PROTOCOL = "TCP";
+    public static final String NODE_PORT_SERVICE_TYPE = "NodePort";
+    public static final String CLUSTER_IP_SERVICE_TYPE = "ClusterIP";
+    public static final String INGRESS_COMPONENT_KIND = "Ingress";
+    public static final String INGRESS_API_VERSION = "extensions/v1beta1";
+    public static final String INGRESS_REWRITE_TARGET_ANNOTATION = "ingress.kubernetes.io/rewrite-target";
 }
@@ -0,0 +1,354 @@
+/*
+* Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.wso2.strategy.poc.kubernetes.rest;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpDelete;
+import org.apache.http.client.methods.HttpEntityEnclosingRequestBase;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPatch;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpPut;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.util.EntityUtils;
+
+import java.io.BufferedReader;
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * a minimal client of the Kubernetes REST API within the default namespace, which sends its requests
+ * over the shared, pooled transport of the API server
+ * <p>
+ * Resources are exchanged as the Kubernetes model objects, and lists and watch events as JSON trees,
+ * which allows server side label and field selectors and watch streams.
+ */
+public class KubernetesRestClient {
+    private final KubernetesTransport transport;
+    private final String apiURL;
+    private final String namespaceURL;
+
+    // API path of the core resources, e.g. pods and services
+    public static final String CORE_API_PATH = "/api/v1";
+    // API path of the extensions resources, e.g. ingresses
+    public static final String EXTENSIONS_API_PATH = "/apis/extensions/v1beta1";
+    private static final String NAMESPACE_PATH = "/namespaces/default/";
+    private static final int WATCH_READ_MARGIN_IN_MILLISECONDS = 30000;
+    private static final ContentType STRATEGIC_MERGE_PATCH = ContentType
+            .create("application/strategic-merge-patch+json", StandardCharsets.UTF_8);
+    private static final ScheduledExecutorService REQUEST_DEADLINE_TIMER = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("kubernetes-request-deadline-%d").setDaemon(true).build());
+    private static final ObjectMapper MAPPER = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
+            .setSerializationInclusion(JsonInclude.Include.NON_NULL);
+
+    public KubernetesRestClient(String kubernetesURI) {
+        this(KubernetesTransport.getInstance(kubernetesURI));
+    }
+
+    public KubernetesRestClient(KubernetesTransport transport) {
+        this(transport, CORE_API_PATH);
+    }
+
+    /**
+     * @param transport shared transport of the Kubernetes API server
+     * @param apiPath   path of the API group and version of the resources, e.g. /apis/extensions/v1beta1
+     */
+    public KubernetesRestClient(KubernetesTransport transport, String apiPath) {
+        this.transport = transport;
+        String kubernetesURI = transport.getKubernetesURI();
+        String baseURI = kubernetesURI.endsWith("/") ? kubernetesURI.substring(0, kubernetesURI.length() - 1)
+                : kubernetesURI;
+        apiURL = baseURI + apiPath + "/";
+        namespaceURL = baseURI + apiPath + NAMESPACE_PATH;
+    }
+
+    /**
+     * reads the list of resources across all namespaces, e.g. to find the cluster-wide NodePorts in use
+     *
+     * @param resourcesPath path of the resources relative to the API path, including any query
+     * @return the list of resources read, null if no such resources exist
+     * @throws IOException
+     */
+    public JsonNode getAllNamespaces(String resourcesPath) throws IOException {
+        return send(new HttpGet(apiURL + resourcesPath));
+    }
+
+    /**
+     * reads a resource, or a list of resources, of the default namespace
+     *
+     * @param resourcePath path of the resource relative to the default namespace, including any query
+     * @return the resource read, null if no such resource exists
+     * @throws IOException
+     */
+    public JsonNode get(String resourcePath) throws IOException {
+        return send(new HttpGet(namespaceURL + resourcePath));
+    }
+
+    /**
+     * reads a resource of the default namespace as its Kubernetes model type
+     *
+     * @param resourcePath path of the resource relative to the default namespace
+     * @param resourceType Kubernetes model type
+     * @param <T>          Kubernetes model type
+     * @return the resource read, null if no such resource exists
+     * @throws IOException
+     */
+    public <T> T get(String resourcePath, Class<T> resourceType) throws IOException {
+        JsonNode resource = get(resourcePath);
+        return (resource != null) ? toResource(resource, resourceType) : null;
+    }
+
+    /**
+     * creates a resource in the default namespace
+     *
+     * @param resourcesPath path of the kind of resource relative to the default namespace (e.g. pods)
+     * @param resource      Kubernetes model object to be created
+     * @return the resource created
+     * @throws IOException
+     */
+    public JsonNode create(String resourcesPath, Object resource) throws IOException {
+        return send(withBody(new HttpPost(namespaceURL + resourcesPath), resource, ContentType.APPLICATION_JSON));
+    }
+
+    /**
+     * replaces a resource of the default namespace
+     *
+     * @param resourcePath path of the resource relative to the default namespace
+     * @param resource     Kubernetes model object replacing the resource
+     * @return the resource replaced, null if no such resource exists
+     * @throws IOException
+     */
+    public JsonNode update(String resourcePath, Object resource) throws IOException {
+        return send(withBody(new HttpPut(namespaceURL + resourcePath), resource, ContentType.APPLICATION_JSON));
+    }
+
+    /**
+     * patches a resource of the default namespace with a strategic merge patch, which carries only the
+     * changed fields
+     * <p>
+     * A resourceVersion in the metadata of the patch acts as a precondition, the API server responds
+     * 409 Conflict if the resource has been modified since that version.
+     *
+     * @param resourcePath path of the resource relative to the default namespace
+     * @param patch        the changed fields of the resource
+     * @return the resource patched, null if no such resource exists
+     * @throws IOException
+     */
+    public JsonNode patch(String resourcePath, JsonNode patch) throws IOException {
+        return send(withBody(new HttpPatch(namespaceURL + resourcePath), patch, STRATEGIC_MERGE_PATCH));
+    }
+
+    /**
+     * returns an empty JSON object, to which the changed fields of a patch are added
+     *
+     * @return an empty JSON object
+     */
+    public ObjectNode createPatch() {
+        return MAPPER.createObjectNode();
+    }
+
+    /**
+     * deletes a resource of the default namespace
+     *
+     * @param resourcePath path of the resource relative to the default namespace
+     * @return the API server's response, null if no such resource exists
+     * @throws IOException
+     */
+    public JsonNode delete(String resourcePath) throws IOException {
+        return send(new HttpDelete(namespaceURL + resourcePath));
+    }
+
+    /**
+     * deletes a resource of the default namespace, aborting the call if it does not complete in time
+     * <p>
+     * The time is counted from when the call is sent. An aborted call fails, so that a resource is
+     * reported as deleted only once the API server has confirmed it.
+     *
+     * @param resourcePath          path of the resource relative to the default namespace
+     * @param timeoutInMilliseconds maximum time for the call to complete
+     * @return the API server's response, null if no such resource exists
+     * @throws IOException
+     */
+    public JsonNode delete(String resourcePath, long timeoutInMilliseconds) throws IOException {
+        return send(new HttpDelete(namespaceURL + resourcePath), timeoutInMilliseconds);
+    }
+
+    /**
+     * opens a watch stream of a kind of resource of the default namespace, which yields one event per line
+     *
+     * @param resourcePath   path of the resources relative to the default namespace, including the watch query
+     * @param timeoutSeconds time after which the API server ends the watch stream
+     * @return the watch stream, closing which releases its connection
+     * @throws IOException
+     */
+    public BufferedReader watch(String resourcePath, int timeoutSeconds) throws IOException {
+        // the API server closes the stream after the watch timeout, hence the read should outlast it
+        final CloseableHttpResponse response = transport
+                .execute(new HttpGet(namespaceURL + resourcePath), (timeoutSeconds * 1000)
+                        + WATCH_READ_MARGIN_IN_MILLISECONDS);
+        if ((!KubernetesTransport.isSuccessful(response)) || (response.getEntity() == null)) {
+            int status = response.getStatusLine().getStatusCode();
+            response.close();
+            throw new KubernetesApiException(status, String.format("Kubernetes API server responded %d to the "
+                    + "watch of [resources] %s%s.", status, namespaceURL, resourcePath));
+        }
+        InputStream content = response.getEntity().getContent();
+        return new BufferedReader(new FilterReader(new InputStreamReader(content, StandardCharsets.UTF_8)) {
+            public void close() throws IOException {
+                // an unfinished stream cannot be reused, hence closing the response discards its connection
+                response.close();
+            }
+        });
+    }
+
+    /**
+     * parses a single line of a watch stream
+     *
+     * @param line line of a watch stream
+     * @return the watch event
+     * @throws IOException
+     */
+    public JsonNode readEvent(String line) throws IOException {
+        return MAPPER.readTree(line);
+    }
+
+    /**
+     * binds a JSON resource to its Kubernetes model type
+     *
+     * @param resource     the JSON resource
+     * @param resourceType Kubernetes model type
+     * @param <T>          Kubernetes model type
+     * @return the bound resource
+     * @throws IOException
+     */
+    public <T> T toResource(JsonNode resource, Class<T> resourceType) throws IOException {
+        return MAPPER.treeToValue(resource, resourceType);
+    }
+
+    /**
+     * returns a deep copy of a Kubernetes model object
+     *
+     * @param resource     Kubernetes model object
+     * @param resourceType Kubernetes model type
+     * @param <T>          Kubernetes model type
+     * @return a deep copy of the Kubernetes model object
+     */
+    public <T> T copy(T resource, Class<T> resourceType) {
+        return MAPPER.convertValue(resource, resourceType);
+    }
+
+    public KubernetesTransport getTransport() {
+        return transport;
+    }
+
+    /**
+     * returns the label selector query value of the specified labels
+     *
+     * @param labels labels which should all match
+     * @return the label selector query value of the labels, URL encoded
+     * @throws IOException
+     */
+    public static String toLabelSelector(Map<String, String> labels) throws IOException {
+        StringBuilder selector = new StringBuilder();
+        for (Map.Entry<String, String> label : labels.entrySet()) {
+            if (selector.length() > 0) {
+                selector.append(',');
+            }
+            selector.append(label.getKey()).append('=').append(label.getValue());
+        }
+        return encode(selector.toString());
+    }
+
+    /**
+     * URL encodes a query or path value
+     *
+     * @param value value to be encoded
+     * @return the URL encoded value
+     * @throws IOException
+     */
+    public static String encode(String value) throws IOException {
+        return URLEncoder.encode((value == null) ? "" : value, StandardCharsets.UTF_8.name());
+    }
+
+    private HttpRequestBase withBody(HttpEntityEnclosingRequestBase request, Object resource, ContentType contentType)
+            throws IOException {
+        request.setEntity(new ByteArrayEntity(MAPPER.writeValueAsBytes(resource), contentType));
+        return request;
+    }
+
+    private JsonNode send(final HttpRequestBase request, long timeoutInMilliseconds) throws IOException {
+        // a socket timeout bounds each read alone, hence the call as a whole is bounded by aborting it
+        ScheduledFuture<?> deadline = REQUEST_DEADLINE_TIMER.schedule(new Runnable() {
+            public void run() {
+                request.abort();
+            }
+        }, timeoutInMilliseconds, TimeUnit.MILLISECONDS);
+        try {
+            request.setHeader("Accept", "application/json");
+            return read(request, transport.execute(request, (int) Math.min(Integer.MAX_VALUE, timeoutInMilliseconds)));
+        } catch (IOException exception) {
+            if (request.isAborted()) {
+                throw new IOException(String.format("%s %s timed out after %d ms.", request.getMethod(),
+                        request.getURI(), timeoutInMilliseconds), exception);
+            }
+            throw exception;
+        } finally {
+            deadline.cancel(false);
+        }
+    }
+
+    private JsonNode send(HttpRequestBase request) throws IOException {
+        request.setHeader("Accept", "application/json");
+        return read(request, transport.execute(request));
+    }
+
+    private JsonNode read(HttpRequestBase request, CloseableHttpResponse executedResponse) throws IOException {
+        try (CloseableHttpResponse response = executedResponse) {
+            int status = response.getStatusLine().getStatusCode();
+            HttpEntity entity = response.getEntity();
+            // the response content is always consumed, so that the connection is released for reuse
+            String content = (entity != null) ? EntityUtils.toString(entity, StandardCharsets.UTF_8) : "";
+            if (status == HttpStatus.SC_NOT_FOUND) {
+                return null;
+            }
+            if (!KubernetesTransport.isSuccessful(response)) {
+                throw new KubernetesApiException(status, String.format("Kubernetes API server responded %d to %s %s: "
+                        + "%s", status, request.getMethod(), request.getURI(), content));
+            }
+            return content.isEmpty() ? MAPPER.createObjectNode() : MAPPER.readTree(content);
+        }
+    }
+}
@@ -0,0 +1,270 @@
+/*
+* Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.wso2.strategy.poc.kubernetes.rest;
+
+import org.apache.http.Header;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.config.ConnectionConfig;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.HttpConnectionFactory;
+import org.apache.http.conn.ManagedHttpClientConnection;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.ManagedHttpClientConnectionFactory;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.message.BasicHeader;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * a pooled HTTP transport to a single Kubernetes API server, shared by all handlers of that API server
+ * <p>
+ * Keep-alive connections are pooled, so that the TCP and TLS set up cost of a connection is paid once
+ * per process rather than once per request or handler. The number of requests made and the number of
+ * connections opened are tracked, which gives the connection reuse ratio. The TLS trust, client
+ * certificate and credentials of the API server are those of the {@link KubernetesTransportSecurity}
+ * the transport is created with, by default those of the pod's service account, if any.
+ */
+public class KubernetesTransport {
+    private final String kubernetesURI;
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final CloseableHttpClient httpClient;
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong openedConnections = new AtomicLong();
+    private volatile int connectTimeoutInMilliseconds;
+    private volatile int socketTimeoutInMilliseconds;
+
+    public static final int DEFAULT_MAX_CONNECTIONS = 20;
+    public static final int DEFAULT_CONNECT_TIMEOUT_IN_MILLISECONDS = 10000;
+    public static final int DEFAULT_SOCKET_TIMEOUT_IN_MILLISECONDS = 30000;
+    // one transport per Kubernetes API server, shared by all handlers of that API server
+    private static final ConcurrentMap<String, KubernetesTransport> SERVER_TRANSPORTS = new ConcurrentHashMap<>();
+    private static final Logger LOG = LogManager.getLogger(KubernetesTransport.class);
+
+    private KubernetesTransport(String kubernetesURI, int maxConnections, int connectTimeoutInMilliseconds,
+            int socketTimeoutInMilliseconds, KubernetesTransportSecurity security) {
+        this.kubernetesURI = kubernetesURI;
+        this.connectTimeoutInMilliseconds = connectTimeoutInMilliseconds;
+        this.socketTimeoutInMilliseconds = socketTimeoutInMilliseconds;
+        SSLConnectionSocketFactory sslSocketFactory = (security.getSSLContext() != null) ?
+                new SSLConnectionSocketFactory(security.getSSLContext()) :
+                SSLConnectionSocketFactory.getSocketFactory();
+        Registry<ConnectionSocketFactory> socketFactories = RegistryBuilder.<ConnectionSocketFactory>create()
+                .register("http", PlainConnectionSocketFactory.getSocketFactory()).register("https", sslSocketFactory)
+                .build();
+        connectionManager = new PoolingHttpClientConnectionManager(socketFactories, new CountingConnectionFactory());
+        connectionManager.setMaxTotal(maxConnections);
+        // every connection of the pool is to the same API server
+        connectionManager.setDefaultMaxPerRoute(maxConnections);
+        HttpClientBuilder httpClientBuilder = HttpClients.custom().setConnectionManager(connectionManager);
+        if (security.getAuthorization() != null) {
+            Header authorization = new BasicHeader(HttpHeaders.AUTHORIZATION, security.getAuthorization());
+            httpClientBuilder.setDefaultHeaders(Collections.singletonList(authorization));
+        }
+        httpClient = httpClientBuilder.build();
+    }
+
+    /**
+     * returns the transport of the specified Kubernetes API server, with the default pool size, timeouts and
+     * security unless the transport has already been created
+     *
+     * @param kubernetesURI URI of the Kubernetes API server
+     * @return the transport of the Kubernetes API server
+     */
+    public static KubernetesTransport getInstance(String kubernetesURI) {
+        KubernetesTransport transport = SERVER_TRANSPORTS.get(kubernetesURI);
+        if (transport == null) {
+            return getInstance(kubernetesURI, DEFAULT_MAX_CONNECTIONS, DEFAULT_CONNECT_TIMEOUT_IN_MILLISECONDS,
+                    DEFAULT_SOCKET_TIMEOUT_IN_MILLISECONDS, KubernetesTransportSecurity.getDefault());
+        }
+        return transport;
+    }
+
+    /**
+     * returns the transport of the specified Kubernetes API server, creating it with the specified pool size,
+     * timeouts and security unless it has already been created
+     * <p>
+     * As the transport is shared by all handlers of the API server, the settings apply only to its creation,
+     * after which the pool size and timeouts are changed through {@link #configure(int, int, int)} alone.
+     *
+     * @param kubernetesURI                URI of the Kubernetes API server
+     * @param maxConnections               maximum number of pooled connections to the API server
+     * @param connectTimeoutInMilliseconds maximum time to wait for a connection to be established
+     * @param socketTimeoutInMilliseconds  maximum time to wait for data on an established connection
+     * @param security                     TLS trust, client certificate and credentials of the API server
+     * @return the transport of the Kubernetes API server
+     */
+    public static KubernetesTransport getInstance(String kubernetesURI, int maxConnections,
+            int connectTimeoutInMilliseconds, int socketTimeoutInMilliseconds, KubernetesTransportSecurity security) {
+        if (maxConnections < 1) {
+            throw new IllegalArgumentException("Maximum number of connections should be at least one.");
+        }
+        KubernetesTransport transport = SERVER_TRANSPORTS.get(kubernetesURI);
+        if (transport == null) {
+            KubernetesTransport newTransport = new KubernetesTransport(kubernetesURI, maxConnections,
+                    connectTimeoutInMilliseconds, socketTimeoutInMilliseconds, security);
+            transport = SERVER_TRANSPORTS.putIfAbsent(kubernetesURI, newTransport);
+            if (transport == null) {
+                return newTransport;
+            }
+            newTransport.shutdown();
+        }
+        if (LOG.isDebugEnabled()) {
+            LOG.debug(String.format("Reusing the existing transport, the settings of the new transport are ignored "
+                    + "[kubernetes-endpoint] %s.", kubernetesURI));
+        }
+        return transport;
+    }
+
+    /**
+     * sets the pool size and timeouts of the transport
+     *
+     * @param maxConnections               maximum number of pooled connections to the API server
+     * @param connectTimeoutInMilliseconds maximum time to wait for a connection to be established
+     * @param socketTimeoutInMilliseconds  maximum time to wait for data on an established connection
+     */
+    public void configure(int maxConnections, int connectTimeoutInMilliseconds, int socketTimeoutInMilliseconds) {
+        connectionManager.setMaxTotal(maxConnections);
+        connectionManager.setDefaultMaxPerRoute(maxConnections);
+        this.connectTimeoutInMilliseconds = connectTimeoutInMilliseconds;
+        this.socketTimeoutInMilliseconds = socketTimeoutInMilliseconds;
+    }
+
+    public String getKubernetesURI() {
+        return kubernetesURI;
+    }
+
+    /**
+     * executes a request over a pooled connection, using the transport's timeouts
+     * <p>
+     * The response should be closed by the caller, which releases the connection back to the pool.
+     *
+     * @param request the request
+     * @return the response
+     * @throws IOException
+     */
+    public CloseableHttpResponse execute(HttpRequestBase request) throws IOException {
+        return execute(request, socketTimeoutInMilliseconds);
+    }
+
+    /**
+     * executes a request over a pooled connection, using the specified socket timeout
+     * <p>
+     * The response should be closed by the caller, which releases the connection back to the pool.
+     *
+     * @param request                     the request
+     * @param socketTimeoutInMilliseconds maximum time to wait for data of the response
+     * @return the response
+     * @throws IOException
+     */
+    public CloseableHttpResponse execute(HttpRequestBase request, int socketTimeoutInMilliseconds)
+            throws IOException {
+        request.setConfig(RequestConfig.custom().setConnectTimeout(connectTimeoutInMilliseconds)
+                .setConnectionRequestTimeout(connectTimeoutInMilliseconds)
+                .setSocketTimeout(socketTimeoutInMilliseconds).build());
+        requests.incrementAndGet();
+        return httpClient.execute(request);
+    }
+
+    /**
+     * returns the number of requests made over the transport
+     *
+     * @return the number of requests made over the transport
+     */
+    public long getRequests() {
+        return requests.get();
+    }
+
+    /**
+     * returns the number of connections opened to the API server
+     *
+     * @return the number of connections opened to the API server
+     */
+    public long getOpenedConnections() {
+        return openedConnections.get();
+    }
+
+    /**
+     * returns the share of requests which were served over an already open connection
+     *
+     * @return the share of requests which were served over an already open connection, between 0 and 1
+     */
+    public double getConnectionReuseRatio() {
+        long requestCount = requests.get();
+        if (requestCount == 0) {
+            return 0;
+        }
+        return Math.max(0, (double) (requestCount - openedConnections.get()) / requestCount);
+    }
+
+    public String toString() {
+        return String.format("[kubernetes-endpoint] %s [max-connections] %d [leased-connections] %d "
+                        + "[available-connections] %d [requests] %d [opened-connections] %d [reuse-ratio] %.2f",
+                kubernetesURI, connectionManager.getMaxTotal(), connectionManager.getTotalStats().getLeased(),
+                connectionManager.getTotalStats().getAvailable(), getRequests(), getOpenedConnections(),
+                getConnectionReuseRatio());
+    }
+
+    private void shutdown() {
+        try {
+            httpClient.close();
+        } catch (IOException exception) {
+            LOG.warn(String.format("Could not close the transport [kubernetes-endpoint] %s.", kubernetesURI),
+                    exception);
+        }
+    }
+
+    /**
+     * checks whether the response carries a successful status code
+     *
+     * @param response the response
+     * @return true if the status code is a 2xx code, else false
+     */
+    static boolean isSuccessful(HttpResponse response) {
+        int status = response.getStatusLine().getStatusCode();
+        return (status >= 200) && (status < 300);
+    }
+
+    /**
+     * a connection factory which counts the connections it creates for the pool
+     */
+    private class CountingConnectionFactory implements HttpConnectionFactory<HttpRoute, ManagedHttpClientConnection> {
+        public ManagedHttpClientConnection create(HttpRoute route, ConnectionConfig config) {
+            openedConnections.incrementAndGet();
+            if (LOG.isDebugEnabled()) {
+                LOG.debug(String.format("Opening a new connection [kubernetes-endpoint] %s [requests] %d "
+                        + "[opened-connections] %d.", kubernetesURI, requests.get(), openedConnections.get()));
+            }
+            return ManagedHttpClientConnectionFactory.INSTANCE.create(route, config);
+        }
+    }
+}
@@ -0,0 +1,180 @@
+/*
+* Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.wso2.strategy.poc.kubernetes.rest;
+
+import com.google.common.io.BaseEncoding;
+
+import javax.net.ssl.KeyManager;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManagerFactory;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateFactory;
+
+/**
+ * the TLS trust, client certificate and credentials with which a transport reaches a Kubernetes API server
+ * <p>
+ * The SSL context holds the trusted certificate authorities and, for client certificate authentication,
+ * the client key. The credentials are sent as the Authorization header of every request, a bearer token
+ * or basic authentication. Unless specified otherwise, a transport uses the service account of the pod
+ * it runs in, if any, like the Kubernetes client it replaces.
+ */
+public class KubernetesTransportSecurity {
+    private final SSLContext sslContext;
+    private final String authorization;
+
+    // credentials mounted into every pod of a service account
+    private static final Path SERVICE_ACCOUNT_TOKEN = Paths.get("/var/run/secrets/kubernetes.io/serviceaccount/token");
+    private static final Path SERVICE_ACCOUNT_CA_CERTIFICATE = Paths
+            .get("/var/run/secrets/kubernetes.io/serviceaccount/ca.crt");
+    private static final String CERTIFICATE_TYPE = "X.509";
+    private static final String TLS_PROTOCOL = "TLS";
+
+    /**
+     * @param sslContext    SSL context holding the trusted certificate authorities and client key, null for the
+     *                      default SSL context of the JVM
+     * @param authorization value of the Authorization header, null for none
+     */
+    public KubernetesTransportSecurity(SSLContext sslContext, String authorization) {
+        this.sslContext = sslContext;
+        this.authorization = authorization;
+    }
+
+    /**
+     * returns the security of an unsecured API server, reached with the default SSL context of the JVM
+     *
+     * @return the security of an unsecured API server
+     */
+    public static KubernetesTransportSecurity none() {
+        return new KubernetesTransportSecurity(null, null);
+    }
+
+    /**
+     * returns the security which authenticates with a bearer token, e.g. that of a service account
+     *
+     * @param sslContext SSL context holding the trusted certificate authorities, null for the default of the JVM
+     * @param token      the bearer token
+     * @return the security which authenticates with the bearer token
+     */
+    public static KubernetesTransportSecurity withBearerToken(SSLContext sslContext, String token) {
+        return new KubernetesTransportSecurity(sslContext, "Bearer " + token);
+    }
+
+    /**
+     * returns the security which authenticates with basic authentication
+     *
+     * @param sslContext SSL context holding the trusted certificate authorities, null for the default of the JVM
+     * @param username   the user name
+     * @param password   the password
+     * @return the security which authenticates with basic authentication
+     */
+    public static KubernetesTransportSecurity withBasicAuthentication(SSLContext sslContext, String username,
+            String password) {
+        String credentials = BaseEncoding.base64().encode((username + ":" + password).getBytes(StandardCharsets.UTF_8));
+        return new KubernetesTransportSecurity(sslContext, "Basic " + credentials);
+    }
+
+    /**
+     * returns the security of the service account of the pod this runs in, else that of an unsecured API server
+     *
+     * @return the security of the service account of the pod, else that of an unsecured API server
+     */
+    public static KubernetesTransportSecurity getDefault() {
+        if (!Files.isReadable(SERVICE_ACCOUNT_TOKEN)) {
+            return none();
+        }
+        try {
+            String token = new String(Files.readAllBytes(SERVICE_ACCOUNT_TOKEN), StandardCharsets.UTF_8).trim();
+            SSLContext sslContext = null;
+            if (Files.isReadable(SERVICE_ACCOUNT_CA_CERTIFICATE)) {
+                try (InputStream certificate = Files.newInputStream(SERVICE_ACCOUNT_CA_CERTIFICATE)) {
+                    sslContext = createSSLContext(certificate, null, null);
+                }
+            }
+            return withBearerToken(sslContext, token);
+        } catch (IOException | GeneralSecurityException exception) {
+            throw new IllegalStateException("Could not read the credentials of the pod's service account.",
+                    exception);
+        }
+    }
+
+    /**
+     * creates an SSL context which trusts the specified certificate authority and, if a client key store is
+     * specified, presents its client certificate
+     *
+     * @param caCertificate     PEM or DER encoded certificate of the certificate authority of the API server
+     * @param clientKeyStore    key store holding the client certificate and key, null for none
+     * @param clientKeyPassword password of the client key, null for none
+     * @return the SSL context
+     * @throws GeneralSecurityException if the certificate or key store cannot be used
+     * @throws IOException              if the certificate cannot be read
+     */
+    public static SSLContext createSSLContext(InputStream caCertificate, KeyStore clientKeyStore,
+            char[] clientKeyPassword) throws GeneralSecurityException, IOException {
+        KeyStore trustStore = KeyStore.getInstance(KeyStore.getDefaultType());
+        trustStore.load(null, null);
+        int certificateIndex = 0;
+        for (Certificate certificate : CertificateFactory.getInstance(CERTIFICATE_TYPE)
+                .generateCertificates(caCertificate)) {
+            trustStore.setCertificateEntry("ca-" + certificateIndex++, certificate);
+        }
+        TrustManagerFactory trustManagerFactory = TrustManagerFactory
+                .getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        trustManagerFactory.init(trustStore);
+        KeyManager[] keyManagers = null;
+        if (clientKeyStore != null) {
+            KeyManagerFactory keyManagerFactory = KeyManagerFactory
+                    .getInstance(KeyManagerFactory.getDefaultAlgorithm());
+            keyManagerFactory.init(clientKeyStore, clientKeyPassword);
+            keyManagers = keyManagerFactory.getKeyManagers();
+        }
+        SSLContext sslContext = SSLContext.getInstance(TLS_PROTOCOL);
+        sslContext.init(keyManagers, trustManagerFactory.getTrustManagers(), null);
+        return sslContext;
+    }
+
+    /**
+     * returns the SSL context of the transport
+     *
+     * @return the SSL context of the transport, null for the default SSL context of the JVM
+     */
+    public SSLContext getSSLContext() {
+        return sslContext;
+    }
+
+    /**
+     * returns the value of the Authorization header sent with every request
+     *
+     * @return the value of the Authorization header, null for none
+     */
+    public String getAuthorization() {
+        return authorization;
+    }
+
+    public String toString() {
+        String scheme = (authorization != null) ? authorization.substring(0, authorization.indexOf(' ')) : "none";
+        return String.format("[authentication] %s [ssl-context] %s", scheme,
+                (sslContext != null) ? sslContext.getProtocol() : "default");
+    }
+}
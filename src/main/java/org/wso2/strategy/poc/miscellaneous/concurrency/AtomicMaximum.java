@@ -0,0 +1,39 @@
+/*
+* Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.wso2.strategy.poc.miscellaneous.concurrency;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * utility methods which keep the maximum of concurrently recorded values without locking
+ */
+public class AtomicMaximum {
+    private AtomicMaximum() {
+    }
+
+    /**
+     * raises the specified maximum to the specified value, unless the maximum is already at least as high
+     *
+     * @param maximum the maximum recorded so far
+     * @param value   the value to be recorded
+     */
+    public static void update(AtomicLong maximum, long value) {
+        long currentMax = maximum.get();
+        while ((value > currentMax) && (!maximum.compareAndSet(currentMax, value))) {
+            currentMax = maximum.get();
+        }
+    }
+}
@@ -0,0 +1,379 @@
+/*
+* Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.wso2.strategy.poc.miscellaneous.concurrency;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.wso2.strategy.poc.miscellaneous.exceptions.WebArtifactHandlerException;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * keyed locks of the Kubernetes components, which serialize the operations on the same component while
+ * the operations on different components run fully in parallel
+ * <p>
+ * Each component has its own reentrant read-write lock, which exists only while it is held or waited for,
+ * so that the number of locks is bounded by the components being operated on. Operations which replace
+ * the state of a component (e.g. deploy, roll update, remove) lock it exclusively, while scaling locks it
+ * shared so that concurrent scale requests of a component can still be coalesced. The thread holding the
+ * exclusive lock may also take the shared lock. The time spent waiting for the locks is tracked.
+ * <p>
+ * A lock may also be taken as a lease, which is not owned by the thread which took it and may be released
+ * by any thread, e.g. by the one completing an asynchronous operation. A lease excludes the other holders
+ * of the component's lock just as the lock taken by a thread does.
+ */
+public class ComponentLocks {
+    private final ConcurrentMap<String, ComponentLock> locks = new ConcurrentHashMap<>();
+    private final AtomicLong acquisitions = new AtomicLong();
+    private final AtomicLong contendedAcquisitions = new AtomicLong();
+    private final AtomicLong totalWaitTimeInMilliseconds = new AtomicLong();
+    private final AtomicLong maxWaitTimeInMilliseconds = new AtomicLong();
+
+    private static final Logger LOG = LogManager.getLogger(ComponentLocks.class);
+
+    /**
+     * locks the specified component exclusively, waiting until no other thread holds its lock
+     *
+     * @param componentName Kubernetes component identifier
+     * @throws WebArtifactHandlerException if interrupted while waiting for the lock
+     */
+    public void lockExclusive(String componentName) throws WebArtifactHandlerException {
+        lock(componentName, true);
+    }
+
+    /**
+     * releases the exclusive lock of the specified component
+     *
+     * @param componentName Kubernetes component identifier
+     */
+    public void unlockExclusive(String componentName) {
+        unlock(componentName, true);
+    }
+
+    /**
+     * locks the specified component shared, waiting until no other thread holds its exclusive lock
+     *
+     * @param componentName Kubernetes component identifier
+     * @throws WebArtifactHandlerException if interrupted while waiting for the lock
+     */
+    public void lockShared(String componentName) throws WebArtifactHandlerException {
+        lock(componentName, false);
+    }
+
+    /**
+     * leases the lock of the specified component exclusively, waiting until no other thread or lease
+     * holds its lock
+     *
+     * @param componentName Kubernetes component identifier
+     * @return the lease, to be released once the operation on the component completes
+     * @throws WebArtifactHandlerException if interrupted while waiting for the lock
+     */
+    public Lease leaseExclusive(String componentName) throws WebArtifactHandlerException {
+        return lease(componentName, true);
+    }
+
+    /**
+     * leases the lock of the specified component shared, waiting until no other thread or lease holds
+     * its exclusive lock
+     *
+     * @param componentName Kubernetes component identifier
+     * @return the lease, to be released once the operation on the component completes
+     * @throws WebArtifactHandlerException if interrupted while waiting for the lock
+     */
+    public Lease leaseShared(String componentName) throws WebArtifactHandlerException {
+        return lease(componentName, false);
+    }
+
+    /**
+     * locks the specified component shared if no other thread holds or waits for its exclusive lock, and
+     * no lease holds it exclusively
+     *
+     * @param componentName Kubernetes component identifier
+     * @return true if the lock has been acquired, else false
+     */
+    public boolean tryLockShared(String componentName) {
+        ComponentLock componentLock = reference(componentName);
+        boolean reentered = componentLock.lock.isWriteLockedByCurrentThread();
+        try {
+            // unlike tryLock(), a timed attempt does not barge ahead of a thread waiting for the exclusive lock
+            if (componentLock.lock.readLock().tryLock(0, TimeUnit.MILLISECONDS)) {
+                synchronized (componentLock) {
+                    if ((reentered) || (!componentLock.exclusiveLease)) {
+                        acquisitions.incrementAndGet();
+                        return true;
+                    }
+                }
+                componentLock.lock.readLock().unlock();
+            }
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+        release(componentName, componentLock);
+        return false;
+    }
+
+    /**
+     * releases the shared lock of the specified component
+     *
+     * @param componentName Kubernetes component identifier
+     */
+    public void unlockShared(String componentName) {
+        unlock(componentName, false);
+    }
+
+    /**
+     * returns the number of components whose locks are currently held or waited for
+     *
+     * @return the number of components whose locks are currently held or waited for
+     */
+    public int getLockedComponents() {
+        return locks.size();
+    }
+
+    /**
+     * returns the number of threads currently waiting for the lock of the specified component
+     *
+     * @param componentName Kubernetes component identifier
+     * @return the number of threads waiting for the lock of the component
+     */
+    public int getWaitingThreads(String componentName) {
+        ComponentLock componentLock = locks.get(componentName);
+        return (componentLock != null) ? componentLock.lock.getQueueLength() : 0;
+    }
+
+    public long getAcquisitions() {
+        return acquisitions.get();
+    }
+
+    /**
+     * returns the number of lock acquisitions which had to wait for another thread
+     *
+     * @return the number of lock acquisitions which had to wait for another thread
+     */
+    public long getContendedAcquisitions() {
+        return contendedAcquisitions.get();
+    }
+
+    /**
+     * returns the average time waited per lock acquisition, including the uncontended ones
+     *
+     * @return the average time waited per lock acquisition
+     */
+    public long getAverageWaitTimeInMilliseconds() {
+        long acquired = acquisitions.get();
+        return (acquired > 0) ? (totalWaitTimeInMilliseconds.get() / acquired) : 0;
+    }
+
+    /**
+     * returns the longest time waited for a lock
+     *
+     * @return the longest time waited for a lock
+     */
+    public long getMaxWaitTimeInMilliseconds() {
+        return maxWaitTimeInMilliseconds.get();
+    }
+
+    public String toString() {
+        return String.format("[locked-components] %d [acquisitions] %d [contended-acquisitions] %d "
+                        + "[average-wait] %d ms [max-wait] %d ms", getLockedComponents(), getAcquisitions(),
+                getContendedAcquisitions(), getAverageWaitTimeInMilliseconds(), getMaxWaitTimeInMilliseconds());
+    }
+
+    private ComponentLock lock(String componentName, boolean exclusive) throws WebArtifactHandlerException {
+        ComponentLock componentLock = reference(componentName);
+        Lock lock = exclusive ? componentLock.lock.writeLock() : componentLock.lock.readLock();
+        // the thread holding the exclusive lock has already waited for the leases
+        boolean reentered = componentLock.lock.isWriteLockedByCurrentThread();
+        long startTime = System.currentTimeMillis();
+        boolean contended = false;
+        try {
+            // unlike tryLock(), a timed attempt does not barge ahead of a thread waiting for the exclusive lock
+            if (!lock.tryLock(0, TimeUnit.MILLISECONDS)) {
+                contended = true;
+                lock.lockInterruptibly();
+            }
+        } catch (InterruptedException exception) {
+            release(componentName, componentLock);
+            throw createInterruptedException(componentName, exception);
+        }
+        if (!reentered) {
+            try {
+                synchronized (componentLock) {
+                    // the lock is held meanwhile, hence no further conflicting lease is taken
+                    while ((componentLock.exclusiveLease) || ((exclusive) && (componentLock.sharedLeases > 0))) {
+                        contended = true;
+                        componentLock.wait();
+                    }
+                }
+            } catch (InterruptedException exception) {
+                lock.unlock();
+                release(componentName, componentLock);
+                throw createInterruptedException(componentName, exception);
+            }
+        }
+        if (contended) {
+            recordWaitTime(componentName, System.currentTimeMillis() - startTime);
+        } else {
+            acquisitions.incrementAndGet();
+        }
+        return componentLock;
+    }
+
+    private Lease lease(String componentName, boolean exclusive) throws WebArtifactHandlerException {
+        ComponentLock componentLock = lock(componentName, exclusive);
+        synchronized (componentLock) {
+            if (exclusive) {
+                componentLock.exclusiveLease = true;
+            } else {
+                componentLock.sharedLeases++;
+            }
+        }
+        // the lease keeps the lock referenced, but not held by the thread
+        if (exclusive) {
+            componentLock.lock.writeLock().unlock();
+        } else {
+            componentLock.lock.readLock().unlock();
+        }
+        return new Lease(componentName, componentLock, exclusive);
+    }
+
+    private WebArtifactHandlerException createInterruptedException(String componentName,
+            InterruptedException exception) {
+        Thread.currentThread().interrupt();
+        String message = String.format("Interrupted while waiting for the lock of [component] %s.", componentName);
+        LOG.error(message, exception);
+        return new WebArtifactHandlerException(message, exception);
+    }
+
+    private void unlock(String componentName, boolean exclusive) {
+        ComponentLock componentLock = locks.get(componentName);
+        if (componentLock == null) {
+            throw new IllegalMonitorStateException(String.format("The lock of [component] %s is not held.",
+                    componentName));
+        }
+        if (exclusive) {
+            componentLock.lock.writeLock().unlock();
+        } else {
+            componentLock.lock.readLock().unlock();
+        }
+        release(componentName, componentLock);
+    }
+
+    /**
+     * returns the lock of the specified component, counting the caller as one of its users
+     *
+     * @param componentName Kubernetes component identifier
+     * @return the lock of the component
+     */
+    private ComponentLock reference(String componentName) {
+        while (true) {
+            ComponentLock componentLock = locks.get(componentName);
+            if (componentLock == null) {
+                ComponentLock newComponentLock = new ComponentLock();
+                componentLock = locks.putIfAbsent(componentName, newComponentLock);
+                if (componentLock == null) {
+                    componentLock = newComponentLock;
+                }
+            }
+            synchronized (componentLock) {
+                // a lock whose last user has just released it has been dropped, hence a new one is needed
+                if (!componentLock.discarded) {
+                    componentLock.users++;
+                    return componentLock;
+                }
+            }
+        }
+    }
+
+    /**
+     * stops counting the caller as a user of the specified lock, dropping the lock once it has no users
+     *
+     * @param componentName Kubernetes component identifier
+     * @param componentLock the lock of the component
+     */
+    private void release(String componentName, ComponentLock componentLock) {
+        synchronized (componentLock) {
+            componentLock.users--;
+            if (componentLock.users == 0) {
+                componentLock.discarded = true;
+                locks.remove(componentName, componentLock);
+            }
+        }
+    }
+
+    private void recordWaitTime(String componentName, long waitTimeInMilliseconds) {
+        acquisitions.incrementAndGet();
+        contendedAcquisitions.incrementAndGet();
+        totalWaitTimeInMilliseconds.addAndGet(waitTimeInMilliseconds);
+        AtomicMaximum.update(maxWaitTimeInMilliseconds, waitTimeInMilliseconds);
+        if (LOG.isDebugEnabled()) {
+            LOG.debug(String.format("Acquired the lock of [component] %s after waiting %d ms.", componentName,
+                    waitTimeInMilliseconds));
+        }
+    }
+
+    /**
+     * a lock of a component which is not owned by a thread, released once by any thread
+     */
+    public class Lease {
+        private final String componentName;
+        private final ComponentLock componentLock;
+        private final boolean exclusive;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Lease(String componentName, ComponentLock componentLock, boolean exclusive) {
+            this.componentName = componentName;
+            this.componentLock = componentLock;
+            this.exclusive = exclusive;
+        }
+
+        /**
+         * releases the lease, unless it has already been released
+         */
+        public void release() {
+            if (!released.compareAndSet(false, true)) {
+                return;
+            }
+            synchronized (componentLock) {
+                if (exclusive) {
+                    componentLock.exclusiveLease = false;
+                } else {
+                    componentLock.sharedLeases--;
+                }
+                componentLock.notifyAll();
+            }
+            ComponentLocks.this.release(componentName, componentLock);
+        }
+    }
+
+    /**
+     * the lock of a single component, together with the number of threads and leases holding or waiting for it
+     */
+    private static class ComponentLock {
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        // guarded by the ComponentLock instance
+        private int users;
+        private boolean discarded;
+        private int sharedLeases;
+        private boolean exclusiveLease;
+    }
+}
@@ -15,17 +15,33 @@
 */
 package org.wso2.strategy.poc.miscellaneous.helper;
 
+import com.google.common.io.BaseEncoding;
 import org.wso2.strategy.poc.miscellaneous.io.FileOutputThread;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * a Java class which consists of various application specific utility methods
  * which are reusable by more than one class
  */
 public class WebArtifactHandlerHelper {
+    private static final String ARTIFACT_DIGEST_ALGORITHM = "SHA-256";
+    private static final long ARTIFACT_DIGEST_REGION_SIZE = 64L * 1024 * 1024;
+    // build date and time appended to the major version: -year-month-day-millisOfDay
+    private static final Pattern BUILD_SUFFIX_PATTERN = Pattern
+            .compile("-(\\d{4})-(\\d{1,2})-(\\d{1,2})-(\\d+)$");
+
     /**
      * returns an application specific Kubernetes component identifier
      *
@@ -134,6 +150,47 @@ public class WebArtifactHandlerHelper {
         return imageComponents[versionIndex];
     }
 
+    /**
+     * returns the major version component of a build tag (major version followed by the build date and time)
+     * <p>
+     * Only the build suffix appended on deployment is stripped, so that a major version which itself contains
+     * a dash, e.g. 1.0-SNAPSHOT, is kept as it is.
+     *
+     * @param tag Docker image tag
+     * @return the major version component of a build tag
+     */
+    public static String getMajorVersion(String tag) {
+        Matcher buildSuffix = BUILD_SUFFIX_PATTERN.matcher(tag);
+        if ((buildSuffix.find()) && (buildSuffix.start() > 0)) {
+            return tag.substring(0, buildSuffix.start());
+        } else {
+            return tag;
+        }
+    }
+
+    /**
+     * returns the build year, month, day and millisecond of day of a build tag, parsed from the build
+     * suffix appended on deployment, whatever dashes the major version contains
+     *
+     * @param tag Docker image tag
+     * @return the build year, month, day and millisecond of day, or null if the tag is not a build tag
+     */
+    public static long[] getBuildTime(String tag) {
+        Matcher buildSuffix = BUILD_SUFFIX_PATTERN.matcher(tag);
+        if ((!buildSuffix.find()) || (buildSuffix.start() == 0)) {
+            return null;
+        }
+        long[] buildTime = new long[buildSuffix.groupCount()];
+        try {
+            for (int group = 1; group <= buildSuffix.groupCount(); group++) {
+                buildTime[group - 1] = Long.parseLong(buildSuffix.group(group));
+            }
+        } catch (NumberFormatException exception) {
+            return null;
+        }
+        return buildTime;
+    }
+
     /**
      * utility method which writes content to an external file
      *
@@ -144,4 +201,53 @@ public class WebArtifactHandlerHelper {
         FileOutputThread outputThread = new FileOutputThread(filePath.getAbsolutePath(), data);
         outputThread.run();
     }
+
+    /**
+     * utility method which returns the hex encoded SHA-256 digest of the content of the web artifact
+     * <p>
+     * The artifact is digested as a stream of memory-mapped regions, so that the content is neither
+     * copied in to the Java heap nor loaded in to memory as a whole.
+     *
+     * @param artifactPath path to the web artifact
+     * @return the hex encoded SHA-256 digest of the content of the web artifact
+     * @throws IOException
+     * @throws NoSuchAlgorithmException
+     */
+    public static String getArtifactDigest(Path artifactPath) throws IOException, NoSuchAlgorithmException {
+        MessageDigest digest = MessageDigest.getInstance(ARTIFACT_DIGEST_ALGORITHM);
+        try (FileChannel channel = FileChannel.open(artifactPath, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long position = 0;
+            while (position < size) {
+                long regionSize = Math.min(ARTIFACT_DIGEST_REGION_SIZE, size - position);
+                MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, position, regionSize);
+                digest.update(region);
+                position += regionSize;
+            }
+        }
+        return BaseEncoding.base16().lowerCase().encode(digest.digest());
+    }
+
+    /**
+     * utility method which returns the hex encoded SHA-256 digest of a web artifact build, which covers
+     * the content digest of the web artifact and the Dockerfile it is built with
+     * <p>
+     * As the Dockerfile names the digest pinned base image and the way in which the artifact is added,
+     * images of the same build digest share both the web artifact content and the base image.
+     *
+     * @param artifactDigest    content digest of the web artifact
+     * @param dockerFileContent content of the Dockerfile
+     * @return the hex encoded SHA-256 digest of the web artifact build
+     * @throws NoSuchAlgorithmException
+     */
+    public static String getBuildDigest(String artifactDigest, List<String> dockerFileContent)
+            throws NoSuchAlgorithmException {
+        MessageDigest digest = MessageDigest.getInstance(ARTIFACT_DIGEST_ALGORITHM);
+        digest.update(artifactDigest.getBytes(StandardCharsets.UTF_8));
+        for (String line : dockerFileContent) {
+            digest.update((byte) '\n');
+            digest.update(line.getBytes(StandardCharsets.UTF_8));
+        }
+        return BaseEncoding.base16().lowerCase().encode(digest.digest());
+    }
 }
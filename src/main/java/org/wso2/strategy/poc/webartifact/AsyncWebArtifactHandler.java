@@ -0,0 +1,133 @@
+/*
+* Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.wso2.strategy.poc.webartifact;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.wso2.strategy.poc.kubernetes.components.replication_controller.TomcatResourceProfile;
+import org.wso2.strategy.poc.kubernetes.components.service.ServiceExposureMode;
+import org.wso2.strategy.poc.webartifact.interfaces.IAsyncWebArtifactHandler;
+import org.wso2.strategy.poc.webartifact.interfaces.IWebArtifactHandler;
+
+import java.nio.file.Path;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * a Java class which implements the IAsyncWebArtifactHandler interface by running the operations of an
+ * IWebArtifactHandler on an executor
+ * <p>
+ * The executor bounds the number of operations which run at a time, any further operation waits in the
+ * executor's queue without holding a thread. Unless an executor is specified, a fixed pool of daemon
+ * threads is used, which is shut down with the handler.
+ * <p>
+ * Deploys and scales hold a thread of the executor only while they wait for the lock of their component.
+ * They take the lock as a lease, which is released by whichever thread completes them, so that they are
+ * chained onto the futures of the deploy pipeline and the scale request coalescer instead of waiting for
+ * them, e.g. for the replica pods of a deploy to become ready. The other operations still hold a thread
+ * for their whole duration, since they block in the synchronous handler. The size of the executor
+ * therefore bounds the number of those operations, and of the operations waiting for a lock, in progress.
+ */
+public class AsyncWebArtifactHandler implements IAsyncWebArtifactHandler {
+    private final IWebArtifactHandler webArtifactHandler;
+    private final ListeningExecutorService operationExecutor;
+    private final boolean ownsExecutor;
+
+    public static final int DEFAULT_MAX_CONCURRENT_OPERATIONS = 32;
+
+    public AsyncWebArtifactHandler(IWebArtifactHandler webArtifactHandler) {
+        this(webArtifactHandler, Executors.newFixedThreadPool(DEFAULT_MAX_CONCURRENT_OPERATIONS,
+                new ThreadFactoryBuilder().setNameFormat("web-artifact-operation-%d").setDaemon(true).build()), true);
+    }
+
+    /**
+     * @param webArtifactHandler handler which carries out the operations
+     * @param operationExecutor  executor on which the operations run, which remains owned by the caller
+     */
+    public AsyncWebArtifactHandler(IWebArtifactHandler webArtifactHandler, ExecutorService operationExecutor) {
+        this(webArtifactHandler, operationExecutor, false);
+    }
+
+    private AsyncWebArtifactHandler(IWebArtifactHandler webArtifactHandler, ExecutorService operationExecutor,
+            boolean ownsExecutor) {
+        this.webArtifactHandler = webArtifactHandler;
+        this.operationExecutor = MoreExecutors.listeningDecorator(operationExecutor);
+        this.ownsExecutor = ownsExecutor;
+    }
+
+    public ListenableFuture<Boolean> deploy(final String tenant, final String appName, final Path artifactPath,
+            final String version, final int replicas) {
+        return deploy(tenant, appName, artifactPath, version, replicas, null, ServiceExposureMode.NODE_PORT);
+    }
+
+    public ListenableFuture<Boolean> deploy(final String tenant, final String appName, final Path artifactPath,
+            final String version, final int replicas, final TomcatResourceProfile resourceProfile,
+            final ServiceExposureMode exposureMode) {
+        return Futures.dereference(operationExecutor.submit(new Callable<ListenableFuture<Boolean>>() {
+            public ListenableFuture<Boolean> call() throws Exception {
+                return webArtifactHandler.submitDeploy(tenant, appName, artifactPath, version, replicas,
+                        resourceProfile, exposureMode);
+            }
+        }));
+    }
+
+    public ListenableFuture<Boolean> rollBack(final String tenant, final String appName, final String version,
+            final String buildIdentifier) {
+        return operationExecutor.submit(new Callable<Boolean>() {
+            public Boolean call() throws Exception {
+                return webArtifactHandler.rollBack(tenant, appName, version, buildIdentifier);
+            }
+        });
+    }
+
+    public ListenableFuture<Boolean> rollUpdate(final String tenant, final String appName, final String version,
+            final Path artifactPath) {
+        return operationExecutor.submit(new Callable<Boolean>() {
+            public Boolean call() throws Exception {
+                return webArtifactHandler.rollUpdate(tenant, appName, version, artifactPath);
+            }
+        });
+    }
+
+    public ListenableFuture<Boolean> scale(final String tenant, final String appName, final int noOfReplicas) {
+        return Futures.dereference(operationExecutor.submit(new Callable<ListenableFuture<Boolean>>() {
+            public ListenableFuture<Boolean> call() throws Exception {
+                return webArtifactHandler.submitScale(tenant, appName, noOfReplicas);
+            }
+        }));
+    }
+
+    public ListenableFuture<Boolean> remove(final String tenant, final String appName) {
+        return operationExecutor.submit(new Callable<Boolean>() {
+            public Boolean call() throws Exception {
+                return webArtifactHandler.remove(tenant, appName);
+            }
+        });
+    }
+
+    /**
+     * shuts down the executor if it is owned by this handler, interrupting the running operations
+     */
+    public void shutdown() {
+        if (ownsExecutor) {
+            operationExecutor.shutdownNow();
+        }
+    }
+}
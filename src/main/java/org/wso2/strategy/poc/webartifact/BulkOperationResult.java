@@ -0,0 +1,83 @@
+/*
+* Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.wso2.strategy.poc.webartifact;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * the aggregated outcome of a bulk operation, holding the result of each manifest entry in the order of
+ * the manifest and the time taken by the whole operation
+ */
+public class BulkOperationResult {
+    private final List<ManifestEntryResult> entryResults;
+    private final int maxConcurrentOperations;
+    private final long durationInMilliseconds;
+
+    BulkOperationResult(List<ManifestEntryResult> entryResults, int maxConcurrentOperations,
+            long durationInMilliseconds) {
+        this.entryResults = Collections.unmodifiableList(new ArrayList<>(entryResults));
+        this.maxConcurrentOperations = maxConcurrentOperations;
+        this.durationInMilliseconds = durationInMilliseconds;
+    }
+
+    /**
+     * returns the result of each manifest entry, in the order of the manifest
+     *
+     * @return the result of each manifest entry
+     */
+    public List<ManifestEntryResult> getEntryResults() {
+        return entryResults;
+    }
+
+    /**
+     * returns the results of the manifest entries which completed with the specified status
+     *
+     * @param status completion status of the entries
+     * @return the results of the entries which completed with the status
+     */
+    public List<ManifestEntryResult> getEntryResults(ManifestEntryResult.Status status) {
+        List<ManifestEntryResult> results = new ArrayList<>();
+        for (ManifestEntryResult entryResult : entryResults) {
+            if (entryResult.getStatus() == status) {
+                results.add(entryResult);
+            }
+        }
+        return results;
+    }
+
+    public int getMaxConcurrentOperations() {
+        return maxConcurrentOperations;
+    }
+
+    public long getDurationInMilliseconds() {
+        return durationInMilliseconds;
+    }
+
+    public boolean isSuccessful() {
+        return getEntryResults(ManifestEntryResult.Status.FAILED).isEmpty();
+    }
+
+    public String toString() {
+        return String.format("[entries] %d [succeeded] %d [skipped] %d [failed] %d [max-concurrent-operations] %d "
+                        + "[duration] %d ms", entryResults.size(),
+                getEntryResults(ManifestEntryResult.Status.SUCCEEDED).size(),
+                getEntryResults(ManifestEntryResult.Status.SKIPPED).size(),
+                getEntryResults(ManifestEntryResult.Status.FAILED).size(), maxConcurrentOperations,
+                durationInMilliseconds);
+    }
+}
@@ -0,0 +1,683 @@
+/*
+* Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.wso2.strategy.poc.webartifact;
+
+import com.google.common.util.concurrent.ExecutionList;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
+import io.fabric8.kubernetes.api.model.Pod;
+import io.fabric8.kubernetes.api.model.ReplicationController;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.joda.time.DateTime;
+import org.wso2.strategy.poc.docker.ImageBuildResult;
+import org.wso2.strategy.poc.docker.interfaces.IDockerImageHandler;
+import org.wso2.strategy.poc.kubernetes.components.pod.TomcatPodHandler;
+import org.wso2.strategy.poc.kubernetes.components.pod.interfaces.ITomcatPodHandler;
+import org.wso2.strategy.poc.kubernetes.components.replication_controller.TomcatProbeConfiguration;
+import org.wso2.strategy.poc.kubernetes.components.replication_controller.TomcatResourceProfile;
+import org.wso2.strategy.poc.kubernetes.components.replication_controller.interfaces.ITomcatReplicationControllerHandler;
+import org.wso2.strategy.poc.kubernetes.components.service.ServiceExposureMode;
+import org.wso2.strategy.poc.kubernetes.components.service.interfaces.ITomcatServiceHandler;
+import org.wso2.strategy.poc.miscellaneous.concurrency.AtomicMaximum;
+import org.wso2.strategy.poc.miscellaneous.exceptions.WebArtifactHandlerException;
+import org.wso2.strategy.poc.miscellaneous.helper.WebArtifactHandlerHelper;
+
+import java.nio.file.Path;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * a staged deploy engine, through which many web artifact deployments flow as a pipeline
+ * <p>
+ * A deployment passes through the stages in order: preparing its context, building its Docker image,
+ * creating its replication controller, creating its service and waiting for its replica pods to become
+ * ready. Each stage has its own bounded pool of workers and a queue in front of it, so that while one
+ * deployment is building, the Kubernetes stages keep working on the deployments built before it. The
+ * queue depth, the queue wait and the processing latency of each stage are tracked, which points out
+ * the bottleneck stage. If a deployment fails or is cancelled once it has started creating its Kubernetes
+ * resources, e.g. as its replica pods do not become ready in time, the replication controller and the
+ * service it created are removed again.
+ */
+public class DeployPipeline {
+    private final IDockerImageHandler imageBuilder;
+    private final ITomcatPodHandler podHandler;
+    private final ITomcatReplicationControllerHandler replicationControllerHandler;
+    private final ITomcatServiceHandler serviceHandler;
+    private final ImageGarbageCollector imageGarbageCollector;
+    private final Map<Stage, StageExecutor> stageExecutors = new EnumMap<>(Stage.class);
+    // the deployments which have not yet left the pipeline, keyed by their outcome
+    private final ConcurrentMap<ListenableFuture<Boolean>, Deployment> pendingDeployments =
+            new ConcurrentHashMap<>();
+    private volatile long buildTimeoutInMilliseconds = DEFAULT_BUILD_TIMEOUT_IN_MILLISECONDS;
+    private volatile long readyTimeoutInMilliseconds = DEFAULT_READY_TIMEOUT_IN_MILLISECONDS;
+
+    public static final long DEFAULT_BUILD_TIMEOUT_IN_MILLISECONDS = 30 * 60 * 1000;
+    public static final long DEFAULT_READY_TIMEOUT_IN_MILLISECONDS = 10 * 60 * 1000;
+    private static final int DEFAULT_CLUSTER_STAGE_WORKERS = 4;
+    // waiting for readiness mostly sleeps between polls, hence more deployments may wait at once
+    private static final int DEFAULT_WAIT_READY_STAGE_WORKERS = 16;
+    private static final long READY_POLL_INTERVAL_IN_MILLISECONDS = 2000;
+    private static final Logger LOG = LogManager.getLogger(DeployPipeline.class);
+
+    /**
+     * the stages of a deployment, in the order in which a deployment passes through them
+     */
+    public enum Stage {
+        PREPARE, BUILD, CREATE_REPLICATION_CONTROLLER, CREATE_SERVICE, WAIT_READY
+    }
+
+    /**
+     * @param imageBuilder                 Docker image handler
+     * @param podHandler                   pod handler
+     * @param replicationControllerHandler replication controller handler
+     * @param serviceHandler               service handler
+     * @param imageGarbageCollector        garbage collector which tracks the Docker image builds
+     */
+    public DeployPipeline(IDockerImageHandler imageBuilder, ITomcatPodHandler podHandler,
+            ITomcatReplicationControllerHandler replicationControllerHandler, ITomcatServiceHandler serviceHandler,
+            ImageGarbageCollector imageGarbageCollector) {
+        this.imageBuilder = imageBuilder;
+        this.podHandler = podHandler;
+        this.replicationControllerHandler = replicationControllerHandler;
+        this.serviceHandler = serviceHandler;
+        this.imageGarbageCollector = imageGarbageCollector;
+        stageExecutors.put(Stage.PREPARE, new StageExecutor(Stage.PREPARE, DEFAULT_CLUSTER_STAGE_WORKERS));
+        // more build workers than concurrent builds allowed by the Docker endpoint would only wait on it
+        stageExecutors.put(Stage.BUILD,
+                new StageExecutor(Stage.BUILD, imageBuilder.getBuildExecutor().getMaxConcurrentBuilds()));
+        stageExecutors.put(Stage.CREATE_REPLICATION_CONTROLLER,
+                new StageExecutor(Stage.CREATE_REPLICATION_CONTROLLER, DEFAULT_CLUSTER_STAGE_WORKERS));
+        stageExecutors.put(Stage.CREATE_SERVICE,
+                new StageExecutor(Stage.CREATE_SERVICE, DEFAULT_CLUSTER_STAGE_WORKERS));
+        stageExecutors.put(Stage.WAIT_READY, new StageExecutor(Stage.WAIT_READY, DEFAULT_WAIT_READY_STAGE_WORKERS));
+    }
+
+    /**
+     * queues the deployment of a web artifact at the first stage of the pipeline
+     *
+     * @param tenant             tenant which deploys the web artifact
+     * @param appName            name of the web artifact
+     * @param artifactPath       path to the web artifact
+     * @param version            major version of the web artifact
+     * @param replicas           number of replica pods
+     * @param probeConfiguration readiness and liveness probes of the Tomcat container
+     * @param resourceProfile    resource requests, limits and JVM options of the Tomcat container, null for none
+     * @param exposureMode       the way in which the service is exposed outside the cluster
+     * @return a future which yields true once the replica pods are ready, false if the version has already been
+     * deployed, or fails with the cause of the failed stage
+     */
+    public ListenableFuture<Boolean> submit(String tenant, String appName, Path artifactPath, String version,
+            int replicas, TomcatProbeConfiguration probeConfiguration, TomcatResourceProfile resourceProfile,
+            ServiceExposureMode exposureMode) {
+        final Deployment deployment = new Deployment(tenant, appName, artifactPath, version, replicas,
+                probeConfiguration, resourceProfile, exposureMode);
+        pendingDeployments.put(deployment.outcome, deployment);
+        deployment.outcome.addListener(new Runnable() {
+            public void run() {
+                // a deployment whose outcome is cancelled by its submitter is not gone on with
+                if (deployment.outcome.isCancelled()) {
+                    deployment.cancel();
+                }
+            }
+        }, MoreExecutors.sameThreadExecutor());
+        stageExecutors.get(Stage.PREPARE).submit(deployment);
+        return deployment.outcome;
+    }
+
+    /**
+     * cancels the specified deployment and waits until the pipeline has stopped working on it
+     * <p>
+     * The current stage of the deployment is interrupted and the following stages are skipped. Once this
+     * returns, no stage of the deployment changes the cluster any more, hence the lock of the component
+     * may be released.
+     *
+     * @param outcome the future returned on the submission of the deployment
+     */
+    public void cancel(ListenableFuture<Boolean> outcome) {
+        Deployment deployment = pendingDeployments.get(outcome);
+        if (deployment == null) {
+            return;
+        }
+        deployment.cancel();
+        deployment.outcome.cancel(false);
+        Uninterruptibles.awaitUninterruptibly(deployment.released);
+    }
+
+    /**
+     * runs the specified listener once the pipeline has stopped working on the specified deployment, right
+     * away if it already has
+     * <p>
+     * The pipeline stops working on a deployment only once a failed deployment has been rolled back, or
+     * once the stage of a cancelled deployment has returned, which may be after its outcome completes.
+     *
+     * @param outcome  the future returned on the submission of the deployment
+     * @param listener the listener to be run
+     */
+    public void addReleaseListener(ListenableFuture<Boolean> outcome, Runnable listener) {
+        Deployment deployment = pendingDeployments.get(outcome);
+        if (deployment == null) {
+            listener.run();
+            return;
+        }
+        deployment.releaseListeners.add(listener, MoreExecutors.sameThreadExecutor());
+    }
+
+    /**
+     * returns the executor of the specified stage, which holds its worker pool size, queue depth and latencies
+     *
+     * @param stage the stage
+     * @return the executor of the stage
+     */
+    public StageExecutor getStageExecutor(Stage stage) {
+        return stageExecutors.get(stage);
+    }
+
+    /**
+     * returns the stage whose workers have been busiest, i.e. which has spent the most processing time
+     * per worker, which is the stage that bounds the throughput of the pipeline
+     * <p>
+     * The time the wait ready stage sleeps between polls of the replica pods is not counted, since its
+     * workers are idle meanwhile, else the stage would almost always be reported as the bottleneck.
+     *
+     * @return the busiest stage
+     */
+    public Stage getBottleneckStage() {
+        Stage bottleneck = Stage.PREPARE;
+        double maxBusyTime = -1;
+        for (StageExecutor stageExecutor : stageExecutors.values()) {
+            double busyTime = (double) stageExecutor.getBusyTimeInMilliseconds() / stageExecutor.getWorkers();
+            if (busyTime > maxBusyTime) {
+                maxBusyTime = busyTime;
+                bottleneck = stageExecutor.stage;
+            }
+        }
+        return bottleneck;
+    }
+
+    /**
+     * sets the maximum time to wait for the Docker image of a deployment to be built
+     *
+     * @param buildTimeoutInMilliseconds maximum time to wait for the Docker image to be built
+     */
+    public void setBuildTimeout(long buildTimeoutInMilliseconds) {
+        this.buildTimeoutInMilliseconds = buildTimeoutInMilliseconds;
+    }
+
+    /**
+     * sets the maximum time to wait for the replica pods of a deployment to become ready
+     *
+     * @param readyTimeoutInMilliseconds maximum time to wait for the replica pods to become ready
+     */
+    public void setReadyTimeout(long readyTimeoutInMilliseconds) {
+        this.readyTimeoutInMilliseconds = readyTimeoutInMilliseconds;
+    }
+
+    /**
+     * stops the workers of all stages, the deployments which have not yet finished fail with a
+     * {@link CancellationException}
+     */
+    public void shutdown() {
+        for (StageExecutor stageExecutor : stageExecutors.values()) {
+            for (Runnable task : stageExecutor.threadPool.shutdownNow()) {
+                // the deployments drained from the queues never run again, hence they leave the pipeline here
+                if (task instanceof StageExecutor.StageTask) {
+                    Deployment deployment = ((StageExecutor.StageTask) task).deployment;
+                    deployment.outcome.setException(createShutdownException(deployment));
+                    release(deployment);
+                }
+            }
+        }
+        // the deployments in flight leave the pipeline once their interrupted stage returns
+        for (Deployment deployment : pendingDeployments.values()) {
+            deployment.outcome.setException(createShutdownException(deployment));
+        }
+    }
+
+    public String toString() {
+        StringBuilder stages = new StringBuilder();
+        for (StageExecutor stageExecutor : stageExecutors.values()) {
+            stages.append(' ').append(stageExecutor);
+        }
+        return String.format("[bottleneck-stage] %s%s", getBottleneckStage(), stages);
+    }
+
+    private static CancellationException createShutdownException(Deployment deployment) {
+        return new CancellationException(String.format("The deploy pipeline has been shut down before the "
+                + "deployment of [component] %s finished.", deployment.componentName));
+    }
+
+    /**
+     * marks the specified deployment as no longer worked on by the pipeline
+     *
+     * @param deployment the deployment
+     */
+    private void release(Deployment deployment) {
+        pendingDeployments.remove(deployment.outcome);
+        deployment.released.countDown();
+        deployment.releaseListeners.execute();
+    }
+
+    /**
+     * runs the specified stage of a deployment
+     *
+     * @param stage      the stage
+     * @param deployment the deployment
+     * @return true if the deployment should proceed to the next stage, false if it has finished
+     * @throws Exception if the stage fails
+     */
+    private boolean process(Stage stage, Deployment deployment) throws Exception {
+        switch (stage) {
+        case PREPARE:
+            return prepare(deployment);
+        case BUILD:
+            build(deployment);
+            return true;
+        case CREATE_REPLICATION_CONTROLLER:
+            // an existing replication controller is kept as it is, hence it is not rolled back either
+            deployment.createdReplicationController = replicationControllerHandler
+                    .createReplicationController(deployment.componentName, deployment.componentName,
+                            deployment.dockerImageName, deployment.replicas, deployment.probeConfiguration,
+                            deployment.resourceProfile);
+            return true;
+        case CREATE_SERVICE:
+            deployment.createdService = serviceHandler
+                    .createService(deployment.componentName, deployment.componentName,
+                            deployment.exposureMode, WebArtifactHandlerHelper.getArtifactName(deployment.artifactPath));
+            return true;
+        case WAIT_READY:
+            waitUntilReady(deployment);
+            return false;
+        default:
+            throw new IllegalStateException(String.format("Unknown deployment [stage] %s.", stage));
+        }
+    }
+
+    private boolean prepare(Deployment deployment) throws WebArtifactHandlerException {
+        if (imageBuilder.getExistingImages(deployment.tenant, deployment.appName, deployment.version).size() > 0) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug(String.format("Skipping the deployment of [component] %s, [version] %s has already been "
+                        + "deployed.", deployment.componentName, deployment.version));
+            }
+            return false;
+        }
+        // append build date and time to major version
+        DateTime dateTime = new DateTime();
+        String now = dateTime.getYear() + "-" + dateTime.getMonthOfYear() + "-" + dateTime.getDayOfMonth() + "-"
+                + dateTime.getMillisOfDay();
+        deployment.version += ("-" + now);
+        return true;
+    }
+
+    private void build(Deployment deployment) throws WebArtifactHandlerException {
+        ImageBuildResult buildResult = imageBuilder
+                .buildImage(deployment.tenant, deployment.appName, deployment.version, deployment.artifactPath,
+                        buildTimeoutInMilliseconds);
+        if (buildResult == null) {
+            throw new WebArtifactHandlerException(String.format("Could not generate the Docker image identifier "
+                    + "of [component] %s.", deployment.componentName));
+        }
+        if (!buildResult.isSuccessful()) {
+            throw new WebArtifactHandlerException(buildResult.getMessage());
+        }
+        deployment.dockerImageName = buildResult.getDockerImageName();
+        imageGarbageCollector.track(deployment.tenant, deployment.appName);
+    }
+
+    private void waitUntilReady(Deployment deployment) throws WebArtifactHandlerException, InterruptedException {
+        if (deployment.replicas == 0) {
+            return;
+        }
+        long deadline = System.currentTimeMillis() + readyTimeoutInMilliseconds;
+        while (true) {
+            ReplicationController replicationController = replicationControllerHandler
+                    .getReplicationController(deployment.componentName);
+            if (replicationController == null) {
+                throw new WebArtifactHandlerException(String.format("Could not find the replication controller"
+                        + "[rc-identifier]: %s.", deployment.componentName));
+            }
+            int readyPods = 0;
+            for (Pod pod : podHandler.getReplicaPods(replicationController)) {
+                if (TomcatPodHandler.isReady(pod)) {
+                    readyPods++;
+                }
+            }
+            if (readyPods >= deployment.replicas) {
+                return;
+            }
+            if (System.currentTimeMillis() > deadline) {
+                throw new WebArtifactHandlerException(String.format("Timed out after %d ms waiting for the replica "
+                                + "pods of [component] %s to become ready [ready-pods] %d [replicas] %d.",
+                        readyTimeoutInMilliseconds, deployment.componentName, readyPods, deployment.replicas));
+            }
+            // the polling sleep is idle time of the worker, which does not bound the throughput of the stage
+            long sleepStartTime = System.currentTimeMillis();
+            try {
+                Thread.sleep(READY_POLL_INTERVAL_IN_MILLISECONDS);
+            } finally {
+                stageExecutors.get(Stage.WAIT_READY).totalIdleTimeInMilliseconds
+                        .addAndGet(System.currentTimeMillis() - sleepStartTime);
+            }
+        }
+    }
+
+    /**
+     * checks whether the specified stage runs once the deployment may have created Kubernetes resources,
+     * hence whether a failure at the stage should roll the deployment back
+     *
+     * @param stage the stage
+     * @return true if the stage runs from the creation of the replication controller on, else false
+     */
+    private static boolean createsResources(Stage stage) {
+        return stage.compareTo(Stage.CREATE_REPLICATION_CONTROLLER) >= 0;
+    }
+
+    /**
+     * removes the replication controller and the service which the specified deployment has created, so that
+     * a failed or cancelled deployment leaves nothing behind
+     *
+     * @param deployment the deployment
+     */
+    private void rollBack(Deployment deployment) {
+        try {
+            if (deployment.createdReplicationController) {
+                replicationControllerHandler.updateNoOfReplicas(deployment.componentName, 0);
+                replicationControllerHandler.deleteReplicationController(deployment.componentName);
+            }
+            if (deployment.createdService) {
+                serviceHandler.deleteService(deployment.componentName);
+            }
+        } catch (WebArtifactHandlerException exception) {
+            LOG.error(String.format("Could not roll back the deployment of [component] %s.",
+                    deployment.componentName), exception);
+        }
+    }
+
+    /**
+     * a bounded pool of workers which runs a single stage of the deployments, fed by its own queue
+     */
+    public class StageExecutor {
+        private final Stage stage;
+        private final ThreadPoolExecutor threadPool;
+        private final AtomicLong processedDeployments = new AtomicLong();
+        private final AtomicLong failedDeployments = new AtomicLong();
+        private final AtomicLong totalWaitTimeInMilliseconds = new AtomicLong();
+        private final AtomicLong totalLatencyInMilliseconds = new AtomicLong();
+        private final AtomicLong maxLatencyInMilliseconds = new AtomicLong();
+        private final AtomicLong totalIdleTimeInMilliseconds = new AtomicLong();
+
+        private StageExecutor(Stage stage, int workers) {
+            this.stage = stage;
+            threadPool = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ThreadFactoryBuilder()
+                    .setNameFormat("deploy-" + stage.name().toLowerCase().replace('_', '-') + "-%d").setDaemon(true)
+                    .build());
+        }
+
+        /**
+         * queues the specified deployment at this stage
+         *
+         * @param deployment the deployment
+         */
+        private void submit(final Deployment deployment) {
+            try {
+                threadPool.execute(new StageTask(deployment));
+            } catch (RejectedExecutionException exception) {
+                deployment.outcome.setException(exception);
+                release(deployment);
+            }
+        }
+
+        public Stage getStage() {
+            return stage;
+        }
+
+        /**
+         * sets the number of workers of the stage
+         *
+         * @param workers number of workers of the stage
+         */
+        public synchronized void setWorkers(int workers) {
+            if (workers < 1) {
+                throw new IllegalArgumentException("Number of stage workers should be at least one.");
+            }
+            if (workers > threadPool.getMaximumPoolSize()) {
+                threadPool.setMaximumPoolSize(workers);
+                threadPool.setCorePoolSize(workers);
+            } else if (workers < threadPool.getMaximumPoolSize()) {
+                threadPool.setCorePoolSize(workers);
+                threadPool.setMaximumPoolSize(workers);
+            }
+        }
+
+        public int getWorkers() {
+            return threadPool.getMaximumPoolSize();
+        }
+
+        /**
+         * returns the number of deployments waiting in the queue of the stage
+         *
+         * @return the number of deployments waiting in the queue of the stage
+         */
+        public int getQueueDepth() {
+            return threadPool.getQueue().size();
+        }
+
+        /**
+         * returns the number of deployments currently in the stage
+         *
+         * @return the number of deployments currently in the stage
+         */
+        public int getActiveDeployments() {
+            return threadPool.getActiveCount();
+        }
+
+        public long getProcessedDeployments() {
+            return processedDeployments.get();
+        }
+
+        public long getFailedDeployments() {
+            return failedDeployments.get();
+        }
+
+        /**
+         * returns the average time deployments waited in the queue before the stage started on them
+         *
+         * @return the average time deployments waited in the queue of the stage
+         */
+        public long getAverageWaitTimeInMilliseconds() {
+            long processed = processedDeployments.get();
+            return (processed > 0) ? (totalWaitTimeInMilliseconds.get() / processed) : 0;
+        }
+
+        /**
+         * returns the average time the stage took to process a deployment
+         *
+         * @return the average time the stage took to process a deployment
+         */
+        public long getAverageLatencyInMilliseconds() {
+            long processed = processedDeployments.get();
+            return (processed > 0) ? (totalLatencyInMilliseconds.get() / processed) : 0;
+        }
+
+        /**
+         * returns the longest time the stage took to process a deployment
+         *
+         * @return the longest time the stage took to process a deployment
+         */
+        public long getMaxLatencyInMilliseconds() {
+            return maxLatencyInMilliseconds.get();
+        }
+
+        /**
+         * returns the total time the workers of the stage spent processing deployments, less the time they
+         * slept while waiting on the cluster
+         *
+         * @return the total time the workers of the stage were busy
+         */
+        public long getBusyTimeInMilliseconds() {
+            return Math.max(0, totalLatencyInMilliseconds.get() - totalIdleTimeInMilliseconds.get());
+        }
+
+        public String toString() {
+            return String.format("[stage] %s [workers] %d [active] %d [queue-depth] %d [processed] %d [failed] %d "
+                            + "[average-wait] %d ms [average-latency] %d ms [max-latency] %d ms [busy-time] %d ms",
+                    stage, getWorkers(), getActiveDeployments(), getQueueDepth(), getProcessedDeployments(),
+                    getFailedDeployments(), getAverageWaitTimeInMilliseconds(), getAverageLatencyInMilliseconds(),
+                    getMaxLatencyInMilliseconds(), getBusyTimeInMilliseconds());
+        }
+
+        /**
+         * runs this stage of a single deployment, then hands it off to the next stage
+         */
+        private class StageTask implements Runnable {
+            private final Deployment deployment;
+            private final long queuedTime = System.currentTimeMillis();
+
+            private StageTask(Deployment deployment) {
+                this.deployment = deployment;
+            }
+
+            public void run() {
+                long startTime = System.currentTimeMillis();
+                totalWaitTimeInMilliseconds.addAndGet(startTime - queuedTime);
+                if (!deployment.start()) {
+                    // the deployment has been cancelled while it waited in the queue
+                    if (createsResources(stage)) {
+                        rollBack(deployment);
+                    }
+                    release(deployment);
+                    return;
+                }
+                boolean proceed;
+                try {
+                    proceed = process(stage, deployment);
+                } catch (Exception exception) {
+                    deployment.stop();
+                    // rolled back before the interrupt is restored and before the outcome releases the component
+                    if (createsResources(stage)) {
+                        rollBack(deployment);
+                    }
+                    if (exception instanceof InterruptedException) {
+                        Thread.currentThread().interrupt();
+                    }
+                    failedDeployments.incrementAndGet();
+                    recordLatency(System.currentTimeMillis() - startTime);
+                    LOG.error(String.format("Deployment of [component] %s failed at [stage] %s.",
+                            deployment.componentName, stage), exception);
+                    deployment.outcome.setException(exception);
+                    release(deployment);
+                    return;
+                }
+                deployment.stop();
+                recordLatency(System.currentTimeMillis() - startTime);
+                if (!proceed) {
+                    deployment.outcome.set(stage == Stage.WAIT_READY);
+                    release(deployment);
+                } else {
+                    stageExecutors.get(Stage.values()[stage.ordinal() + 1]).submit(deployment);
+                }
+            }
+        }
+
+        private void recordLatency(long latencyInMilliseconds) {
+            processedDeployments.incrementAndGet();
+            totalLatencyInMilliseconds.addAndGet(latencyInMilliseconds);
+            AtomicMaximum.update(maxLatencyInMilliseconds, latencyInMilliseconds);
+        }
+    }
+
+    /**
+     * the context of a single deployment, carried from stage to stage
+     */
+    private static class Deployment {
+        private final String tenant;
+        private final String appName;
+        private final String componentName;
+        private final Path artifactPath;
+        private final int replicas;
+        private final TomcatProbeConfiguration probeConfiguration;
+        private final TomcatResourceProfile resourceProfile;
+        private final ServiceExposureMode exposureMode;
+        private final SettableFuture<Boolean> outcome = SettableFuture.create();
+        // counted down once the pipeline has stopped working on the deployment
+        private final CountDownLatch released = new CountDownLatch(1);
+        private final ExecutionList releaseListeners = new ExecutionList();
+        private boolean cancelled;
+        // the worker running the current stage of the deployment, null while the deployment is queued
+        private Thread worker;
+        // set by the prepare and build stages, read by the following stages after the queue hand off
+        private volatile String version;
+        private volatile String dockerImageName;
+        // set by the creating stages, read by the wait ready stage to roll back what the deployment created
+        private volatile boolean createdReplicationController;
+        private volatile boolean createdService;
+
+        private Deployment(String tenant, String appName, Path artifactPath, String version, int replicas,
+                TomcatProbeConfiguration probeConfiguration, TomcatResourceProfile resourceProfile,
+                ServiceExposureMode exposureMode) {
+            this.tenant = tenant;
+            this.appName = appName;
+            this.componentName = WebArtifactHandlerHelper.generateKubernetesComponentIdentifier(tenant, appName);
+            this.artifactPath = artifactPath;
+            this.version = version;
+            this.replicas = replicas;
+            this.probeConfiguration = probeConfiguration;
+            this.resourceProfile = resourceProfile;
+            this.exposureMode = exposureMode;
+        }
+
+        /**
+         * binds the deployment to the current worker for the duration of a stage
+         *
+         * @return true if the stage should run, false if the deployment has been cancelled
+         */
+        private synchronized boolean start() {
+            if (cancelled) {
+                return false;
+            }
+            worker = Thread.currentThread();
+            return true;
+        }
+
+        private synchronized void stop() {
+            worker = null;
+            if (cancelled) {
+                // an interrupt meant for this deployment should not leak into the next task of the worker
+                Thread.interrupted();
+            }
+        }
+
+        private synchronized void cancel() {
+            cancelled = true;
+            if (worker != null) {
+                worker.interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,342 @@
+/*
+* Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.wso2.strategy.poc.webartifact;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.fabric8.kubernetes.api.model.Container;
+import io.fabric8.kubernetes.api.model.ReplicationController;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.wso2.strategy.poc.docker.interfaces.IDockerImageHandler;
+import org.wso2.strategy.poc.kubernetes.components.replication_controller.interfaces.ITomcatReplicationControllerHandler;
+import org.wso2.strategy.poc.miscellaneous.concurrency.ComponentLocks;
+import org.wso2.strategy.poc.miscellaneous.exceptions.WebArtifactHandlerException;
+import org.wso2.strategy.poc.miscellaneous.helper.WebArtifactHandlerHelper;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * a background garbage collector which removes old Docker image builds of the deployed web artifacts
+ * according to a per tenant/app retention policy
+ * <p>
+ * The most recent builds of each web artifact, as many as its retention policy specifies, are kept
+ * together with any image the web artifact's replication controller references. The replication
+ * controller is re-read right before each batch of removals, so the image currently set in its pod
+ * template is never removed. Each batch holds the shared lock of the web artifact's component, so that
+ * no roll back or roll update can switch the pod template to an image of the batch in between, and the
+ * batches of a component locked by such an operation are left to the following collection. Collection
+ * runs on a minimum priority thread and pauses between batches. Besides the web artifacts deployed by
+ * this process, each scheduled collection tracks those whose images have been built on the Docker
+ * endpoint before, so that their old builds are collected after a restart as well.
+ */
+public class ImageGarbageCollector {
+    private final IDockerImageHandler imageHandler;
+    private final ITomcatReplicationControllerHandler replicationControllerHandler;
+    private final int defaultRetainedBuilds;
+    private final ComponentLocks componentLocks;
+    // creator/artifact name -> retention policy
+    private final ConcurrentMap<String, RetentionPolicy> retentionPolicies = new ConcurrentHashMap<>();
+    private final AtomicLong totalReclaimedBytes = new AtomicLong();
+    private ScheduledExecutorService collectorExecutor;
+
+    private static final int REMOVAL_BATCH_SIZE = 10;
+    private static final long BATCH_PAUSE_IN_MILLISECONDS = 1000;
+    private static final Logger LOG = LogManager.getLogger(ImageGarbageCollector.class);
+
+    public ImageGarbageCollector(IDockerImageHandler imageHandler,
+            ITomcatReplicationControllerHandler replicationControllerHandler, int defaultRetainedBuilds) {
+        this(imageHandler, replicationControllerHandler, defaultRetainedBuilds, new ComponentLocks());
+    }
+
+    /**
+     * @param imageHandler                 Docker image handler
+     * @param replicationControllerHandler replication controller handler
+     * @param defaultRetainedBuilds        number of builds retained by the default retention policy
+     * @param componentLocks               locks of the components, which the operations switching the image
+     *                                     of a component hold exclusively
+     */
+    public ImageGarbageCollector(IDockerImageHandler imageHandler,
+            ITomcatReplicationControllerHandler replicationControllerHandler, int defaultRetainedBuilds,
+            ComponentLocks componentLocks) {
+        if (defaultRetainedBuilds < 1) {
+            throw new IllegalArgumentException("At least one build should be retained.");
+        }
+        this.imageHandler = imageHandler;
+        this.replicationControllerHandler = replicationControllerHandler;
+        this.defaultRetainedBuilds = defaultRetainedBuilds;
+        this.componentLocks = componentLocks;
+    }
+
+    /**
+     * adds the specified web artifact to the collection, under the default retention policy
+     * unless it already has one
+     *
+     * @param tenant  tenant which deployed the web artifact
+     * @param appName name of the web artifact
+     */
+    public void track(String tenant, String appName) {
+        retentionPolicies.putIfAbsent(getRepository(tenant, appName),
+                new RetentionPolicy(tenant, appName, defaultRetainedBuilds));
+    }
+
+    /**
+     * adds the web artifacts of all images built on the Docker endpoint to the collection, e.g. those
+     * deployed before a restart of this process
+     *
+     * @throws WebArtifactHandlerException if the built images cannot be listed
+     */
+    public void trackBuiltRepositories() throws WebArtifactHandlerException {
+        for (String repository : imageHandler.getBuiltRepositories()) {
+            int separatorIndex = repository.indexOf('/');
+            if ((separatorIndex > 0) && (separatorIndex < repository.length() - 1)) {
+                track(repository.substring(0, separatorIndex), repository.substring(separatorIndex + 1));
+            }
+        }
+    }
+
+    /**
+     * sets the number of most recent builds of the specified web artifact to be retained
+     *
+     * @param tenant         tenant which deployed the web artifact
+     * @param appName        name of the web artifact
+     * @param retainedBuilds number of most recent builds to be retained
+     */
+    public void setRetentionPolicy(String tenant, String appName, int retainedBuilds) {
+        if (retainedBuilds < 1) {
+            throw new IllegalArgumentException("At least one build should be retained.");
+        }
+        retentionPolicies.put(getRepository(tenant, appName), new RetentionPolicy(tenant, appName, retainedBuilds));
+    }
+
+    /**
+     * schedules the collection of all tracked web artifacts at a fixed delay
+     *
+     * @param intervalInMinutes delay between two collections
+     */
+    public synchronized void start(long intervalInMinutes) {
+        if (collectorExecutor != null) {
+            return;
+        }
+        collectorExecutor = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("docker-image-gc-%d").setDaemon(true)
+                        .setPriority(Thread.MIN_PRIORITY).build());
+        collectorExecutor.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                try {
+                    try {
+                        trackBuiltRepositories();
+                    } catch (WebArtifactHandlerException exception) {
+                        LOG.error("Could not track the web artifacts of the built Docker images.", exception);
+                    }
+                    collect();
+                } catch (InterruptedException exception) {
+                    Thread.currentThread().interrupt();
+                } catch (Exception exception) {
+                    LOG.error("Could not collect the old Docker image builds.", exception);
+                }
+            }
+        }, intervalInMinutes, intervalInMinutes, TimeUnit.MINUTES);
+    }
+
+    /**
+     * stops the scheduled collection
+     */
+    public synchronized void shutdown() {
+        if (collectorExecutor != null) {
+            collectorExecutor.shutdownNow();
+            collectorExecutor = null;
+        }
+    }
+
+    /**
+     * collects the old builds of all tracked web artifacts
+     *
+     * @return the number of bytes reclaimed
+     * @throws InterruptedException
+     */
+    public long collect() throws InterruptedException {
+        long reclaimedBytes = 0;
+        for (RetentionPolicy policy : retentionPolicies.values()) {
+            try {
+                reclaimedBytes += collect(policy);
+            } catch (WebArtifactHandlerException exception) {
+                LOG.error(String.format("Could not collect the old builds of [repository] %s.",
+                        getRepository(policy.tenant, policy.appName)), exception);
+            }
+        }
+        LOG.info(String.format("Docker image garbage collection reclaimed %d bytes [total-reclaimed] %d bytes.",
+                reclaimedBytes, totalReclaimedBytes.get()));
+        return reclaimedBytes;
+    }
+
+    /**
+     * collects the old builds of the specified web artifact
+     *
+     * @param tenant  tenant which deployed the web artifact
+     * @param appName name of the web artifact
+     * @return the number of bytes reclaimed
+     * @throws WebArtifactHandlerException
+     * @throws InterruptedException
+     */
+    public long collect(String tenant, String appName) throws WebArtifactHandlerException, InterruptedException {
+        RetentionPolicy policy = retentionPolicies.get(getRepository(tenant, appName));
+        if (policy == null) {
+            policy = new RetentionPolicy(tenant, appName, defaultRetainedBuilds);
+        }
+        return collect(policy);
+    }
+
+    /**
+     * returns the number of bytes reclaimed by all collections so far
+     *
+     * @return the number of bytes reclaimed by all collections so far
+     */
+    public long getTotalReclaimedBytes() {
+        return totalReclaimedBytes.get();
+    }
+
+    private long collect(RetentionPolicy policy) throws WebArtifactHandlerException, InterruptedException {
+        String componentName = WebArtifactHandlerHelper
+                .generateKubernetesComponentIdentifier(policy.tenant, policy.appName);
+        List<String> builds = new ArrayList<>();
+        // tags which are not build tags were not created by a deployment, hence are left untouched
+        for (String repoTag : imageHandler.getAllImageTags(policy.tenant, policy.appName)) {
+            if (getBuildTime(repoTag) != null) {
+                builds.add(repoTag);
+            }
+        }
+        if (builds.size() <= policy.retainedBuilds) {
+            return 0;
+        }
+        Collections.sort(builds, new Comparator<String>() {
+            public int compare(String buildOne, String buildTwo) {
+                return compareBuildTimes(buildTwo, buildOne);
+            }
+        });
+        List<String> expiredBuilds = builds.subList(policy.retainedBuilds, builds.size());
+        long reclaimedBytes = 0;
+        for (int batchStart = 0; batchStart < expiredBuilds.size(); batchStart += REMOVAL_BATCH_SIZE) {
+            if (batchStart > 0) {
+                // yields the Docker daemon to deployments in between the batches
+                Thread.sleep(BATCH_PAUSE_IN_MILLISECONDS);
+            }
+            List<String> batch = new ArrayList<>(expiredBuilds
+                    .subList(batchStart, Math.min(batchStart + REMOVAL_BATCH_SIZE, expiredBuilds.size())));
+            // the referenced images are checked and the rest removed without an image switch in between
+            if (!componentLocks.tryLockShared(componentName)) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug(String.format("Deferred collecting the old builds of the locked [component] %s.",
+                            componentName));
+                }
+                break;
+            }
+            try {
+                Set<String> referencedImages;
+                try {
+                    referencedImages = getReferencedImages(componentName);
+                } catch (WebArtifactHandlerException exception) {
+                    // without the referenced images, the image the replication controller runs may be removed
+                    LOG.warn(String.format("Skipped collecting the old builds of [component] %s, its referenced "
+                            + "images could not be determined.", componentName), exception);
+                    break;
+                }
+                batch.removeAll(referencedImages);
+                reclaimedBytes += imageHandler.removeImages(policy.tenant, policy.appName, batch);
+            } finally {
+                componentLocks.unlockShared(componentName);
+            }
+        }
+        totalReclaimedBytes.addAndGet(reclaimedBytes);
+        if (LOG.isDebugEnabled()) {
+            LOG.debug(String.format("Collected the old builds of [repository] %s [retained-builds] %d, "
+                            + "reclaiming %d bytes.", getRepository(policy.tenant, policy.appName),
+                    policy.retainedBuilds, reclaimedBytes));
+        }
+        return reclaimedBytes;
+    }
+
+    /**
+     * returns the Docker images currently set in the pod template of the specified replication controller
+     *
+     * @param componentName name of the replication controller
+     * @return the Docker images currently set in the pod template of the replication controller
+     * @throws WebArtifactHandlerException if the replication controller cannot be read
+     */
+    private Set<String> getReferencedImages(String componentName) throws WebArtifactHandlerException {
+        Set<String> referencedImages = new HashSet<>();
+        ReplicationController replicationController = replicationControllerHandler
+                .getReplicationController(componentName);
+        if ((replicationController != null) && (replicationController.getSpec() != null) && (
+                replicationController.getSpec().getTemplate() != null) && (
+                replicationController.getSpec().getTemplate().getSpec() != null)) {
+            List<Container> containers = replicationController.getSpec().getTemplate().getSpec().getContainers();
+            if (containers != null) {
+                for (Container container : containers) {
+                    referencedImages.add(container.getImage());
+                }
+            }
+        }
+        return referencedImages;
+    }
+
+    private static int compareBuildTimes(String buildOne, String buildTwo) {
+        long[] buildOneTime = getBuildTime(buildOne);
+        long[] buildTwoTime = getBuildTime(buildTwo);
+        for (int index = 0; index < buildOneTime.length; index++) {
+            if (buildOneTime[index] != buildTwoTime[index]) {
+                return (buildOneTime[index] < buildTwoTime[index]) ? -1 : 1;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * returns the build year, month, day and millisecond of day of a build tag
+     *
+     * @param repoTag Docker image repo tag
+     * @return the build year, month, day and millisecond of day, or null if the tag is not a build tag
+     */
+    private static long[] getBuildTime(String repoTag) {
+        return WebArtifactHandlerHelper.getBuildTime(WebArtifactHandlerHelper.getDockerImageVersion(repoTag));
+    }
+
+    private static String getRepository(String tenant, String appName) {
+        return tenant + "/" + appName;
+    }
+
+    private static class RetentionPolicy {
+        private final String tenant;
+        private final String appName;
+        private final int retainedBuilds;
+
+        private RetentionPolicy(String tenant, String appName, int retainedBuilds) {
+            this.tenant = tenant;
+            this.appName = appName;
+            this.retainedBuilds = retainedBuilds;
+        }
+    }
+}
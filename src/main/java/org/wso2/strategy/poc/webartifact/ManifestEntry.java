@@ -0,0 +1,218 @@
+/*
+* Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.wso2.strategy.poc.webartifact;
+
+import org.wso2.strategy.poc.miscellaneous.exceptions.WebArtifactHandlerException;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * a single entry of a bulk operation manifest, naming a web artifact and the operation to be carried
+ * out on it
+ * <p>
+ * A manifest file holds one entry per line, as comma separated fields in the order
+ * tenant,app,version,artifact-path,replicas,operation where the operation is one of deploy, update,
+ * scale and remove. Fields an operation does not use may be left empty, and blank lines and lines
+ * starting with # are ignored. A line which cannot be parsed is read as a malformed entry, which fails
+ * on its own without stopping the other entries.
+ */
+public class ManifestEntry {
+    private final String tenant;
+    private final String appName;
+    private final String version;
+    private final Path artifactPath;
+    private final int replicas;
+    private final Operation operation;
+    private final int lineNumber;
+    private final String error;
+
+    private static final String FIELD_SEPARATOR = ",";
+    private static final String COMMENT_PREFIX = "#";
+    private static final int NUMBER_OF_FIELDS = 6;
+
+    /**
+     * the operations which may be carried out on the web artifact of a manifest entry
+     */
+    public enum Operation {
+        DEPLOY, UPDATE, SCALE, REMOVE
+    }
+
+    /**
+     * @param tenant       name of the tenant
+     * @param appName      name of the app
+     * @param version      version of the web artifact, null for scale and remove
+     * @param artifactPath path to the web artifact, null for scale and remove
+     * @param replicas     number of replicas of the web artifact, ignored by update and remove
+     * @param operation    the operation to be carried out
+     */
+    public ManifestEntry(String tenant, String appName, String version, Path artifactPath, int replicas,
+            Operation operation) {
+        this(tenant, appName, version, artifactPath, replicas, operation, 0, null);
+    }
+
+    private ManifestEntry(String tenant, String appName, String version, Path artifactPath, int replicas,
+            Operation operation, int lineNumber, String error) {
+        this.tenant = tenant;
+        this.appName = appName;
+        this.version = version;
+        this.artifactPath = artifactPath;
+        this.replicas = replicas;
+        this.operation = operation;
+        this.lineNumber = lineNumber;
+        this.error = error;
+    }
+
+    /**
+     * reads the entries of the specified manifest file, in the order in which they appear
+     *
+     * @param manifestPath path to the manifest file
+     * @return the entries of the manifest, including a malformed entry per line which cannot be parsed
+     * @throws WebArtifactHandlerException if the manifest cannot be read
+     */
+    public static List<ManifestEntry> readManifest(Path manifestPath) throws WebArtifactHandlerException {
+        List<ManifestEntry> entries = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(manifestPath, StandardCharsets.UTF_8)) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if ((!line.isEmpty()) && (!line.startsWith(COMMENT_PREFIX))) {
+                    try {
+                        entries.add(parse(line, lineNumber));
+                    } catch (WebArtifactHandlerException exception) {
+                        entries.add(new ManifestEntry(null, null, null, null, 0, null, lineNumber,
+                                exception.getMessage()));
+                    }
+                }
+            }
+        } catch (IOException exception) {
+            String message = String.format("Could not read the manifest[manifest]: %s.", manifestPath);
+            throw new WebArtifactHandlerException(message, exception);
+        }
+        return entries;
+    }
+
+    private static ManifestEntry parse(String line, int lineNumber) throws WebArtifactHandlerException {
+        String[] fields = line.split(FIELD_SEPARATOR, -1);
+        if (fields.length != NUMBER_OF_FIELDS) {
+            throw new WebArtifactHandlerException(String.format("Expected %d fields in [manifest-line] %d, found "
+                    + "%d.", NUMBER_OF_FIELDS, lineNumber, fields.length));
+        }
+        for (int field = 0; field < fields.length; field++) {
+            fields[field] = fields[field].trim();
+        }
+        Operation operation;
+        try {
+            operation = Operation.valueOf(fields[5].toUpperCase());
+        } catch (IllegalArgumentException exception) {
+            throw new WebArtifactHandlerException(String.format("Unknown [operation] %s in [manifest-line] %d.",
+                    fields[5], lineNumber), exception);
+        }
+        if (fields[0].isEmpty() || fields[1].isEmpty()) {
+            throw new WebArtifactHandlerException(String.format("Tenant and app name are required in "
+                    + "[manifest-line] %d.", lineNumber));
+        }
+        boolean usesArtifact = (operation == Operation.DEPLOY) || (operation == Operation.UPDATE);
+        if (usesArtifact && (fields[2].isEmpty() || fields[3].isEmpty())) {
+            throw new WebArtifactHandlerException(String.format("Version and artifact path are required to %s in "
+                    + "[manifest-line] %d.", fields[5], lineNumber));
+        }
+        int replicas = 0;
+        boolean usesReplicas = (operation == Operation.DEPLOY) || (operation == Operation.SCALE);
+        if (usesReplicas) {
+            try {
+                replicas = Integer.parseInt(fields[4]);
+            } catch (NumberFormatException exception) {
+                throw new WebArtifactHandlerException(String.format("Invalid [replicas] %s in [manifest-line] %d.",
+                        fields[4], lineNumber), exception);
+            }
+            if (replicas < 1) {
+                throw new WebArtifactHandlerException(String.format("Replicas should be at least one in "
+                        + "[manifest-line] %d.", lineNumber));
+            }
+        }
+        return new ManifestEntry(fields[0], fields[1], fields[2].isEmpty() ? null : fields[2],
+                fields[3].isEmpty() ? null : Paths.get(fields[3]), replicas, operation, lineNumber, null);
+    }
+
+    public String getTenant() {
+        return tenant;
+    }
+
+    public String getAppName() {
+        return appName;
+    }
+
+    public String getVersion() {
+        return version;
+    }
+
+    public Path getArtifactPath() {
+        return artifactPath;
+    }
+
+    public int getReplicas() {
+        return replicas;
+    }
+
+    public Operation getOperation() {
+        return operation;
+    }
+
+    /**
+     * returns the line of the manifest file from which the entry was read
+     *
+     * @return the line number of the entry, 0 if the entry was not read from a manifest file
+     */
+    public int getLineNumber() {
+        return lineNumber;
+    }
+
+    /**
+     * returns whether the manifest line of the entry could not be parsed, in which case the entry
+     * carries no operation
+     *
+     * @return true if the entry is malformed, else false
+     */
+    public boolean isMalformed() {
+        return error != null;
+    }
+
+    /**
+     * returns the reason why the manifest line of the entry could not be parsed
+     *
+     * @return the parse error, null if the entry is well formed
+     */
+    public String getError() {
+        return error;
+    }
+
+    public String toString() {
+        if (isMalformed()) {
+            return String.format("[manifest-line] %d [malformed] %s", lineNumber, error);
+        }
+        return String.format("[operation] %s [tenant] %s [app] %s [version] %s [replicas] %d", operation, tenant,
+                appName, version, replicas);
+    }
+}
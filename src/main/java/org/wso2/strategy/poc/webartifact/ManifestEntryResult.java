@@ -0,0 +1,90 @@
+/*
+* Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.wso2.strategy.poc.webartifact;
+
+/**
+ * the outcome of carrying out a single entry of a bulk operation manifest, with the time it took
+ */
+public class ManifestEntryResult {
+    private final ManifestEntry entry;
+    private final Status status;
+    private final String message;
+    private final long startOffsetInMilliseconds;
+    private final long durationInMilliseconds;
+
+    /**
+     * the completion status of a manifest entry
+     */
+    public enum Status {
+        // the operation has been carried out
+        SUCCEEDED,
+        // the operation did not apply, e.g. the version has already been deployed or the app is not deployed
+        SKIPPED,
+        FAILED
+    }
+
+    /**
+     * @param entry                     the manifest entry
+     * @param status                    the completion status of the entry
+     * @param message                   reason of the failure or skip, null if the entry succeeded
+     * @param startOffsetInMilliseconds time from the start of the bulk operation to the start of the entry
+     * @param durationInMilliseconds    time taken by the entry
+     */
+    ManifestEntryResult(ManifestEntry entry, Status status, String message, long startOffsetInMilliseconds,
+            long durationInMilliseconds) {
+        this.entry = entry;
+        this.status = status;
+        this.message = message;
+        this.startOffsetInMilliseconds = startOffsetInMilliseconds;
+        this.durationInMilliseconds = durationInMilliseconds;
+    }
+
+    public ManifestEntry getEntry() {
+        return entry;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    /**
+     * returns the reason of the failure or skip of the entry
+     *
+     * @return the reason of the failure or skip, null if the entry succeeded
+     */
+    public String getMessage() {
+        return message;
+    }
+
+    /**
+     * returns the time from the start of the bulk operation to the start of the entry, which includes the
+     * time the entry waited for a free slot within the concurrency limit
+     *
+     * @return the time from the start of the bulk operation to the start of the entry
+     */
+    public long getStartOffsetInMilliseconds() {
+        return startOffsetInMilliseconds;
+    }
+
+    public long getDurationInMilliseconds() {
+        return durationInMilliseconds;
+    }
+
+    public String toString() {
+        return String.format("%s [status] %s [started-after] %d ms [duration] %d ms%s", entry, status,
+                startOffsetInMilliseconds, durationInMilliseconds, (message != null) ? (" [message] " + message) : "");
+    }
+}
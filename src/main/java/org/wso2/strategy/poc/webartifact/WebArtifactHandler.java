@@ -15,111 +15,366 @@
 */
 package org.wso2.strategy.poc.webartifact;
 
-import com.google.common.collect.ImmutableList;
+import com.google.common.base.Function;
+import com.google.common.util.concurrent.FutureFallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.joda.time.DateTime;
+import org.wso2.strategy.poc.autoscaling.FileMetricsSource;
+import org.wso2.strategy.poc.autoscaling.HorizontalAutoscaler;
 import org.wso2.strategy.poc.docker.JavaDockerImageHandler;
 import org.wso2.strategy.poc.docker.interfaces.IDockerImageHandler;
 import org.wso2.strategy.poc.kubernetes.components.pod.TomcatPodHandler;
 import org.wso2.strategy.poc.kubernetes.components.pod.interfaces.ITomcatPodHandler;
+import org.wso2.strategy.poc.kubernetes.components.replication_controller.ScaleRequestCoalescer;
+import org.wso2.strategy.poc.kubernetes.components.replication_controller.TomcatProbeConfiguration;
 import org.wso2.strategy.poc.kubernetes.components.replication_controller.TomcatReplicationControllerHandler;
+import org.wso2.strategy.poc.kubernetes.components.replication_controller.TomcatResourceProfile;
+import org.wso2.strategy.poc.kubernetes.components.replication_controller.TomcatRollingUpdater;
 import org.wso2.strategy.poc.kubernetes.components.replication_controller.interfaces.ITomcatReplicationControllerHandler;
+import org.wso2.strategy.poc.kubernetes.components.service.ServiceExposureMode;
 import org.wso2.strategy.poc.kubernetes.components.service.TomcatServiceHandler;
 import org.wso2.strategy.poc.kubernetes.components.service.interfaces.ITomcatServiceHandler;
+import org.wso2.strategy.poc.kubernetes.rest.KubernetesTransport;
+import org.wso2.strategy.poc.miscellaneous.concurrency.ComponentLocks;
 import org.wso2.strategy.poc.miscellaneous.exceptions.WebArtifactHandlerException;
 import org.wso2.strategy.poc.miscellaneous.helper.WebArtifactHandlerHelper;
 import org.wso2.strategy.poc.webartifact.interfaces.IWebArtifactHandler;
 
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class WebArtifactHandler implements IWebArtifactHandler {
     private final IDockerImageHandler imageBuilder;
     private final ITomcatPodHandler podHandler;
     private final ITomcatReplicationControllerHandler replicationControllerHandler;
     private final ITomcatServiceHandler serviceHandler;
+    private final KubernetesTransport kubernetesTransport;
+    private final ImageGarbageCollector imageGarbageCollector;
+    private volatile TomcatRollingUpdater rollingUpdater;
+    private final HorizontalAutoscaler autoscaler;
+    private final ScaleRequestCoalescer scaleRequestCoalescer;
+    private final DeployPipeline deployPipeline;
+    // operations on the same component are serialized, those on different components run in parallel
+    private final ComponentLocks componentLocks = new ComponentLocks();
+    // Kubernetes component identifier -> probes of the Tomcat container
+    private final ConcurrentMap<String, TomcatProbeConfiguration> probeConfigurations = new ConcurrentHashMap<>();
 
-    private static final int IMAGE_BUILD_DELAY_IN_MILLISECONDS = 2000;
+    private static final int DEFAULT_RETAINED_BUILDS = 5;
+    private static final long IMAGE_GC_INTERVAL_IN_MINUTES = 60;
+    private static final int DEFAULT_MAX_SURGE = 1;
+    private static final int DEFAULT_MAX_UNAVAILABLE = 0;
+    private static final long ROLLING_UPDATE_TIMEOUT_IN_MILLISECONDS = 10 * 60 * 1000;
+    private static final String UTILIZATION_METRICS_FILENAME = "ReplicaUtilization.txt";
+    private static final long AUTOSCALING_INTERVAL_IN_SECONDS = 30;
+    private static final long SCALE_COALESCING_WINDOW_IN_MILLISECONDS = 2000;
+    private static final TomcatProbeConfiguration DEFAULT_PROBE_CONFIGURATION = new TomcatProbeConfiguration(null,
+            null, null);
     private static final Log LOG = LogFactory.getLog(TomcatReplicationControllerHandler.class);
 
     public WebArtifactHandler(String dockerEndpointURL, String kubernetesEndpointURL)
             throws WebArtifactHandlerException {
         imageBuilder = new JavaDockerImageHandler(dockerEndpointURL);
-        podHandler = new TomcatPodHandler(kubernetesEndpointURL);
-        replicationControllerHandler = new TomcatReplicationControllerHandler(kubernetesEndpointURL);
-        serviceHandler = new TomcatServiceHandler(kubernetesEndpointURL);
+        // all Kubernetes handlers share the pooled connections of a single transport
+        kubernetesTransport = KubernetesTransport.getInstance(kubernetesEndpointURL);
+        podHandler = new TomcatPodHandler(kubernetesTransport);
+        replicationControllerHandler = new TomcatReplicationControllerHandler(kubernetesTransport);
+        serviceHandler = new TomcatServiceHandler(kubernetesTransport);
+        imageGarbageCollector = new ImageGarbageCollector(imageBuilder, replicationControllerHandler,
+                DEFAULT_RETAINED_BUILDS, componentLocks);
+        imageGarbageCollector.start(IMAGE_GC_INTERVAL_IN_MINUTES);
+        rollingUpdater = new TomcatRollingUpdater(replicationControllerHandler, podHandler, DEFAULT_MAX_SURGE,
+                DEFAULT_MAX_UNAVAILABLE, ROLLING_UPDATE_TIMEOUT_IN_MILLISECONDS);
+        scaleRequestCoalescer = new ScaleRequestCoalescer(replicationControllerHandler,
+                SCALE_COALESCING_WINDOW_IN_MILLISECONDS);
+        // only web artifacts given a scaling policy are autoscaled, through the coalescer of the manual scales
+        autoscaler = new HorizontalAutoscaler(new FileMetricsSource(UTILIZATION_METRICS_FILENAME),
+                replicationControllerHandler, componentLocks, scaleRequestCoalescer);
+        autoscaler.start(AUTOSCALING_INTERVAL_IN_SECONDS);
+        deployPipeline = new DeployPipeline(imageBuilder, podHandler, replicationControllerHandler, serviceHandler,
+                imageGarbageCollector);
+    }
+
+    /**
+     * sets the bounds within which roll updates and roll backs replace the replica pods
+     *
+     * @param maxSurge       maximum number of pods created above the desired replicas
+     * @param maxUnavailable maximum number of the desired replicas which may be unavailable
+     */
+    public void setRollingUpdateBounds(int maxSurge, int maxUnavailable) {
+        rollingUpdater = new TomcatRollingUpdater(replicationControllerHandler, podHandler, maxSurge, maxUnavailable,
+                ROLLING_UPDATE_TIMEOUT_IN_MILLISECONDS);
+    }
+
+    /**
+     * returns the garbage collector of the old Docker image builds, which holds the per tenant/app
+     * retention policies
+     *
+     * @return the garbage collector of the old Docker image builds
+     */
+    public ImageGarbageCollector getImageGarbageCollector() {
+        return imageGarbageCollector;
+    }
+
+    /**
+     * returns the autoscaler of the web artifacts, which holds the per tenant/app scaling policies
+     *
+     * @return the autoscaler of the web artifacts
+     */
+    public HorizontalAutoscaler getAutoscaler() {
+        return autoscaler;
+    }
+
+    /**
+     * returns the coalescer of the scale requests, which holds the coalescing window and the number of
+     * scale requests coalesced
+     *
+     * @return the coalescer of the scale requests
+     */
+    public ScaleRequestCoalescer getScaleRequestCoalescer() {
+        return scaleRequestCoalescer;
+    }
+
+    /**
+     * returns the staged pipeline through which the deployments flow, which holds the worker pool size,
+     * queue depth and latency of each stage
+     *
+     * @return the staged deploy pipeline
+     */
+    public DeployPipeline getDeployPipeline() {
+        return deployPipeline;
+    }
+
+    /**
+     * returns the locks which serialize the operations on each component, which hold the lock wait times
+     *
+     * @return the locks of the components
+     */
+    public ComponentLocks getComponentLocks() {
+        return componentLocks;
+    }
+
+    /**
+     * sets the readiness and liveness probes of the Tomcat container of the specified web artifact, which
+     * apply to its following deployments
+     *
+     * @param tenant             tenant which deploys the web artifact
+     * @param appName            name of the web artifact
+     * @param probeConfiguration readiness and liveness probes of the Tomcat container
+     */
+    public void setProbeConfiguration(String tenant, String appName, TomcatProbeConfiguration probeConfiguration) {
+        String componentName = WebArtifactHandlerHelper.generateKubernetesComponentIdentifier(tenant, appName);
+        probeConfigurations.put(componentName, probeConfiguration);
+    }
+
+    /**
+     * sets the base URL of the shared ingress front through which web artifacts deployed in the ingress
+     * exposure mode are reached
+     *
+     * @param ingressBaseURL base URL of the shared ingress front
+     */
+    public void setIngressBaseURL(String ingressBaseURL) {
+        serviceHandler.setIngressBaseURL(ingressBaseURL);
+    }
+
+    /**
+     * returns the transport shared by the Kubernetes handlers, which holds the pool size, timeouts and
+     * connection reuse statistics
+     *
+     * @return the transport shared by the Kubernetes handlers
+     */
+    public KubernetesTransport getKubernetesTransport() {
+        return kubernetesTransport;
     }
 
     public boolean deploy(String tenant, String appName, Path artifactPath, String version, int replicas)
             throws WebArtifactHandlerException {
-        String componentName = WebArtifactHandlerHelper.generateKubernetesComponentIdentifier(tenant, appName);
-        String dockerImageName;
+        return deploy(tenant, appName, artifactPath, version, replicas, null, ServiceExposureMode.NODE_PORT);
+    }
+
+    public boolean deploy(String tenant, String appName, Path artifactPath, String version, int replicas,
+            TomcatResourceProfile resourceProfile, ServiceExposureMode exposureMode)
+            throws WebArtifactHandlerException {
+        ListenableFuture<Boolean> outcome = submitDeployment(tenant, appName, artifactPath, version, replicas,
+                resourceProfile, exposureMode);
         try {
-            if (imageBuilder.getExistingImages(tenant, appName, version).size() == 0) {
-                // append build date and time to major version
-                DateTime dateTime = new DateTime();
-                String now = dateTime.getYear() + "-" + dateTime.getMonthOfYear() + "-" + dateTime.getDayOfMonth() + "-"
-                        + dateTime.getMillisOfDay();
-                version += ("-" + now);
-                dockerImageName = imageBuilder.buildImage(tenant, appName, version, artifactPath);
-                Thread.sleep(IMAGE_BUILD_DELAY_IN_MILLISECONDS);
-                replicationControllerHandler
-                        .createReplicationController(componentName, componentName, dockerImageName, replicas);
-                serviceHandler.createService(componentName, componentName);
-                return true;
-            } else {
-                return false;
-            }
-        } catch (Exception exception) {
-            String message = String.format("Failed to deploy web artifact[web-artifact]: %s", artifactPath.toString());
+            return outcome.get();
+        } catch (InterruptedException exception) {
+            // the lock is held until the pipeline stops working on the deployment, which it does not go on with
+            deployPipeline.cancel(outcome);
+            Thread.currentThread().interrupt();
+            String message = String.format("Interrupted while deploying web artifact[web-artifact]: %s",
+                    artifactPath.toString());
             LOG.error(message, exception);
             throw new WebArtifactHandlerException(message, exception);
+        } catch (ExecutionException exception) {
+            String message = String.format("Failed to deploy web artifact[web-artifact]: %s", artifactPath.toString());
+            LOG.error(message, exception.getCause());
+            throw new WebArtifactHandlerException(message, exception);
         }
     }
 
+    public ListenableFuture<Boolean> submitDeploy(String tenant, String appName, final Path artifactPath,
+            String version, int replicas, TomcatResourceProfile resourceProfile, ServiceExposureMode exposureMode)
+            throws WebArtifactHandlerException {
+        ListenableFuture<Boolean> outcome = submitDeployment(tenant, appName, artifactPath, version, replicas,
+                resourceProfile, exposureMode);
+        return Futures.withFallback(outcome, new FutureFallback<Boolean>() {
+            public ListenableFuture<Boolean> create(Throwable throwable) {
+                if (!(throwable instanceof Exception)) {
+                    return Futures.immediateFailedFuture(throwable);
+                }
+                String message = String.format("Failed to deploy web artifact[web-artifact]: %s",
+                        artifactPath.toString());
+                LOG.error(message, throwable);
+                return Futures.immediateFailedFuture(new WebArtifactHandlerException(message, (Exception) throwable));
+            }
+        });
+    }
+
+    private ListenableFuture<Boolean> submitDeployment(String tenant, String appName, Path artifactPath,
+            String version, int replicas, TomcatResourceProfile resourceProfile, ServiceExposureMode exposureMode)
+            throws WebArtifactHandlerException {
+        String componentName = WebArtifactHandlerHelper.generateKubernetesComponentIdentifier(tenant, appName);
+        // a lease, unlike a lock, may be released by the pipeline thread which completes the deployment
+        final ComponentLocks.Lease lease = componentLocks.leaseExclusive(componentName);
+        ListenableFuture<Boolean> outcome;
+        try {
+            // the deployment queues behind the others in the stages of the pipeline
+            outcome = deployPipeline.submit(tenant, appName, artifactPath, version, replicas,
+                    getProbeConfiguration(componentName), resourceProfile, exposureMode);
+        } catch (RuntimeException exception) {
+            lease.release();
+            throw exception;
+        }
+        // the lease is held until the pipeline stops working on the deployment, which may outlast its outcome
+        deployPipeline.addReleaseListener(outcome, new Runnable() {
+            public void run() {
+                lease.release();
+            }
+        });
+        return outcome;
+    }
+
     public boolean rollBack(String tenant, String appName, String version, String buildIdentifier)
             throws WebArtifactHandlerException {
         String componentName = WebArtifactHandlerHelper.generateKubernetesComponentIdentifier(tenant, appName);
-        if ((imageBuilder.getExistingImages(tenant, appName, version).size() > 0)) {
-            replicationControllerHandler.updateImage(componentName, buildIdentifier);
-            podHandler.deleteReplicaPods(replicationControllerHandler.getReplicationController(
-                    WebArtifactHandlerHelper.generateKubernetesComponentIdentifier(tenant, appName)), tenant, appName);
-            return true;
-        } else {
-            return false;
+        componentLocks.lockExclusive(componentName);
+        try {
+            if ((imageBuilder.getExistingImages(tenant, appName, version).size() > 0)) {
+                rollingUpdater.rollOver(componentName, buildIdentifier);
+                return true;
+            } else {
+                return false;
+            }
+        } finally {
+            componentLocks.unlockExclusive(componentName);
         }
     }
 
     public boolean rollUpdate(String tenant, String appName, String version, Path artifactPath)
             throws WebArtifactHandlerException {
         String componentName = WebArtifactHandlerHelper.generateKubernetesComponentIdentifier(tenant, appName);
-        if ((imageBuilder.getExistingImages(tenant, appName, version).size() > 0)) {
-            DateTime dateTime = new DateTime();
-            String now = dateTime.getYear() + "-" + dateTime.getMonthOfYear() + "-" + dateTime.getDayOfMonth() + "-"
-                    + dateTime.getMillisOfDay();
-            version += ("-" + now);
-            String dockerImageName = imageBuilder.buildImage(tenant, appName, version, artifactPath);
-            replicationControllerHandler.updateImage(componentName, dockerImageName);
-            podHandler.deleteReplicaPods(replicationControllerHandler.getReplicationController(
-                    WebArtifactHandlerHelper.generateKubernetesComponentIdentifier(tenant, appName)), tenant, appName);
-            return true;
-        } else {
-            return false;
+        componentLocks.lockExclusive(componentName);
+        try {
+            if ((imageBuilder.getExistingImages(tenant, appName, version).size() > 0)) {
+                DateTime dateTime = new DateTime();
+                String now = dateTime.getYear() + "-" + dateTime.getMonthOfYear() + "-" + dateTime.getDayOfMonth()
+                        + "-" + dateTime.getMillisOfDay();
+                version += ("-" + now);
+                String dockerImageName = imageBuilder.buildImage(tenant, appName, version, artifactPath);
+                imageGarbageCollector.track(tenant, appName);
+                rollingUpdater.rollOver(componentName, dockerImageName);
+                return true;
+            } else {
+                return false;
+            }
+        } finally {
+            componentLocks.unlockExclusive(componentName);
         }
     }
 
     public boolean scale(String tenant, String appName, int noOfReplicas) throws WebArtifactHandlerException {
         String componentName = WebArtifactHandlerHelper.generateKubernetesComponentIdentifier(tenant, appName);
-        if (replicationControllerHandler.getReplicationController(componentName) != null) {
-            replicationControllerHandler.updateNoOfReplicas(componentName, noOfReplicas);
-            return true;
-        } else {
-            return false;
+        try {
+            return submitScale(tenant, appName, noOfReplicas).get();
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            String message = String.format("Interrupted while scaling [component] %s.", componentName);
+            LOG.error(message, exception);
+            throw new WebArtifactHandlerException(message, exception);
+        } catch (ExecutionException exception) {
+            if (exception.getCause() instanceof WebArtifactHandlerException) {
+                // the failure has already been logged
+                throw (WebArtifactHandlerException) exception.getCause();
+            }
+            String message = String.format("Could not scale [component] %s.", componentName);
+            LOG.error(message, exception.getCause());
+            throw new WebArtifactHandlerException(message, exception);
         }
     }
 
+    public ListenableFuture<Boolean> submitScale(final String tenant, final String appName, int noOfReplicas)
+            throws WebArtifactHandlerException {
+        final String componentName = WebArtifactHandlerHelper.generateKubernetesComponentIdentifier(tenant, appName);
+        /*
+        scale requests exclude the other operations of the component, but not each other, as the manual
+        and automatic scales of a component are all applied one at a time by the scale request coalescer
+         */
+        final ComponentLocks.Lease lease = componentLocks.leaseShared(componentName);
+        ListenableFuture<Boolean> scaling;
+        try {
+            if (replicationControllerHandler.getReplicationController(componentName) == null) {
+                lease.release();
+                return Futures.immediateFuture(false);
+            }
+            // concurrent scale requests of the component within the coalescing window share one update
+            ListenableFuture<Integer> scaleRequest = scaleRequestCoalescer.requestScale(componentName, noOfReplicas);
+            // the lease is held until the update is applied, even if the caller gives up on it
+            scaleRequest.addListener(new Runnable() {
+                public void run() {
+                    lease.release();
+                }
+            }, MoreExecutors.sameThreadExecutor());
+            // the update is shared by the coalesced requests, hence a caller cancelling does not cancel it
+            scaling = Futures.transform(Futures.nonCancellationPropagating(scaleRequest),
+                    new Function<Integer, Boolean>() {
+                        public Boolean apply(Integer replicas) {
+                            // a manual scaling starts the autoscaling cooldown, so that it is not immediately reverted
+                            autoscaler.recordScaling(tenant, appName);
+                            return true;
+                        }
+                    });
+        } catch (WebArtifactHandlerException | RuntimeException exception) {
+            lease.release();
+            throw exception;
+        }
+        return Futures.withFallback(scaling, new FutureFallback<Boolean>() {
+            public ListenableFuture<Boolean> create(Throwable throwable) {
+                if (!(throwable instanceof Exception)) {
+                    return Futures.immediateFailedFuture(throwable);
+                }
+                String message = String.format("Could not scale [component] %s.", componentName);
+                LOG.error(message, throwable);
+                return Futures.immediateFailedFuture(new WebArtifactHandlerException(message, (Exception) throwable));
+            }
+        });
+    }
+
     public int getNoOfReplicas(String tenant, String appName) throws WebArtifactHandlerException {
         String componentName = WebArtifactHandlerHelper.generateKubernetesComponentIdentifier(tenant, appName);
         return replicationControllerHandler.getNoOfReplicas(componentName);
@@ -127,17 +382,7 @@ public class WebArtifactHandler implements IWebArtifactHandler {
 
     public List<String> listExistingBuildArtifacts(String tenant, String appName, String version)
             throws WebArtifactHandlerException {
-        List<String> artifactList = new ArrayList<>();
-        ImmutableList<String> repoTags;
-        for (int count = 0; count < imageBuilder.getExistingImages(tenant, appName, version).size(); count++) {
-            repoTags = imageBuilder.getExistingImages(tenant, appName, version).get(count).repoTags();
-            for (String tag : repoTags) {
-                if (tag.contains(tenant + "/" + appName + ":" + version)) {
-                    artifactList.add(tag);
-                }
-            }
-        }
-        return artifactList;
+        return imageBuilder.getExistingImageTags(tenant, appName, version);
     }
 
     public List<String> listHigherBuildArtifactVersions(String tenant, String appName, String version)
@@ -184,18 +429,27 @@ public class WebArtifactHandler implements IWebArtifactHandler {
             throws WebArtifactHandlerException {
         String componentName = WebArtifactHandlerHelper.generateKubernetesComponentIdentifier(tenant, appName);
         String ipMessage;
+        // services exposed by ingress are reached through the shared ingress front rather than a NodePort
+        String publicURL = serviceHandler.getIngressURL(componentName);
+        if (publicURL == null) {
+            publicURL = serviceHandler
+                    .getNodePortIP(componentName, WebArtifactHandlerHelper.getArtifactName(artifactPath));
+        }
         ipMessage = String.format("Cluster IP: %s\nPublic IP: %s\n\n",
                 serviceHandler.getClusterIP(componentName, WebArtifactHandlerHelper.getArtifactName(artifactPath)),
-                serviceHandler.getNodePortIP(componentName, WebArtifactHandlerHelper.getArtifactName(artifactPath)));
+                publicURL);
         return ipMessage;
     }
 
     public boolean remove(String tenant, String appName) throws WebArtifactHandlerException {
         String componentName = WebArtifactHandlerHelper.generateKubernetesComponentIdentifier(tenant, appName);
+        componentLocks.lockExclusive(componentName);
         try {
             if (replicationControllerHandler.getReplicationController(componentName) != null) {
                 final int noPods = 0;
-                scale(tenant, appName, noPods);
+                autoscaler.removePolicy(tenant, appName);
+                // the component is removed right away, hence its scaling down is not coalesced
+                replicationControllerHandler.updateNoOfReplicas(componentName, noPods);
                 replicationControllerHandler.deleteReplicationController(componentName);
                 serviceHandler.deleteService(componentName);
                 return true;
@@ -207,6 +461,131 @@ public class WebArtifactHandler implements IWebArtifactHandler {
                     WebArtifactHandlerHelper.generateKubernetesComponentIdentifier(tenant, appName));
             LOG.error(message, exception);
             throw new WebArtifactHandlerException(message, exception);
+        } finally {
+            componentLocks.unlockExclusive(componentName);
+        }
+    }
+
+    public BulkOperationResult execute(final List<ManifestEntry> manifest, int maxConcurrentOperations)
+            throws WebArtifactHandlerException {
+        if (maxConcurrentOperations < 1) {
+            throw new IllegalArgumentException("Maximum number of concurrent operations should be at least one.");
+        }
+        final long startTime = System.currentTimeMillis();
+        final ManifestEntryResult[] entryResults = new ManifestEntryResult[manifest.size()];
+        // entries of the same component run in the order of the manifest, e.g. a deploy before its scaling
+        Map<String, List<Integer>> componentEntries = new LinkedHashMap<>();
+        for (int entryIndex = 0; entryIndex < manifest.size(); entryIndex++) {
+            ManifestEntry entry = manifest.get(entryIndex);
+            if (entry.isMalformed()) {
+                // a manifest line which could not be parsed fails on its own, the other entries still run
+                LOG.error(String.format("Could not carry out the malformed manifest entry %s.", entry));
+                entryResults[entryIndex] = new ManifestEntryResult(entry, ManifestEntryResult.Status.FAILED,
+                        entry.getError(), 0, 0);
+                continue;
+            }
+            String componentName = WebArtifactHandlerHelper
+                    .generateKubernetesComponentIdentifier(entry.getTenant(), entry.getAppName());
+            List<Integer> entryIndices = componentEntries.get(componentName);
+            if (entryIndices == null) {
+                entryIndices = new ArrayList<>();
+                componentEntries.put(componentName, entryIndices);
+            }
+            entryIndices.add(entryIndex);
+        }
+        ExecutorService bulkExecutor = Executors
+                .newFixedThreadPool(Math.max(1, Math.min(maxConcurrentOperations, componentEntries.size())),
+                        new ThreadFactoryBuilder().setNameFormat("bulk-operation-%d").setDaemon(true).build());
+        try {
+            List<Future<?>> componentOperations = new ArrayList<>();
+            for (final List<Integer> entryIndices : componentEntries.values()) {
+                componentOperations.add(bulkExecutor.submit(new Runnable() {
+                    public void run() {
+                        for (int entryIndex : entryIndices) {
+                            entryResults[entryIndex] = executeEntry(manifest.get(entryIndex), startTime);
+                        }
+                    }
+                }));
+            }
+            for (Future<?> componentOperation : componentOperations) {
+                componentOperation.get();
+            }
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            String message = "Interrupted while carrying out the bulk operation.";
+            LOG.error(message, exception);
+            throw new WebArtifactHandlerException(message, exception);
+        } catch (ExecutionException exception) {
+            // entry failures are caught within executeEntry, hence this is unexpected
+            String message = "Could not carry out the bulk operation.";
+            LOG.error(message, exception.getCause());
+            throw new WebArtifactHandlerException(message, exception);
+        } finally {
+            bulkExecutor.shutdownNow();
+        }
+        BulkOperationResult result = new BulkOperationResult(Arrays.asList(entryResults), maxConcurrentOperations,
+                System.currentTimeMillis() - startTime);
+        if (LOG.isDebugEnabled()) {
+            LOG.debug(String.format("Completed the bulk operation %s.", result));
+        }
+        return result;
+    }
+
+    /**
+     * carries out a single manifest entry, recording its failure rather than throwing it
+     *
+     * @param entry         the manifest entry
+     * @param bulkStartTime time at which the bulk operation started
+     * @return the result of the entry
+     */
+    private ManifestEntryResult executeEntry(ManifestEntry entry, long bulkStartTime) {
+        long startTime = System.currentTimeMillis();
+        boolean applied;
+        String skipReason;
+        try {
+            switch (entry.getOperation()) {
+            case DEPLOY:
+                applied = deploy(entry.getTenant(), entry.getAppName(), entry.getArtifactPath(), entry.getVersion(),
+                        entry.getReplicas());
+                skipReason = "The web artifact version has already been deployed.";
+                break;
+            case UPDATE:
+                applied = rollUpdate(entry.getTenant(), entry.getAppName(), entry.getVersion(),
+                        entry.getArtifactPath());
+                skipReason = "The web artifact version has not been deployed before.";
+                break;
+            case SCALE:
+                applied = scale(entry.getTenant(), entry.getAppName(), entry.getReplicas());
+                skipReason = "The web artifact has not been deployed.";
+                break;
+            case REMOVE:
+                applied = remove(entry.getTenant(), entry.getAppName());
+                skipReason = "The web artifact has not been deployed.";
+                break;
+            default:
+                throw new WebArtifactHandlerException(String.format("Unknown [operation] %s.", entry.getOperation()));
+            }
+        } catch (Exception exception) {
+            String message = (exception.getMessage() != null) ? exception.getMessage() : exception.toString();
+            LOG.error(String.format("Could not carry out the manifest entry %s.", entry), exception);
+            return new ManifestEntryResult(entry, ManifestEntryResult.Status.FAILED, message,
+                    startTime - bulkStartTime, System.currentTimeMillis() - startTime);
         }
+        return new ManifestEntryResult(entry,
+                applied ? ManifestEntryResult.Status.SUCCEEDED : ManifestEntryResult.Status.SKIPPED,
+                applied ? null : skipReason, startTime - bulkStartTime, System.currentTimeMillis() - startTime);
+    }
+
+    /**
+     * returns the probes set for the specified component, else probes which check Tomcat's port, since
+     * neither the ROOT context of current Tomcat images nor a web artifact without a welcome file serves
+     * its context path
+     *
+     * @param componentName Kubernetes component identifier
+     * @return the probes of the Tomcat container of the component
+     */
+    private TomcatProbeConfiguration getProbeConfiguration(String componentName) {
+        TomcatProbeConfiguration probeConfiguration = probeConfigurations.get(componentName);
+        return (probeConfiguration != null) ? probeConfiguration : DEFAULT_PROBE_CONFIGURATION;
     }
 }
@@ -0,0 +1,102 @@
+/*
+* Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.wso2.strategy.poc.webartifact.interfaces;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import org.wso2.strategy.poc.kubernetes.components.replication_controller.TomcatResourceProfile;
+import org.wso2.strategy.poc.kubernetes.components.service.ServiceExposureMode;
+
+import java.nio.file.Path;
+
+/**
+ * a Java interface which orchestrates web artifact deployment in Apache Tomcat Docker containers without
+ * blocking the caller
+ * <p>
+ * Each operation returns a future of the outcome of its IWebArtifactHandler counterpart, which fails with
+ * the WebArtifactHandlerException of the operation. The operation itself may still block a thread of the
+ * implementation while it runs. Cancelling a future which has not started prevents the
+ * operation, and cancelling it with interruption interrupts the operation at its next wait.
+ */
+public interface IAsyncWebArtifactHandler {
+    /**
+     * deploys the specified web app
+     *
+     * @param tenant       name of the tenant
+     * @param appName      name of the app
+     * @param artifactPath uri to the web app resource
+     * @param version      deployed version of the artifact
+     * @param replicas     number of deployed replicas of the web app
+     * @return a future of true if successfully deployed, else false
+     */
+    ListenableFuture<Boolean> deploy(String tenant, String appName, Path artifactPath, String version, int replicas);
+
+    /**
+     * deploys the specified web app in Apache Tomcat containers sized by the specified resource profile,
+     * exposed in the specified mode
+     *
+     * @param tenant          name of the tenant
+     * @param appName         name of the app
+     * @param artifactPath    uri to the web app resource
+     * @param version         deployed version of the artifact
+     * @param replicas        number of deployed replicas of the web app
+     * @param resourceProfile compute resources and JVM options of the Apache Tomcat containers, null if none
+     * @param exposureMode    the way in which the web app is exposed outside the cluster
+     * @return a future of true if successfully deployed, else false
+     */
+    ListenableFuture<Boolean> deploy(String tenant, String appName, Path artifactPath, String version, int replicas,
+            TomcatResourceProfile resourceProfile, ServiceExposureMode exposureMode);
+
+    /**
+     * rolls back or forward to an existing version of the web artifact build
+     *
+     * @param tenant          name of the tenant
+     * @param appName         name of the app
+     * @param version         deployed version of the artifact
+     * @param buildIdentifier identifier of web artifact build to be newly deployed
+     * @return a future of true if successfully updated, else false
+     */
+    ListenableFuture<Boolean> rollBack(String tenant, String appName, String version, String buildIdentifier);
+
+    /**
+     * make a roll update to the newly deployed web artifact build
+     *
+     * @param tenant       name of the tenant
+     * @param appName      name of the app
+     * @param version      deployed version of the artifact
+     * @param artifactPath newly deployed web artifact
+     * @return a future of true if successfully updated, else false
+     */
+    ListenableFuture<Boolean> rollUpdate(String tenant, String appName, String version, Path artifactPath);
+
+    /**
+     * scale the number of web artifact replicas running
+     *
+     * @param tenant       name of the tenant
+     * @param appName      name of the app
+     * @param noOfReplicas latest number of replicas to be deployed
+     * @return a future of true if successfully scaled, else false
+     */
+    ListenableFuture<Boolean> scale(String tenant, String appName, int noOfReplicas);
+
+    /**
+     * removes the deployed, specified web app
+     *
+     * @param tenant  name of the tenant
+     * @param appName name of the app
+     * @return a future of true if successfully removed, else false
+     */
+    ListenableFuture<Boolean> remove(String tenant, String appName);
+}
@@ -15,7 +15,12 @@
 */
 package org.wso2.strategy.poc.webartifact.interfaces;
 
+import com.google.common.util.concurrent.ListenableFuture;
+import org.wso2.strategy.poc.kubernetes.components.replication_controller.TomcatResourceProfile;
+import org.wso2.strategy.poc.kubernetes.components.service.ServiceExposureMode;
 import org.wso2.strategy.poc.miscellaneous.exceptions.WebArtifactHandlerException;
+import org.wso2.strategy.poc.webartifact.BulkOperationResult;
+import org.wso2.strategy.poc.webartifact.ManifestEntry;
 
 import java.nio.file.Path;
 import java.util.List;
@@ -38,6 +43,44 @@ public interface IWebArtifactHandler {
     boolean deploy(String tenant, String appName, Path artifactPath, String version, int replicas)
             throws WebArtifactHandlerException;
 
+    /**
+     * deploys the specified web app in Apache Tomcat containers sized by the specified resource profile,
+     * exposed in the specified mode
+     *
+     * @param tenant          name of the tenant
+     * @param appName         name of the app
+     * @param artifactPath    uri to the web app resource
+     * @param version         deployed version of the artifact
+     * @param replicas        number of deployed replicas of the web app
+     * @param resourceProfile compute resources and JVM options of the Apache Tomcat containers, null if none
+     * @param exposureMode    the way in which the web app is exposed outside the cluster
+     * @return true if successfully deployed, else false
+     * @throws WebArtifactHandlerException
+     */
+    boolean deploy(String tenant, String appName, Path artifactPath, String version, int replicas,
+            TomcatResourceProfile resourceProfile, ServiceExposureMode exposureMode)
+            throws WebArtifactHandlerException;
+
+    /**
+     * submits the deployment of the specified web app, returning once the component is locked for it
+     * without waiting for its outcome
+     * <p>
+     * The component stays locked until the deployment has completed, or been rolled back.
+     *
+     * @param tenant          name of the tenant
+     * @param appName         name of the app
+     * @param artifactPath    uri to the web app resource
+     * @param version         deployed version of the artifact
+     * @param replicas        number of deployed replicas of the web app
+     * @param resourceProfile compute resources and JVM options of the Apache Tomcat containers, null if none
+     * @param exposureMode    the way in which the web app is exposed outside the cluster
+     * @return a future of true if successfully deployed, else false
+     * @throws WebArtifactHandlerException if interrupted while waiting for the lock of the component
+     */
+    ListenableFuture<Boolean> submitDeploy(String tenant, String appName, Path artifactPath, String version,
+            int replicas, TomcatResourceProfile resourceProfile, ServiceExposureMode exposureMode)
+            throws WebArtifactHandlerException;
+
     /**
      * rolls back or forward to an existing version of the web artifact build
      *
@@ -75,6 +118,19 @@ public interface IWebArtifactHandler {
      */
     boolean scale(String tenant, String appName, int noOfReplicas) throws WebArtifactHandlerException;
 
+    /**
+     * submits the scaling of the number of web artifact replicas running, returning once the scale request
+     * is made without waiting for its update
+     *
+     * @param tenant       name of the tenant
+     * @param appName      name of the app
+     * @param noOfReplicas latest number of replicas to be deployed
+     * @return a future of true if successfully scaled, else false
+     * @throws WebArtifactHandlerException if the scale request could not be made
+     */
+    ListenableFuture<Boolean> submitScale(String tenant, String appName, int noOfReplicas)
+            throws WebArtifactHandlerException;
+
     /**
      * returns the number of replicas of a particular web artifact running, currently
      *
@@ -146,4 +202,20 @@ public interface IWebArtifactHandler {
      * @throws WebArtifactHandlerException
      */
     boolean remove(String tenant, String appName) throws WebArtifactHandlerException;
-}
\ No newline at end of file
+
+    /**
+     * carries out the entries of a bulk operation manifest in parallel, within the specified concurrency
+     * limit
+     * <p>
+     * Entries of the same web app are carried out one after the other, in the order of the manifest. A
+     * failing entry, including a malformed entry read from a manifest file, is recorded in its result and
+     * does not stop the remaining entries.
+     *
+     * @param manifest                entries to be carried out
+     * @param maxConcurrentOperations maximum number of entries carried out at a time
+     * @return the result and timing of each entry
+     * @throws WebArtifactHandlerException if the bulk operation is interrupted
+     */
+    BulkOperationResult execute(List<ManifestEntry> manifest, int maxConcurrentOperations)
+            throws WebArtifactHandlerException;
+}